@@ -0,0 +1,86 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of javascript strings escaping over all project lines, per line
+ * and of whole files turned to javascript lines (css2js, html2js).
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JSEscaperBenchmark {
+
+    @Benchmark
+    public void escapeString(ProjectState project, Blackhole bh) {
+        StringBuilder builder = new StringBuilder();
+        for (List<String> lines : project.lines) {
+            for (String line : lines) {
+                builder.setLength(0);
+                JSEscaper.STRING.escape(line, 0, line.length(), builder);
+                bh.consume(builder.length());
+            }
+        }
+    }
+
+    @Benchmark
+    public void escapeQuotes(ProjectState project, Blackhole bh) {
+        StringBuilder builder = new StringBuilder();
+        for (List<String> lines : project.lines) {
+            for (String line : lines) {
+                builder.setLength(0);
+                JSEscaper.QUOTES.escape(line, 0, line.length(), builder);
+                bh.consume(builder.length());
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeAsJSLines(ProjectState project, Blackhole bh)
+        throws IOException {
+        for (String text : project.texts) {
+            StringWriter out = new StringWriter(text.length() * 2);
+            ChunkOutputs.writeAsJSLines(new StringReader(text), out, false);
+            bh.consume(out.getBuffer().length());
+        }
+    }
+
+    @Benchmark
+    public void turnCSSToJS(ProjectState project, Blackhole bh) {
+        for (String text : project.texts) {
+            bh.consume(CompileJS.turnCSSToJS(text));
+        }
+    }
+}
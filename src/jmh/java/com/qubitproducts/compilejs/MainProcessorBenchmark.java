@@ -0,0 +1,64 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of dependencies listing and merging, each run with new
+ * processor and no lines cache (as single CompileJS run does).
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MainProcessorBenchmark {
+
+    @Benchmark
+    public Map<String, String> getFilesListFromPaths(ProjectState project)
+        throws IOException {
+        return project.createProcessor().getFilesListFromPaths(
+            project.sources,
+            false,
+            false,
+            project.output);
+    }
+
+    @Benchmark
+    public Map<String, StringBuilder> mergeFilesWithChunksAndStripFromWraps(
+        ProjectState project) throws IOException {
+        return project.createProcessor().mergeFilesWithChunksAndStripFromWraps(
+            project.paths,
+            true,
+            project.output,
+            Arrays.asList(ProjectGenerator.WRAPS),
+            "js");
+    }
+}
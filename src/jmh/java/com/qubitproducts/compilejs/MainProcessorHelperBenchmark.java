@@ -0,0 +1,84 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of chunks splitting and wraps stripping over all project files
+ * lines, read to memory before.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MainProcessorHelperBenchmark {
+
+    private static final List<String> WRAPS =
+        Arrays.asList(ProjectGenerator.WRAPS);
+    private static final LinePatterns PATTERNS = new LinePatterns(
+        null, null, ProjectGenerator.WRAPS_TO_STRIP, WRAPS);
+
+    @Benchmark
+    public void getStringInChunks(ProjectState project, Blackhole bh) {
+        for (List<String> lines : project.lines) {
+            bh.consume(MainProcessorHelper
+                .getStringInChunks(lines, WRAPS, "js"));
+        }
+    }
+
+    @Benchmark
+    public void getStringInChunksCompiled(ProjectState project,
+        Blackhole bh) {
+        for (List<String> lines : project.lines) {
+            bh.consume(MainProcessorHelper
+                .getStringInChunks(lines, PATTERNS, "js", false));
+        }
+    }
+
+    @Benchmark
+    public void stripFromWraps(ProjectState project, Blackhole bh)
+        throws IOException {
+        for (List<String> lines : project.lines) {
+            bh.consume(MainProcessorHelper.stripFromWraps(
+                lines, ProjectGenerator.WRAPS_TO_STRIP, null));
+        }
+    }
+
+    @Benchmark
+    public void stripFromWrapsCompiled(ProjectState project, Blackhole bh)
+        throws IOException {
+        for (List<String> lines : project.lines) {
+            bh.consume(MainProcessorHelper.stripFromWraps(
+                lines, PATTERNS, null));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.CFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Synthetic project shared by benchmarks, generated once per trial.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+@State(Scope.Benchmark)
+public class ProjectState {
+
+    @Param({"1000", "10000"})
+    public int files;
+
+    @Param({"1"})
+    public int bases;
+
+    @Param({"10", "40"})
+    public int density;
+
+    @Param({"3"})
+    public int fanOut;
+
+    @Param({"1"})
+    public long seed;
+
+    public File root;
+    public String output;
+    public List<String> sources;
+    public List<String> classpaths;
+    public List<List<String>> lines;
+    public List<String> texts;
+    public Map<String, String> paths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ProjectGenerator generator = new ProjectGenerator(seed);
+        generator.setFiles(files);
+        generator.setBases(bases);
+        generator.setDensity(density);
+        generator.setFanOut(fanOut);
+
+        root = Files.createTempDirectory("compilejs-jmh").toFile();
+        output = new File(root, "out" + File.separator + "all")
+            .getAbsolutePath();
+        classpaths = generator.generate(root);
+
+        sources = new ArrayList<String>();
+        for (String source : generator.getSources()) {
+            sources.add(new File(root, source).getAbsolutePath());
+        }
+
+        lines = new ArrayList<List<String>>();
+        for (int i = 0; i < classpaths.size(); i++) {
+            lines.add(new CFile(root, generator.getPath(i)).getLines());
+        }
+
+        texts = new ArrayList<String>();
+        for (List<String> fileLines : lines) {
+            StringBuilder text = new StringBuilder();
+            for (String line : fileLines) {
+                text.append(line).append('\n');
+            }
+            texts.add(text.toString());
+        }
+
+        paths = createProcessor().getFilesListFromPaths(
+            sources, false, false, output);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * @return processor configured as CompileJS does for the project
+     */
+    public MainProcessor createProcessor() {
+        MainProcessor processor = new MainProcessor();
+        processor.setCwd(root.getAbsolutePath());
+        processor.setSourceBase(sources.toArray(new String[0]));
+        processor.setExcludedFilesFromListing(
+            new String[]{ProjectGenerator.DATA});
+        processor.setFromToIgnore(ProjectGenerator.WRAPS_TO_STRIP);
+        return processor;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.CFile;
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical paths of files, each resolved once. Results are interned, so
+ * equal paths share one string, and canonical path of canonical path is
+ * known without resolving it again.
+ *
+ * Paths are kept between compilations by CompilationCache, paths reported
+ * by the watcher are dropped with invalidate(). Symbolic links changed
+ * otherwise are not noticed until the cache is cleared.
+ *
+ * Source bases owning files are found with BasePrefixes.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class CanonicalPaths {
+
+    private final Map<String, String> paths =
+        new ConcurrentHashMap<String, String>();
+
+    /**
+     * @param file
+     * @return canonical absolute path of the file
+     * @throws IOException
+     */
+    public String getCanonicalPath(FSFile file) throws IOException {
+        String path = file.getAbsolutePath();
+        String canonical = paths.get(path);
+        if (canonical == null) {
+            canonical = file.getCanonicalPath();
+            String known = paths.get(canonical);
+            if (known != null) {
+                canonical = known;
+            } else {
+                paths.put(canonical, canonical);
+            }
+            paths.put(path, canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * @param file
+     * @return file with canonical absolute path
+     * @throws IOException
+     */
+    public FSFile getCanonicalFile(FSFile file) throws IOException {
+        return new CFile(getCanonicalPath(file));
+    }
+
+    /**
+     * Drops canonical paths of given files and files in given directories.
+     *
+     * @param changed normalized absolute paths, null for all
+     */
+    public void invalidate(Set<String> changed) {
+        if (changed == null) {
+            paths.clear();
+            return;
+        }
+        for (Map.Entry<String, String> entry : paths.entrySet()) {
+            if (CompilationCache.isAffected(entry.getKey(), changed)
+                || CompilationCache.isAffected(entry.getValue(), changed)) {
+                paths.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Creates source bases prefixes.
+     *
+     * @param cwd working directory for relative bases
+     * @param bases source bases, in search order
+     * @return prefixes of bases canonical paths
+     * @throws IOException
+     */
+    public BasePrefixes getBasePrefixes(String cwd, String[] bases)
+        throws IOException {
+        String[] prefixes = new String[bases.length];
+        for (int i = 0; i < bases.length; i++) {
+            prefixes[i] = getCanonicalPath(new CFile(cwd, bases[i], true))
+                + CFile.separator;
+        }
+        return new BasePrefixes(cwd, bases, prefixes);
+    }
+
+    /**
+     * Trie of source bases canonical paths (with trailing separator). Finds
+     * first, in search order, source base containing a path.
+     */
+    public static class BasePrefixes {
+
+        private final String cwd;
+        private final String[] bases;
+        private final String[] prefixes;
+        private final Node root = new Node();
+
+        /**
+         * Node of the trie, base is the lowest index of bases ending here.
+         */
+        private static class Node {
+
+            final Map<Character, Node> children =
+                new HashMap<Character, Node>();
+            int base = -1;
+        }
+
+        BasePrefixes(String cwd, String[] bases, String[] prefixes) {
+            this.cwd = cwd;
+            this.bases = bases.clone();
+            this.prefixes = prefixes;
+            for (int i = 0; i < prefixes.length; i++) {
+                Node node = root;
+                String prefix = prefixes[i];
+                for (int j = 0; j < prefix.length(); j++) {
+                    Character ch = prefix.charAt(j);
+                    Node child = node.children.get(ch);
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(ch, child);
+                    }
+                    node = child;
+                }
+                if (node.base == -1) {
+                    node.base = i;
+                }
+            }
+        }
+
+        /**
+         * @param cwd
+         * @param bases
+         * @return true if prefixes were created for same bases
+         */
+        public boolean isFor(String cwd, String[] bases) {
+            return (this.cwd == null ? cwd == null : this.cwd.equals(cwd))
+                && Arrays.equals(this.bases, bases);
+        }
+
+        /**
+         * @param path canonical absolute path
+         * @return index of first source base containing the path or -1
+         */
+        public int find(String path) {
+            int found = -1;
+            Node node = root;
+            for (int i = 0; i < path.length(); i++) {
+                node = node.children.get(path.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.base != -1 && (found == -1 || node.base < found)) {
+                    found = node.base;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * @param index
+         * @return source base, as given
+         */
+        public String getBase(int index) {
+            return bases[index];
+        }
+
+        /**
+         * @param index
+         * @return canonical path of source base with trailing separator
+         */
+        public String getPrefix(int index) {
+            return prefixes[index];
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import static com.qubitproducts.compilejs.MainProcessorHelper.chunkToExtension;
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chunk of file content, see MainProcessorHelper.getStringInChunks.
+ * Type is the wrap (ending marker, like "*~css*") chunk was found in, or
+ * default chunk name (extension). Output extension of type is resolved once,
+ * when chunk is created, and types are shared instances.
+ *
+ * Content is kept as given, it is copied to a builder only when getBuilder()
+ * is called for modification.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class Chunk {
+
+    //type => {type, extension}
+    private static final Map<String, String[]> types =
+        new ConcurrentHashMap<String, String[]>();
+
+    private final String type;
+    private final String extension;
+    private final FSFile source;
+    private final int line;
+    private CharSequence content;
+
+    /**
+     * @param type chunk type
+     * @param content
+     * @param source file chunk was read from, null if created
+     * @param line source line number chunk starts at, 0 if unknown
+     */
+    public Chunk(String type, CharSequence content, FSFile source, int line) {
+        String[] resolved = types.get(type);
+        if (resolved == null) {
+            resolved = new String[]{type, chunkToExtension(type)};
+            types.put(type, resolved);
+        }
+        this.type = resolved[0];
+        this.extension = resolved[1];
+        this.content = content;
+        this.source = source;
+        this.line = line;
+    }
+
+    /**
+     * @param type chunk type
+     * @param content
+     */
+    public Chunk(String type, CharSequence content) {
+        this(type, content, null, 0);
+    }
+
+    private Chunk(Chunk chunk, CharSequence content) {
+        this.type = chunk.type;
+        this.extension = chunk.extension;
+        this.source = chunk.source;
+        this.line = chunk.line;
+        this.content = content;
+    }
+
+    /**
+     * @param type new chunk type
+     * @param content new content
+     * @return chunk of same source and line
+     */
+    public Chunk derive(String type, CharSequence content) {
+        return new Chunk(type, content, source, line);
+    }
+
+    /**
+     * @param content new content
+     * @return chunk of same type, source and line
+     */
+    public Chunk derive(CharSequence content) {
+        return new Chunk(this, content);
+    }
+
+    /**
+     * @return the type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return output extension of type, see
+     *  MainProcessorHelper.chunkToExtension
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return file chunk was read from, null if it was created
+     */
+    public FSFile getSource() {
+        return source;
+    }
+
+    /**
+     * @return source line number chunk starts at, 0 if unknown
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return content, must not be modified
+     */
+    public CharSequence getContent() {
+        return content;
+    }
+
+    /**
+     * @return content builder, content is copied to it at first call unless
+     *  it is a builder already
+     */
+    public StringBuilder getBuilder() {
+        if (!(content instanceof StringBuilder)) {
+            content = new StringBuilder(content);
+        }
+        return (StringBuilder) content;
+    }
+
+    /**
+     * @return content length
+     */
+    public int length() {
+        return content.length();
+    }
+
+    @Override
+    public String toString() {
+        return content.toString();
+    }
+}
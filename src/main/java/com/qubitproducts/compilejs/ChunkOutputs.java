@@ -0,0 +1,391 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming replacement of chunks StringBuilders map. Chunks of each type
+ * (output extension) are written, as files are processed, to their own
+ * spool file, so memory used does not depend on outputs size.
+ *
+ * Each output content is a list of parts: String literals and references
+ * to spooled chunks (optionally converted to javascript strings array
+ * lines, see html2js and css2js options). Contents can be composed from
+ * other contents and are streamed to outputs at the end.
+ *
+ * Spool files are created in system temporary directory (java.io.tmpdir),
+ * not next to outputs, so compilation killed before close() removes them
+ * does not leave them where outputs are deployed from. Outputs filled
+ * separately (concurrently) can be joined with append().
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class ChunkOutputs implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LINES_BUFFER_SIZE = 8 * 1024;
+    private static final String SPOOL_PREFIX = "compilejs";
+
+    //spools appended to, by type
+    private final Map<String, Spool> spools = new HashMap<String, Spool>();
+    private final List<Spool> allSpools = new ArrayList<Spool>();
+    private final Map<String, List<Object>> contents =
+        new HashMap<String, List<Object>>();
+
+    /**
+     * Spooled chunks of one type.
+     */
+    static class Spool {
+        File file;
+        Writer writer;
+        long length = 0;
+    }
+
+    /**
+     * Reference to spooled chunks, as is or converted to javascript lines.
+     * Chunks of one type may be spooled to many files, in order.
+     */
+    static class Part {
+        final List<Spool> spools;
+        final boolean jsLines;
+        final boolean singleLine;
+
+        Part(List<Spool> spools, boolean jsLines, boolean singleLine) {
+            this.spools = spools;
+            this.jsLines = jsLines;
+            this.singleLine = singleLine;
+        }
+    }
+
+    /**
+     * Appends file chunks, each followed by new line, to spools of chunks
+     * types. Same as merging to chunks StringBuilders map.
+     *
+     * @param chunks
+     * @throws IOException
+     */
+    public void append(List<Chunk> chunks) throws IOException {
+        for (Chunk chunk : chunks) {
+            String key = chunk.getExtension();
+            Spool spool = spools.get(key);
+            if (spool == null) {
+                spool = new Spool();
+                spool.file = File.createTempFile(SPOOL_PREFIX, ".chunk");
+                spool.writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(spool.file), UTF_8), BUFFER_SIZE);
+                spools.put(key, spool);
+                allSpools.add(spool);
+                List<Spool> parts = new ArrayList<Spool>();
+                parts.add(spool);
+                contents.put(key, new ArrayList<Object>(Arrays.asList(
+                    new Part(parts, false, false))));
+            }
+            CharSequence content = chunk.getContent();
+            spool.writer.append(content);
+            spool.writer.append(MainProcessor.RET);
+            spool.length += content.length() + MainProcessor.RET.length();
+        }
+    }
+
+    /**
+     * Appends chunks of other outputs after chunks of these, other outputs
+     * are left empty and their spools are removed on close() of these.
+     * Contents of both must not be composed yet (as after append()).
+     *
+     * @param other
+     */
+    public void append(ChunkOutputs other) {
+        for (Map.Entry<String, List<Object>> entry
+                : other.contents.entrySet()) {
+            String key = entry.getKey();
+            List<Object> mine = contents.get(key);
+            if (mine == null) {
+                contents.put(key, entry.getValue());
+            } else {
+                ((Part) mine.get(0)).spools.addAll(
+                    ((Part) entry.getValue().get(0)).spools);
+            }
+            spools.put(key, other.spools.get(key));
+        }
+        allSpools.addAll(other.allSpools);
+        other.spools.clear();
+        other.allSpools.clear();
+        other.contents.clear();
+    }
+
+    /**
+     * @param key output extension
+     * @return content parts or null if there is no content
+     */
+    public List<Object> get(String key) {
+        return contents.get(key);
+    }
+
+    /**
+     * @param key output extension
+     * @param parts content parts
+     */
+    public void put(String key, List<Object> parts) {
+        contents.put(key, parts);
+    }
+
+    /**
+     * @param key output extension
+     * @return removed content parts or null
+     */
+    public List<Object> remove(String key) {
+        return contents.remove(key);
+    }
+
+    /**
+     * @return contents mapped by output extension
+     */
+    public Map<String, List<Object>> getContents() {
+        return contents;
+    }
+
+    public boolean isEmpty() {
+        return contents.isEmpty();
+    }
+
+    /**
+     * Returns parts of content converted to javascript array lines, same
+     * as CompileJS.turnCSSToJS and CompileJS.turnHTMLToJS do.
+     *
+     * @param parts spooled content parts (not converted)
+     * @param singleLine if new lines should be removed first
+     * @return new parts
+     */
+    public List<Object> toJSLines(List<Object> parts, boolean singleLine) {
+        List<Object> result = new ArrayList<Object>();
+        for (Object part : parts) {
+            Part spooled = (Part) part;
+            result.add(new Part(spooled.spools, true, singleLine));
+        }
+        return result;
+    }
+
+    /**
+     * @param parts
+     * @return true if content has no characters
+     */
+    public boolean isEmpty(List<Object> parts) {
+        for (Object part : parts) {
+            if (part instanceof String) {
+                if (((String) part).length() > 0) {
+                    return false;
+                }
+            } else {
+                Part spooled = (Part) part;
+                if (spooled.jsLines) {
+                    return false;
+                }
+                for (Spool spool : spooled.spools) {
+                    if (spool.length > 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Streams content to writer.
+     *
+     * @param parts
+     * @param out
+     * @throws IOException
+     */
+    public void write(List<Object> parts, Writer out) throws IOException {
+        for (Object part : parts) {
+            if (part instanceof String) {
+                out.write((String) part);
+            } else {
+                Part spooled = (Part) part;
+                Reader in = open(spooled.spools);
+                try {
+                    if (spooled.jsLines) {
+                        writeAsJSLines(in, out, spooled.singleLine);
+                    } else {
+                        char[] buf = new char[BUFFER_SIZE];
+                        int read;
+                        while ((read = in.read(buf)) != -1) {
+                            out.write(buf, 0, read);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes spool files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Spool spool : allSpools) {
+            try {
+                if (spool.writer != null) {
+                    spool.writer.close();
+                }
+            } finally {
+                spool.file.delete();
+            }
+        }
+        spools.clear();
+        allSpools.clear();
+        contents.clear();
+    }
+
+    private Reader open(Spool spool) throws IOException {
+        if (spool.writer != null) {
+            spool.writer.close();
+            spool.writer = null;
+        }
+        return new BufferedReader(new InputStreamReader(
+            new FileInputStream(spool.file), UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * @param parts
+     * @return reader of spools contents, one after another
+     */
+    private Reader open(final List<Spool> parts) throws IOException {
+        if (parts.size() == 1) {
+            return open(parts.get(0));
+        }
+        return new BufferedReader(new Reader() {
+            private int next = 0;
+            private Reader current = null;
+
+            @Override
+            public int read(char[] cbuf, int off, int len)
+                throws IOException {
+                while (true) {
+                    if (current == null) {
+                        if (next == parts.size()) {
+                            return -1;
+                        }
+                        current = open(parts.get(next++));
+                    }
+                    int read = current.read(cbuf, off, len);
+                    if (read != -1) {
+                        return read;
+                    }
+                    current.close();
+                    current = null;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                next = parts.size();
+                if (current != null) {
+                    current.close();
+                    current = null;
+                }
+            }
+        }, BUFFER_SIZE);
+    }
+
+    /**
+     * Writes text as javascript strings array items - each line is quoted
+     * and escaped, followed by "\n" and lines are separated by comma. Lines
+     * are split same as String.split("\n") does (trailing empty lines are
+     * skipped).
+     *
+     * @param in text
+     * @param out
+     * @param singleLine if true, new lines are removed and text is written
+     *  as single line
+     * @throws IOException
+     */
+    static void writeAsJSLines(Reader in, Writer out, boolean singleLine)
+        throws IOException {
+        int emptyLines = 0;
+        boolean lines = false;
+        boolean inLine = false;
+        boolean any = false;
+        char[] buffer = new char[LINES_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            int i = 0;
+            while (i < read) {
+                any = true;
+                if (buffer[i] == '\n') {
+                    i++;
+                    if (singleLine) {
+                        continue;
+                    }
+                    if (inLine) {
+                        out.write("\\n\"");
+                        inLine = false;
+                    } else {
+                        emptyLines++;
+                    }
+                    continue;
+                }
+                if (!inLine) {
+                    //empty lines are written only if followed by a line
+                    for (; emptyLines > 0; emptyLines--) {
+                        out.write(lines ? ",\n\t\"\\n\"" : "\t\"\\n\"");
+                        lines = true;
+                    }
+                    out.write(lines ? ",\n\t\"" : "\t\"");
+                    lines = true;
+                    inLine = true;
+                }
+                int end = i;
+                while (end < read && buffer[end] != '\n') {
+                    end++;
+                }
+                JSEscaper.QUOTES.escape(buffer, i, end, out);
+                i = end;
+            }
+        }
+        if (inLine) {
+            out.write("\\n\"");
+        } else if (!any || (singleLine && !lines)) {
+            //empty text is single empty line
+            out.write("\t\"\\n\"");
+            lines = true;
+        }
+        if (lines) {
+            out.write("\n");
+        }
+    }
+}
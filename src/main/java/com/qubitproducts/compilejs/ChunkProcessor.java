@@ -0,0 +1,45 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+
+/**
+ * Processor API v2. Instead of receiving whole list of chunks, processor
+ * is a stage of chunks stream: it reads chunks from the stage before and
+ * writes processed chunks to the next one, see ProcessorChain. Chunks it
+ * does not process are passed unchanged, without copying.
+ *
+ * Line by line processors extend LineFilter. Old Processor implementations
+ * are run through ProcessorChain.adapt().
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public interface ChunkProcessor {
+
+    /**
+     * Opens processing of single file chunks. Returned sink is used by
+     * one thread.
+     *
+     * @param extension processed file extension
+     * @param out sink for processed chunks
+     * @return sink for chunks to process, out if processor does not apply
+     *  to files with the extension
+     * @throws IOException
+     */
+    public ChunkSink open(String extension, ChunkSink out) throws IOException;
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receiver of streamed chunks, see ChunkProcessor. Chunk content is
+ * appended in any number of pieces between startChunk() and endChunk(),
+ * close() ends the stream (of single file chunks) and closes the sinks
+ * written to.
+ *
+ * Appended text may be kept by the sink, it must not be modified after
+ * appending, unless it is a line passed by LineFilter.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public interface ChunkSink extends Appendable, Closeable {
+
+    /**
+     * Starts chunk of same type and source as given chunk. Chunk content
+     * is then appended, sink may keep the chunk if its whole content is
+     * appended at once.
+     *
+     * @param chunk
+     * @throws IOException
+     */
+    public void startChunk(Chunk chunk) throws IOException;
+
+    /**
+     * @throws IOException
+     */
+    public void endChunk() throws IOException;
+}
@@ -0,0 +1,287 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State kept between compilations of the same configuration (watch mode).
+ * It holds dependency directives of files and processed chunks of each
+ * file, so a rebuild only reads files that changed.
+ *
+ * Entries are validated by files modification time and size, and can be
+ * explicitly invalidated with paths reported by the watcher.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class CompilationCache implements Cacheable {
+
+    private String signature = null;
+    private final DependencyGraphCache graphCache =
+        new DependencyGraphCache(null);
+    private final Map<String, FileChunks> chunks =
+        new ConcurrentHashMap<String, FileChunks>();
+    private final SourceIndex sourceIndex = new SourceIndex();
+    private volatile SourceFilter sourceFilter = null;
+    private final CanonicalPaths canonicalPaths = new CanonicalPaths();
+    private final InjectionCache injectionCache = new InjectionCache();
+
+    /**
+     * Processed chunks of single file and the stamps of files used to
+     * produce them.
+     */
+    static class FileChunks {
+        List<FSFile> sources;
+        long[] stamps;
+        List<Chunk> chunks;
+    }
+
+    /**
+     * Files used to produce chunks of single file, each stamped with
+     * modification time and size taken before it was read. File changed
+     * while being read has different stamp than cached, so its chunks are
+     * not reused.
+     */
+    static class Sources {
+        final List<FSFile> files = new ArrayList<FSFile>();
+        long[] stamps = new long[4];
+
+        /**
+         * Adds file stamped with its current state, call before reading it.
+         * @param file
+         */
+        void add(FSFile file) {
+            add(file, file.lastModified(), file.length());
+        }
+
+        /**
+         * @param file
+         * @param lastModified file modification time taken before reading
+         * @param length file length taken before reading
+         */
+        void add(FSFile file, long lastModified, long length) {
+            int i = files.size() * 2;
+            if (i == stamps.length) {
+                stamps = Arrays.copyOf(stamps, i * 2);
+            }
+            stamps[i] = lastModified;
+            stamps[i + 1] = length;
+            files.add(file);
+        }
+    }
+
+    /**
+     * Checks if cache was created for same configuration, if not, cache
+     * is cleared.
+     *
+     * @param signature configuration signature (compilation arguments)
+     */
+    public void validate(String signature) {
+        if (!signature.equals(this.signature)) {
+            this.clear();
+            this.signature = signature;
+        }
+    }
+
+    @Override
+    public void clear() {
+        graphCache.invalidate(null);
+        chunks.clear();
+        sourceIndex.invalidate(null);
+        sourceFilter = null;
+        canonicalPaths.invalidate(null);
+        injectionCache.invalidate(null);
+    }
+
+    /**
+     * @return in memory dependency graph cache
+     */
+    public DependencyGraphCache getDependencyGraphCache() {
+        return graphCache;
+    }
+
+    /**
+     * @return source bases directories index, see SourceIndex.refresh()
+     */
+    public SourceIndex getSourceIndex() {
+        return sourceIndex;
+    }
+
+    /**
+     * @return canonical paths resolved in previous compilations
+     */
+    public CanonicalPaths getCanonicalPaths() {
+        return canonicalPaths;
+    }
+
+    /**
+     * @return injections resolved in previous compilations
+     */
+    public InjectionCache getInjectionCache() {
+        return injectionCache;
+    }
+
+    /**
+     * @return listed files filter kept between compilations, may be null
+     */
+    public SourceFilter getSourceFilter() {
+        return sourceFilter;
+    }
+
+    /**
+     * @param sourceFilter listed files filter to keep
+     */
+    public void setSourceFilter(SourceFilter sourceFilter) {
+        this.sourceFilter = sourceFilter;
+    }
+
+    /**
+     * Returns processed chunks of the file if none of sources used to
+     * produce them changed.
+     *
+     * @param file
+     * @param extension group (default chunk) name
+     * @return chunks list or null
+     */
+    public List<Chunk> getChunks(FSFile file, String extension) {
+        FileChunks found = chunks.get(key(file, extension));
+        if (found == null) {
+            return null;
+        }
+        if (!Arrays.equals(found.stamps, stamps(found.sources))) {
+            return null;
+        }
+        return found.chunks;
+    }
+
+    /**
+     * Stores processed chunks of the file. Chunks must not be modified
+     * after.
+     *
+     * @param file
+     * @param extension group (default chunk) name
+     * @param sources files used to produce chunks, file itself first
+     * @param fileChunks
+     */
+    void putChunks(
+        FSFile file,
+        String extension,
+        Sources sources,
+        List<Chunk> fileChunks) {
+        FileChunks entry = new FileChunks();
+        entry.sources = sources.files;
+        entry.stamps = Arrays.copyOf(sources.stamps, sources.files.size() * 2);
+        entry.chunks = fileChunks;
+        chunks.put(key(file, extension), entry);
+    }
+
+    /**
+     * Invalidates all entries of given files and files in given
+     * directories. Null paths set means all entries.
+     *
+     * @param paths normalized absolute paths
+     */
+    public void invalidate(Set<String> paths) {
+        graphCache.invalidate(paths);
+        sourceIndex.invalidate(paths);
+        canonicalPaths.invalidate(paths);
+        injectionCache.invalidate(paths);
+        if (paths == null) {
+            chunks.clear();
+            return;
+        }
+        Set<String> known = new HashSet<String>();
+        for (Map.Entry<String, FileChunks> entry : chunks.entrySet()) {
+            for (FSFile source : entry.getValue().sources) {
+                known.add(normalize(source.getAbsolutePath()));
+                if (isAffected(source.getAbsolutePath(), paths)) {
+                    chunks.remove(entry.getKey());
+                    break;
+                }
+            }
+        }
+
+        //created or deleted files may change which file is found first in
+        // source bases, results using extra sources must be recreated
+        boolean structural = false;
+        for (String path : paths) {
+            if (!known.contains(path) || !new File(path).isFile()) {
+                structural = true;
+                break;
+            }
+        }
+        if (structural) {
+            for (Map.Entry<String, FileChunks> entry : chunks.entrySet()) {
+                if (entry.getValue().sources.size() > 1) {
+                    chunks.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if path is one of given paths or is located in one of them.
+     * Null paths set means all paths.
+     *
+     * @param path absolute path
+     * @param paths normalized absolute paths
+     * @return true if affected
+     */
+    public static boolean isAffected(String path, Set<String> paths) {
+        if (paths == null) {
+            return true;
+        }
+        File file = new File(normalize(path));
+        while (file != null) {
+            if (paths.contains(file.getPath())) {
+                return true;
+            }
+            file = file.getParentFile();
+        }
+        return false;
+    }
+
+    /**
+     * @param path absolute path
+     * @return path with redundant elements (like "..") removed
+     */
+    public static String normalize(String path) {
+        return new File(path).toPath().normalize().toString();
+    }
+
+    private static String key(FSFile file, String extension) {
+        return extension + File.pathSeparator + file.getAbsolutePath();
+    }
+
+    static long[] stamps(List<FSFile> sources) {
+        long[] result = new long[sources.size() * 2];
+        int i = 0;
+        for (FSFile source : sources) {
+            result[i++] = source.lastModified();
+            result[i++] = source.length();
+        }
+        return result;
+    }
+}
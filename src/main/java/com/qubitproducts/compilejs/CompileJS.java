@@ -23,21 +23,25 @@ import com.qubitproducts.compilejs.processors.JSStringProcessor;
 import static com.qubitproducts.compilejs.MainProcessorHelper.chunkToExtension;
 import com.qubitproducts.compilejs.fs.CFile;
 import com.qubitproducts.compilejs.fs.FSFile;
+import com.qubitproducts.compilejs.fs.LinesCache;
 import com.qubitproducts.compilejs.processors.InjectionProcessor;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.nio.charset.Charset;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +52,9 @@ import java.util.logging.Logger;
 public class CompileJS {
 
     private Map<String, List<String>> lineReaderCache = null;
+    private final Map<String, DependencyGraphCache> dependencyGraphCaches =
+        new HashMap<String, DependencyGraphCache>();
+    private CompilationCache compilationCache = null;
     public static String MORE_ARGS = "\nNeed more arguments.\n"
         + "\n"
         + "Example:\n"
@@ -224,10 +231,35 @@ public class CompileJS {
         + " --help,-h Shows this text                                        \n"
         + " --config [filename] Default file name is compilejs.properties \n"
         + " --watch If added, compilejs will repeat process each time specified\n"
-        + "        source file/path file system tree change occurs.\n"
+        + "        source file/path file system tree change occurs. Only\n"
+        + "        changed files are read again and only changed outputs\n"
+        + "        are written.\n"
+        + " --watch-debounce Milliseconds without file system events to wait\n"
+        + "        for before compiling, so many changes (saving files, git\n"
+        + "        checkout) result in one compilation. Default: "
+        + Watcher.DEFAULT_DEBOUNCE + "\n"
+        + " --watch-excluded Comma separated files and directories that\n"
+        + "        should not be watched (build directories, node_modules).\n"
+        + "        Outputs are never watched.\n"
         + " --charset If specified \"system\" then system default will be used\n"
         + "        unless other value is passed (like ISO-8859 etc.).\n"
         + "        By default UTF-8 is used.\n"
+        + " --threads Number of threads used to scan files for dependencies.\n"
+        + "        Default: 1. Order of output does not depend on it.\n"
+        + " --line-cache-size Memory budget in MB for files lines kept\n"
+        + "        between compilations (watch mode). Least recently used files\n"
+        + "        are dropped first. Default: "
+        + (LinesCache.DEFAULT_BUDGET / 1024 / 1024) + "\n"
+        + " --deps-cache If added, dependency directives found in files will be\n"
+        + "        stored in [output].deps file. Next runs will read only files\n"
+        + "        that changed since (checked by size, time and checksum).\n"
+        + " --daemon Starts compilation daemon on loopback port, it keeps\n"
+        + "        compilers and their caches warm between compilations.\n"
+        + " --remote Sends compilation (arguments and current directory) to\n"
+        + "        the daemon and prints its output. If daemon is not running,\n"
+        + "        compilation runs as usual. Not applied with --watch.\n"
+        + " --daemon-stop Stops the daemon.\n"
+        + " --daemon-port Daemon port. Default: " + Daemon.DEFAULT_PORT + "\n"
         + "================================================================================";
 
     public static final Logger LOGGER
@@ -275,18 +307,70 @@ public class CompileJS {
           return;
         }
         
+        int port = Integer.parseInt(getParamFromArgs(
+            args,
+            "--daemon-port",
+            String.valueOf(Daemon.DEFAULT_PORT))[0].trim());
+
+        if (isSetInArgs(args, Daemon.STOP)) {
+            if (Daemon.request(port, new CFile("").getAbsolutePath(),
+                    new String[]{Daemon.STOP}, ps) == -1) {
+                ps.println("Daemon is not running.");
+            }
+            return;
+        }
+
+        if (isSetInArgs(args, "--remote")
+                && getParamFromArgs(args, "--watch", null)[0] == null) {
+            //forward to daemon, compile here if it is not running
+            List<String> forwarded = new ArrayList<String>();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--daemon-port")) {
+                    i++;
+                } else if (!args[i].equals("--remote")) {
+                    forwarded.add(args[i]);
+                }
+            }
+            int status = Daemon.request(
+                port,
+                new CFile("").getAbsolutePath(),
+                forwarded.toArray(new String[0]),
+                ps);
+            if (status > 0) {
+                System.exit(status);
+            } else if (status == 0) {
+                return;
+            }
+        }
+
         //add prop file reading
         final CompileJS compiler = new CompileJS();
-        final Map<String, List<String>> cache =
-            new HashMap<String, List<String>>();
+        String cacheSize = getParamFromArgs(args, "--line-cache-size", null)[0];
+        final LinesCache cache = cacheSize == null
+            ? new LinesCache()
+            : new LinesCache(Long.parseLong(cacheSize.trim()) * 1024 * 1024);
         
         compiler.setLineReaderCache(cache);
         
+        if (isSetInArgs(args, "--daemon")) {
+            new Daemon(port, cache).run();
+            return;
+        }
+        
+        String watches = getParamFromArgs(args, "--watch", null)[0];
+        if (watches == null) {
+            //single compilation
+            cache.setValidating(false);
+        }
+
         try {
+            if (watches != null) {
+                //keep processing results between compilations
+                compiler.setCompilationCache(new CompilationCache());
+            }
+            
             List<String> outputs = compiler.compile(args);
 
-            String watches = getParamFromArgs(args, "--watch", null)[0];
-            
             if (watches != null && outputs != null) {
                 String[] paths = watches.split(",");
                 for (int i = 0; i < paths.length; i++) {
@@ -304,29 +388,73 @@ public class CompileJS {
                 System.out.println(
                     "Watch option specified - watching sources...");
 
+                final Set<String> changed = new HashSet<String>();
+                long debounce = Long.parseLong(getParamFromArgs(
+                    args,
+                    "--watch-debounce",
+                    String.valueOf(Watcher.DEFAULT_DEBOUNCE))[0].trim());
+                
+                List<String> watched = new ArrayList<String>();
                 for (String path : pathsList) {
-                                        
                     //get all absolute paths
-                    path = new CFile(compiler.cwd, path, true)
-                        .getAbsolutePath();
-                    //attach wather
-                    new Watcher().watch(
-                        path,
-                        new Callback() {
-                            @Override
-                            public void call(Object o) {
-                                try {
-                                    cache.clear();
+                    watched.add(new CFile(compiler.cwd, path, true)
+                        .getAbsolutePath());
+                }
+                
+                //never watch what compilation writes
+                List<String> excludes = new ArrayList<String>(outputs);
+                for (DependencyGraphCache graphCache 
+                        : compiler.dependencyGraphCaches.values()) {
+                    excludes.add(graphCache.getLocation().getAbsolutePath());
+                }
+                String excluded = 
+                    getParamFromArgs(args, "--watch-excluded", null)[0];
+                if (excluded != null) {
+                    for (String path : excluded.split(",")) {
+                        if (!path.trim().equals("")) {
+                            excludes.add(new CFile(compiler.cwd, path.trim(), 
+                                true).getAbsolutePath());
+                        }
+                    }
+                }
+                
+                //watcher reports changes of watched files only
+                cache.setWatched(watched, excludes);
+
+                //attach wather
+                Watcher watcher = new Watcher();
+                watcher.setDebounce(debounce);
+                watcher.watch(
+                    watched,
+                    new Callback() {
+                        @Override
+                        public void call(Object o) {
+                            try {
+                                synchronized (compiler) {
+                                    Set<String> paths;
+                                    synchronized (changed) {
+                                        paths = new HashSet<String>(changed);
+                                        changed.clear();
+                                    }
+                                    compiler.invalidate(paths);
                                     compiler.compile(args);
-                                } catch (Exception ex) {
-                                    Logger.getLogger(CompileJS.class.getName())
-                                    .log(Level.SEVERE, null, ex);
                                 }
+                            } catch (Exception ex) {
+                                Logger.getLogger(CompileJS.class.getName())
+                                .log(Level.SEVERE, null, ex);
                             }
-                        },
-                        null,
-                        outputs);
-                }
+                        }
+                    },
+                    new Callback() {
+                        @Override
+                        public void call(Object o) {
+                            synchronized (changed) {
+                                changed.add(((Path) o)
+                                    .toAbsolutePath().normalize().toString());
+                            }
+                        }
+                    },
+                    excludes);
             }
         } finally {
             //wil be released
@@ -336,9 +464,10 @@ public class CompileJS {
 
     public static String PROPERTY_FILE_NAME = "compilejs.config";
     private String cwd;
+    private String workingDirectory = null;
 
     public List<String> readConfig(String fname) {
-        CFile file = new CFile(fname);
+        CFile file = new CFile(workingDirectory, fname, true);
         if (!file.exists()) {
             return null;
         }
@@ -426,7 +555,7 @@ public class CompileJS {
     String getCwdFromArgs(String[] args) throws IOException {
         String arg = getParamFromArgs(args, "--cwd", null)[0];
         if (arg != null) {
-            return new CFile(arg).getCanonicalPath();
+            return new CFile(workingDirectory, arg, true).getCanonicalPath();
         }
         return arg;
     }
@@ -449,7 +578,9 @@ public class CompileJS {
         args = validateArrayForNulls(args);
 
         if (cwd == null) {
-            cwd = new CFile("").getAbsolutePath();
+            cwd = workingDirectory == null
+                ? new CFile("").getAbsolutePath()
+                : new CFile(workingDirectory).getAbsolutePath();
         }
         
         /// normal process, refactor it
@@ -492,6 +623,8 @@ public class CompileJS {
         boolean checkIfDependencyExistsOption = true;
         boolean perExtensions = true;
         boolean createDirsForOutput = false;
+        boolean dependencyGraphCache = false;
+        int threads = 1;
 
         ArrayList<String> excludedFiles = new ArrayList<String>();
         excludedFiles.add(PROPERTY_FILE_NAME);
@@ -635,6 +768,10 @@ public class CompileJS {
                     excludedListFiles.addAll(Arrays.asList(parts));
                 } else if (arg.equals("--create-output-dirs")) {
                     createDirsForOutput = true;
+                } else if (arg.equals("--deps-cache")) {
+                    dependencyGraphCache = true;
+                } else if (arg.equals("--threads")) {
+                    threads = Integer.parseInt(args[++i].trim());
                 } else if (arg.equals("--charset")) {
                     String charset = args[++i].toLowerCase().trim();
                     if (charset.equals("system")) {
@@ -647,7 +784,8 @@ public class CompileJS {
 //                    options.put("html-output", "true");
 //                }
             }
-        } catch (NullPointerException | IndexOutOfBoundsException ex) {
+        } catch (NullPointerException | IndexOutOfBoundsException 
+            | NumberFormatException ex) {
             exit = true;
         }
 
@@ -778,6 +916,8 @@ public class CompileJS {
                 + "\n  --options: " + options
                 + "\n  --add-excluded-files: " + excludedFilesString
                 + "\n  --file-search-excluded: " + excludedDirsString
+                + "\n  --deps-cache: " + dependencyGraphCache
+                + "\n  --threads: " + threads
                 + "\n\n");
         }
 
@@ -852,6 +992,22 @@ public class CompileJS {
                     mainProcessor.setCheckEveryLine(false);
                 }
 
+                mainProcessor.setThreads(threads < 1 ? 1 : threads);
+
+                if (compilationCache != null) {
+                    compilationCache.validate(
+                        cwd + File.pathSeparator + Arrays.toString(args));
+                    mainProcessor.setCompilationCache(compilationCache);
+                }
+
+                if (dependencyGraphCache) {
+                    mainProcessor.setDependencyGraphCache(
+                        this.getDependencyGraphCache(output));
+                } else if (compilationCache != null) {
+                    mainProcessor.setDependencyGraphCache(
+                        compilationCache.getDependencyGraphCache());
+                }
+
                 Map<String, String> paths = mainProcessor
                     .getFilesListFromPaths(
                         sourcesPaths,
@@ -883,7 +1039,7 @@ public class CompileJS {
 
                     try {
                         logToConsole(result);
-                        writer.saveString(result, savingCharset);
+                        saveOutput(writer, result);
                         outputs.add(writer.getAbsolutePath());
                     } finally {
                     }
@@ -944,6 +1100,10 @@ public class CompileJS {
 
                 if (info) {
                     ps.println(" === Merging/Index finished. ===\n");
+                    if (lineReaderCache instanceof LinesCache) {
+                        ps.println(" === Lines cache: " 
+                            + lineReaderCache + " ===\n");
+                    }
                     ps.println(" === Heap: "
                         + Runtime.getRuntime().totalMemory() / 1024 / 1024
                         + "MB ===\n");
@@ -980,10 +1140,10 @@ public class CompileJS {
      */
     private List<String> processPerExtensions(
         Map<String, String> paths,
-        MainProcessor mainProcessor,
+        final MainProcessor mainProcessor,
         String out,
         Map<String, String> options,
-        List<String> wraps)
+        final List<String> wraps)
         throws IOException {
 
         Map<String, String> other
@@ -1015,9 +1175,10 @@ public class CompileJS {
             }
         }
 
-        //all string chunks map
-        Map<String, StringBuilder> allchunks
-            = new HashMap<String, StringBuilder>();
+        //all chunks, spooled per output extension
+        ChunkOutputs allchunks = new ChunkOutputs();
+        //chunks of each extension group, merged to all chunks in order
+        List<ChunkOutputs> groupsChunks = new ArrayList<ChunkOutputs>();
 
         //are there any wraps defined? wraps are the wrapping codes that
         // define logical; chunks of code, example: *~css*
@@ -1025,151 +1186,194 @@ public class CompileJS {
 
         List<String> outputs = new ArrayList<String>();
         
-        //process all files grouped by extension
-        for (Map.Entry<String, Map<String, String>> entrySet : 
-                extensionToNameMap.entrySet()) {
-            Map<String, String> filePaths = entrySet.getValue();
-            String ext = entrySet.getKey();
-          
-            String currentOut = out + "." + ext;
-            if (noWraps) {
-
-                //nothing to search for wraps - then just merge
-                CFile writerFile = new CFile(currentOut);
-                BufferedWriter writer = null;
-                try {
-                    writer = writerFile.getBufferedWriter(true);
-                    mainProcessor.mergeFiles(filePaths, true, writer, currentOut);
+        try {
+            //process all files grouped by extension, groups are independent
+            // and run concurrently if processor has more threads
+            List<Callable<Void>> groups = new ArrayList<Callable<Void>>();
+            for (Map.Entry<String, Map<String, String>> entrySet : 
+                    extensionToNameMap.entrySet()) {
+                final Map<String, String> filePaths = entrySet.getValue();
+                final String ext = entrySet.getKey();
+
+                final String currentOut = out + "." + ext;
+                if (noWraps) {
+
+                    //nothing to search for wraps - then just merge
+                    final CFile writerFile = new CFile(currentOut);
+                    groups.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            OutputFile output = new OutputFile(
+                                writerFile.getAbsolutePath(), null);
+                            try {
+                                mainProcessor.mergeFiles(filePaths, true,
+                                    output.open(), currentOut);
+                                if (!output.commit()) {
+                                    logToConsole("Output unchanged: "
+                                        + writerFile.getAbsolutePath()
+                                        + "\n");
+                                }
+                            } finally {
+                                output.abort();
+                            }
+                            return null;
+                        }
+                    });
                     outputs.add(writerFile.getAbsolutePath());
-                } finally {
-                    if (writer != null) {
-                        writer.flush();
-                        writer.close();
-                    }
+                } else {
+                    // if there are wraps defined: split all files contents into 
+                    // wrapped blocks - per wrap definition 
+                    // chunks are grouped by extensions, not output, 
+                    // so example:
+                    // "": "defulaut output"
+                    // "htm": ".className {sdfgdasf} "
+                    // "htm": "<div/>"
+                    // and streamed to spools as files are processed
+                    final ChunkOutputs groupChunks = new ChunkOutputs();
+                    groupsChunks.add(groupChunks);
+                    groups.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            mainProcessor
+                                .mergeFilesWithChunksAndStripFromWraps(
+                                filePaths,
+                                true,
+                                currentOut,
+                                wraps,
+                                ext,
+                                groupChunks);
+                            return null;
+                        }
+                    });
                 }
-            } else {
-                // if there are wraps defined: split all files contents into 
-                // wrapped blocks - per wrap definition 
-                // chunks returned are mapped by extensions, not output, 
-                // so example:
-                // "": "defulaut output"
-                // "htm": ".className {sdfgdasf} "
-                // "htm": "<div/>"
-
-                Map<String, StringBuilder> chunks
-                    = mainProcessor.mergeFilesWithChunksAndStripFromWraps(
-                        filePaths,
-                        true,
-                        currentOut,
-                        wraps,
-                        ext);
-                mergeChunks(allchunks, chunks);
             }
-        }
 
-        //once wraps are extracted and grouped we can proceed some options
-        // if html to js is applied, html wraps will be converted to javascript
-        // code appending html to DOM.
-        if (options.containsKey("html2js")) {
-            String[] types = new String[]{"htm"};//used to be many types allowed
-            for (String type : types) {
-                StringBuilder html = allchunks.get(type);
-                if (html != null) {
-                    StringBuilder[] newJS = null;
-                    if (!options.containsKey("html2js-multiline")) {
-                        //returns two chunks to inject passed callback
-                        newJS = turnHTMLToJS(html.toString().replace("\n", ""));
-                    } else {
-                        newJS = turnHTMLToJS(html.toString());
-                    }
-                    allchunks.remove(type);
-                    StringBuilder js = allchunks.get("js");
-                    if (js != null) {
-                        allchunks.put("js", newJS[0]
-                            .append("function(){\n")
-                            .append(js)
-                            .append("\n}")
-                            .append(newJS[1]));
-                    } else {
-                        allchunks.put("js", newJS[0].append(newJS[1]));
+            mainProcessor.invokeAll(groups);
+            for (ChunkOutputs groupChunks : groupsChunks) {
+                allchunks.append(groupChunks);
+            }
+
+            //once wraps are extracted and grouped we can proceed some options
+            // if html to js is applied, html wraps will be converted to javascript
+            // code appending html to DOM.
+            if (options.containsKey("html2js")) {
+                String[] types = new String[]{"htm"};//used to be many types allowed
+                for (String type : types) {
+                    List<Object> html = allchunks.get(type);
+                    if (html != null) {
+                        //lines of html in javascript array
+                        List<Object> newJS = allchunks.toJSLines(html,
+                            !options.containsKey("html2js-multiline"));
+                        allchunks.remove(type);
+                        allchunks.put("js", wrapJS(
+                            htpl1, newJS, htpl2, allchunks.get("js"), htpl3));
                     }
                 }
             }
-        }
-        //same option like in html case
-        if (options.containsKey("css2js")) {
-            StringBuilder css = allchunks.get("css");
-            if (css != null) {
-                StringBuilder[] newJS = null;
-                if (!options.containsKey("css2js-multiline")) {
-                    //returns two chunks to inject passed callback
-                    newJS = turnCSSToJS(css.toString().replace("\n", ""));
-                } else {
-                    newJS = turnCSSToJS(css.toString());
-                }
-                allchunks.remove("css");
-                StringBuilder js = allchunks.get("js");
-                if (js != null) {
-                    allchunks.put("js", newJS[0]
-                        .append("function(){\n")
-                        .append(js)
-                        .append("\n}")
-                        .append(newJS[1]));
-                } else {
-                    allchunks.put("js", newJS[0].append(newJS[1]));
+            //same option like in html case
+            if (options.containsKey("css2js")) {
+                List<Object> css = allchunks.get("css");
+                if (css != null) {
+                    List<Object> newJS = allchunks.toJSLines(css,
+                        !options.containsKey("css2js-multiline"));
+                    allchunks.remove("css");
+                    allchunks.put("js", wrapJS(
+                        tpl1, newJS, tpl2, allchunks.get("js"), tpl3));
                 }
             }
-        }
 
-        // when wraps are applied, contents can be redirected and grouped
-        // into files matching extension to wrap name, 3 are selected to be 
-        // extracted:
-        // js, htm, css outputs...
-        if (!noWraps) {
-            //if single html page option as output is applied, everything will
-            //be put into one html "exe"
-            if (options.containsKey("html-output")) {
-                StringBuilder js = allchunks.get("js");
-                StringBuilder css = allchunks.get("css");
-                StringBuilder html = allchunks.get("htm");
-                StringBuilder index = new StringBuilder();
-//                index.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\"\n");
-//                index.append("\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n");
-//                index.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n");
-                index.append("<html>\n");
-                index.append("<head>\n");
-                index.append("<meta http-equiv=\"Content-Type\" content=\"text/html;charset=utf-8\" />");
-                index.append("<style>\n");
-                index.append(css == null ? "" : css);
-                index.append("\n</style>\n");
-                index.append("</head>\n");
-                index.append("<body>\n");
-                index.append("<div class='templates'>\n");
-                index.append(html == null ? "" : html);
-                index.append("\n</div>\n");
-                index.append("<script type=\"text/javascript\">\n//<![CDATA[\n");
-                index.append(js == null ? "" : js);
-                index.append("\n//]]>\n</script>\n");
-                index.append("</body>\n");
-                index.append("</html>");
-                CFile output = new CFile(out + ".htm");//xhtml
-                output.saveString(index.toString(), savingCharset);
-                outputs.add(output.getAbsolutePath());
-                return outputs;
-            } else {
-                if (allchunks.isEmpty()) {
-                    logToConsole("\n\n>>> No content to write. <<<\n\n\n");
+            // when wraps are applied, contents can be redirected and grouped
+            // into files matching extension to wrap name, 3 are selected to be 
+            // extracted:
+            // js, htm, css outputs...
+            if (!noWraps) {
+                //if single html page option as output is applied, everything will
+                //be put into one html "exe"
+                if (options.containsKey("html-output")) {
+                    List<Object> js = allchunks.get("js");
+                    List<Object> css = allchunks.get("css");
+                    List<Object> html = allchunks.get("htm");
+                    List<Object> index = new ArrayList<Object>();
+    //                index.add("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\"\n");
+    //                index.add("\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n");
+    //                index.add("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n");
+                    index.add("<html>\n");
+                    index.add("<head>\n");
+                    index.add("<meta http-equiv=\"Content-Type\" content=\"text/html;charset=utf-8\" />");
+                    index.add("<style>\n");
+                    if (css != null) {
+                        index.addAll(css);
+                    }
+                    index.add("\n</style>\n");
+                    index.add("</head>\n");
+                    index.add("<body>\n");
+                    index.add("<div class='templates'>\n");
+                    if (html != null) {
+                        index.addAll(html);
+                    }
+                    index.add("\n</div>\n");
+                    index.add("<script type=\"text/javascript\">\n//<![CDATA[\n");
+                    if (js != null) {
+                        index.addAll(js);
+                    }
+                    index.add("\n//]]>\n</script>\n");
+                    index.add("</body>\n");
+                    index.add("</html>");
+                    CFile output = new CFile(out + ".htm");//xhtml
+                    mainProcessor.writeOutput(allchunks, index,
+                        output.getAbsolutePath(), savingCharset);
+                    outputs.add(output.getAbsolutePath());
+                    return outputs;
                 } else {
-                    //...if many outputs: many outputs wil be written
-                    outputs.addAll(
-                        mainProcessor.writeOutputs(allchunks, out, true));
+                    if (allchunks.isEmpty()) {
+                        logToConsole("\n\n>>> No content to write. <<<\n\n\n");
+                    } else {
+                        //...if many outputs: many outputs wil be written
+                        outputs.addAll(
+                            mainProcessor.writeOutputs(allchunks, out));
+                    }
                 }
             }
+        } finally {
+            for (ChunkOutputs groupChunks : groupsChunks) {
+                groupChunks.close();
+            }
+            allchunks.close();
         }
         
         return outputs;
     }
 
+    /**
+     * Composes javascript content from template with converted lines and
+     * optional javascript code wrapped in callback function.
+     * 
+     * @param prefix template start
+     * @param lines converted lines
+     * @param suffix template end, before callback
+     * @param js javascript code or null
+     * @param end template end, after callback
+     * @return content parts
+     */
+    private static List<Object> wrapJS(
+        String prefix,
+        List<Object> lines,
+        String suffix,
+        List<Object> js,
+        String end) {
+        List<Object> result = new ArrayList<Object>();
+        result.add(prefix);
+        result.addAll(lines);
+        result.add(suffix);
+        if (js != null) {
+            result.add("function(){\n");
+            result.addAll(js);
+            result.add("\n}");
+        }
+        result.add(end);
+        return result;
+    }
+
     static String tpl1
         = "(function (callback) {\n"
         + "    var check = function () {\n"
@@ -1199,23 +1403,8 @@ public class CompileJS {
     static String tpl3 = "));";
 
     static StringBuilder[] turnCSSToJS(String css) {
-        String[] lines = css.split("\n");
         StringBuilder builder = new StringBuilder(tpl1);
-        int i = 0;
-        int size = lines.length;
-        for (String line : lines) {
-            line = line.replace("\\", "\\\\");
-            line = line.replace("\"", "\\\"");
-            builder.append("\t\"");
-            builder.append(line);
-            builder.append("\\n\"");
-            i++;
-            if (i < size) {
-                builder.append(",\n");
-            } else {
-                builder.append("\n");
-            }
-        }
+        appendAsJSLines(css, builder);
         builder.append(tpl2);
         return new StringBuilder[]{builder, new StringBuilder(tpl3)};
     }
@@ -1245,25 +1434,44 @@ public class CompileJS {
     static String htpl3 = "));";
 
     static StringBuilder[] turnHTMLToJS(String html) {
-        String[] lines = html.split("\n");
         StringBuilder builder = new StringBuilder(htpl1);
-        int i = 0;
-        int size = lines.length;
-        for (String line : lines) {
-            line = line.replace("\\", "\\\\");
-            line = line.replace("\"", "\\\"");
+        appendAsJSLines(html, builder);
+        builder.append(htpl2);
+        return new StringBuilder[]{builder, new StringBuilder(htpl3)};
+    }
+
+    /**
+     * Appends text lines as javascript strings array items, one per line.
+     * Lines are same as of text.split("\n"): trailing empty lines are
+     * skipped and empty text is one empty line.
+     *
+     * @param text
+     * @param builder
+     */
+    static void appendAsJSLines(String text, StringBuilder builder) {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end == 0 && text.length() > 0) {
+            return;
+        }
+        int start = 0;
+        while (true) {
+            int eol = text.indexOf('\n', start);
+            if (eol == -1 || eol > end) {
+                eol = end;
+            }
             builder.append("\t\"");
-            builder.append(line);
+            JSEscaper.QUOTES.escape(text, start, eol, builder);
             builder.append("\\n\"");
-            i++;
-            if (i < size) {
-                builder.append(",\n");
-            } else {
+            if (eol == end) {
                 builder.append("\n");
+                return;
             }
+            builder.append(",\n");
+            start = eol + 1;
         }
-        builder.append(htpl2);
-        return new StringBuilder[]{builder, new StringBuilder(htpl3)};
     }
 
     /**
@@ -1299,6 +1507,93 @@ public class CompileJS {
         }
     }
 
+    /**
+     * Writes output file unless it already has same content.
+     * @param file
+     * @param content
+     * @throws IOException 
+     */
+    private void saveOutput(CFile file, String content) throws IOException {
+        String path = file.getAbsolutePath();
+        if (!OutputFile.write(path, content, savingCharset)) {
+            logToConsole("Output unchanged: " + path + "\n");
+        }
+    }
+
+    /**
+     * Invalidates cached state of given files and directories, so next
+     * compilation reads them again. Null means everything.
+     * @param paths normalized absolute paths
+     */
+    public void invalidate(Set<String> paths) {
+        if (lineReaderCache != null) {
+            if (paths == null) {
+                lineReaderCache.clear();
+            } else {
+                for (String path : 
+                        new ArrayList<String>(lineReaderCache.keySet())) {
+                    if (CompilationCache.isAffected(path, paths)) {
+                        lineReaderCache.remove(path);
+                    }
+                }
+            }
+        }
+        if (compilationCache != null) {
+            compilationCache.invalidate(paths);
+        }
+        for (DependencyGraphCache cache : dependencyGraphCaches.values()) {
+            cache.invalidate(paths);
+        }
+    }
+
+    /**
+     * @return the compilation cache, null if not used
+     */
+    public CompilationCache getCompilationCache() {
+        return compilationCache;
+    }
+
+    /**
+     * @param compilationCache cache kept between compilations, null to
+     *  compile from scratch each time
+     */
+    public void setCompilationCache(CompilationCache compilationCache) {
+        this.compilationCache = compilationCache;
+    }
+
+    /**
+     * @return the directory relative --cwd and --config paths are resolved
+     *  against, null for the process current directory
+     */
+    public String getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /**
+     * @param workingDirectory the directory relative --cwd and --config
+     *  paths are resolved against (daemon client directory)
+     */
+    public void setWorkingDirectory(String workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    /**
+     * Dependency graph cache for given output. Cache is kept between 
+     * compilations of the same output (watch mode).
+     * @param output
+     * @return cache instance
+     */
+    private DependencyGraphCache getDependencyGraphCache(String output) {
+        FSFile location = DependencyGraphCache.getLocationForOutput(output);
+        DependencyGraphCache cache = 
+            dependencyGraphCaches.get(location.getAbsolutePath());
+        if (cache == null) {
+            cache = new DependencyGraphCache(location);
+            dependencyGraphCaches.put(location.getAbsolutePath(), cache);
+        }
+        return cache;
+    }
+
     /**
      * @return the lineReaderCache
      */
@@ -0,0 +1,366 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compilation daemon. Keeps compilers, with their lines, dependencies and
+ * chunks caches, and JIT compiled code between compilations, so build
+ * scripts running compilejs many times do not pay JVM start up and cold
+ * caches each time.
+ *
+ * Daemon listens on loopback socket and compiles requests one by one.
+ * Request contains client working directory and arguments, console output
+ * is streamed back to the client. Compiler (and its caches) is kept for
+ * each distinct working directory and arguments, up to MAX_COMPILERS least
+ * recently used. Caches kept are validated by files modification time and
+ * size, per run caches are cleared by each compilation as usual.
+ *
+ * Daemon writes a token file, readable by the owner only, in
+ * ~/.compilejs directory - client must send the token with the request.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class Daemon {
+
+    public static final int DEFAULT_PORT = 7737;
+    public static final int MAX_COMPILERS = 8;
+
+    static final int PROTOCOL = 1;
+    static final String STOP = "--daemon-stop";
+    static final byte OUTPUT = 'O';
+    static final byte EXIT = 'E';
+
+    private static final int READ_TIMEOUT = 30000;
+
+    private final int port;
+    private final Map<String, List<String>> lineReaderCache;
+    private final Map<String, CompileJS> compilers =
+        new LinkedHashMap<String, CompileJS>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CompileJS> eldest) {
+                return size() > MAX_COMPILERS;
+            }
+        };
+    private ServerSocket server = null;
+    private volatile boolean running = false;
+
+    /**
+     * @param port loopback port
+     * @param lineReaderCache lines cache shared by all compilers
+     */
+    public Daemon(int port, Map<String, List<String>> lineReaderCache) {
+        this.port = port;
+        this.lineReaderCache = lineReaderCache;
+    }
+
+    /**
+     * Serves requests until stop request is received.
+     *
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        InetSocketAddress address =
+            new InetSocketAddress(InetAddress.getByName(null), port);
+        if (isListening(address)) {
+            //keep token of the running daemon
+            throw new BindException("Port " + port + " is already in use.");
+        }
+        //token is in place before first request can be accepted
+        File tokenFile = getTokenFile(port);
+        String token = writeToken(tokenFile);
+        server = new ServerSocket();
+        try {
+            server.bind(address);
+        } catch (IOException ex) {
+            tokenFile.delete();
+            server.close();
+            throw ex;
+        }
+        running = true;
+        System.out.println("Daemon listening on port " + port + ".");
+        try {
+            while (running) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException ex) {
+                    if (!running) {
+                        break;
+                    }
+                    throw ex;
+                }
+                try {
+                    socket.setSoTimeout(READ_TIMEOUT);
+                    serve(socket, token);
+                } catch (IOException ex) {
+                    System.out.println("Request failed: " + ex.getMessage());
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            running = false;
+            tokenFile.delete();
+            server.close();
+        }
+    }
+
+    /**
+     * Stops serving, current request is finished first.
+     *
+     * @throws IOException
+     */
+    public void stop() throws IOException {
+        running = false;
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void serve(Socket socket, String token) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(socket.getOutputStream()));
+
+        if (in.readInt() != PROTOCOL || !MessageDigest.isEqual(
+                in.readUTF().getBytes(UTF_8), token.getBytes(UTF_8))) {
+            out.writeByte(EXIT);
+            out.writeInt(1);
+            out.flush();
+            return;
+        }
+
+        String cwd = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+
+        if (args.length == 1 && args[0].equals(STOP)) {
+            running = false;
+            out.writeByte(EXIT);
+            out.writeInt(0);
+            out.flush();
+            return;
+        }
+
+        PrintStream console = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.writeByte(OUTPUT);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        }, true, UTF_8.name());
+
+        int status = 1;
+        PrintStream ps = CompileJS.ps;
+        PrintStream stdout = System.out;
+        CompileJS.ps = console;
+        System.setOut(console);
+        try {
+            if (compile(cwd, args) != null) {
+                status = 0;
+            }
+        } catch (Exception ex) {
+            console.println(ex.getMessage() == null
+                ? ex.toString() : ex.getMessage());
+        } finally {
+            CompileJS.ps = ps;
+            System.setOut(stdout);
+        }
+        console.flush();
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+    }
+
+    private List<String> compile(String cwd, String[] args)
+        throws Exception {
+        String key = cwd + File.pathSeparator + Arrays.toString(args);
+        CompileJS compiler = compilers.get(key);
+        if (compiler == null) {
+            compiler = new CompileJS();
+            compiler.setWorkingDirectory(cwd);
+            compiler.setLineReaderCache(lineReaderCache);
+            compiler.setCompilationCache(new CompilationCache());
+            compilers.put(key, compiler);
+        }
+        return compiler.compile(args);
+    }
+
+    /**
+     * Sends compilation request to the daemon and prints its output.
+     *
+     * @param port daemon port
+     * @param cwd client working directory
+     * @param args compilation arguments
+     * @param console output for compilation messages
+     * @return compilation status (0 for success) or -1 if daemon is not
+     *  running
+     * @throws IOException
+     */
+    public static int request(int port, String cwd, String[] args,
+        PrintStream console) throws IOException {
+        File tokenFile = getTokenFile(port);
+        if (!tokenFile.exists()) {
+            return -1;
+        }
+        String token = new String(
+            Files.readAllBytes(tokenFile.toPath()), UTF_8).trim();
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(
+                new InetSocketAddress(InetAddress.getByName(null), port));
+        } catch (ConnectException ex) {
+            socket.close();
+            return -1;
+        }
+
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(PROTOCOL);
+            out.writeUTF(token);
+            out.writeUTF(cwd);
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            byte[] buffer = new byte[8192];
+            while (true) {
+                byte type = in.readByte();
+                if (type == EXIT) {
+                    console.flush();
+                    return in.readInt();
+                }
+                int len = in.readInt();
+                while (len > 0) {
+                    int read = Math.min(len, buffer.length);
+                    in.readFully(buffer, 0, read);
+                    console.write(buffer, 0, read);
+                    len -= read;
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    static File getTokenFile(int port) {
+        return new File(System.getProperty("user.home"),
+            ".compilejs" + File.separator + "daemon-" + port);
+    }
+
+    private static boolean isListening(InetSocketAddress address)
+        throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address);
+            return true;
+        } catch (ConnectException ex) {
+            return false;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Writes new token to temporary file readable by the owner only and
+     * moves it in place, so token file is never readable by others nor
+     * partially written.
+     */
+    private static String writeToken(File file) throws IOException {
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+        }
+
+        File dir = file.getParentFile();
+        dir.mkdirs();
+        Path temp;
+        try {
+            temp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp",
+                PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException ex) {
+            temp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+            temp.toFile().setReadable(false, false);
+            temp.toFile().setReadable(true, true);
+        }
+        try {
+            Files.write(temp, token.toString().getBytes(UTF_8));
+            try {
+                Files.move(temp, file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        file.deleteOnExit();
+        return token.toString();
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.MainProcessor.Types;
+import com.qubitproducts.compilejs.fs.CFile;
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of files dependency directives. Each file entry is keyed
+ * by absolute path and stamped with modification time, size and content
+ * checksum. Entry is reused as long as file did not change, so warm builds
+ * only need to parse changed files.
+ *
+ * Cache is stored in a single binary file, usually next to the output. If
+ * location is null, cache is kept in memory only.
+ * Whole cache is dropped if the scanning configuration (signature) differs
+ * from the one used to write it. Entries can be read and stored 
+ * concurrently, loading and saving cannot.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class DependencyGraphCache {
+
+    private static final int VERSION = 1;
+    private static final int NO_LINE = -1;
+
+    private final FSFile location;
+    private final Map<String, Entry> entries =
+        new ConcurrentHashMap<String, Entry>();
+    private final Map<String, Entry> used =
+        new ConcurrentHashMap<String, Entry>();
+    private String signature = null;
+    private boolean loaded = false;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    static class Entry {
+        long lastModified;
+        long length;
+        long checksum;
+        FileDependencies dependencies;
+    }
+
+    public DependencyGraphCache(FSFile location) {
+        this.location = location;
+    }
+
+    /**
+     * Loads cache from its location. Missing or incompatible cache file
+     * results with empty cache.
+     *
+     * @param signature scanning configuration signature
+     * @throws IOException
+     */
+    public void load(String signature) throws IOException {
+        if (loaded && signature.equals(this.signature)) {
+            used.clear();
+            return;
+        }
+
+        entries.clear();
+        used.clear();
+        this.signature = signature;
+        this.loaded = true;
+
+        if (location == null || !location.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(location.getInputStream()));
+            if (in.readInt() != VERSION
+                || !signature.equals(readString(in))) {
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String path = readString(in);
+                Entry entry = new Entry();
+                entry.lastModified = in.readLong();
+                entry.length = in.readLong();
+                entry.checksum = in.readLong();
+                FileDependencies deps = new FileDependencies();
+                if (in.readBoolean()) {
+                    deps.setExcluded(readString(in));
+                }
+                int directives = in.readInt();
+                for (int j = 0; j < directives; j++) {
+                    String depPath = readString(in);
+                    Types type = Types.valueOf(readString(in));
+                    deps.addDirective(depPath, type, readString(in));
+                }
+                entry.dependencies = deps;
+                entries.put(path, entry);
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            //broken cache is same as no cache
+            entries.clear();
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Writes entries used since last load to cache location. Entries of
+     * files that were not visited are dropped.
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        if (location == null) {
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(
+                new BufferedOutputStream(location.getOutputStream()));
+            out.writeInt(VERSION);
+            writeString(out, signature);
+            out.writeInt(used.size());
+            for (Map.Entry<String, Entry> item : used.entrySet()) {
+                Entry entry = item.getValue();
+                FileDependencies deps = entry.dependencies;
+                writeString(out, item.getKey());
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.length);
+                out.writeLong(entry.checksum);
+                out.writeBoolean(deps.isExcluded());
+                if (deps.isExcluded()) {
+                    writeString(out, deps.getExcludingLine());
+                }
+                List<Object[]> directives = deps.getDirectives();
+                out.writeInt(directives.size());
+                for (Object[] directive : directives) {
+                    writeString(out, (String) directive[0]);
+                    writeString(out, ((Types) directive[1]).name());
+                    writeString(out, (String) directive[2]);
+                }
+            }
+            out.flush();
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Returns cached dependencies for file if file did not change since
+     * it was cached, null otherwise.
+     *
+     * @param file
+     * @return cached dependencies or null
+     * @throws IOException
+     */
+    public FileDependencies get(FSFile file) throws IOException {
+        String path = file.getAbsolutePath();
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (entry.length != length) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.lastModified != lastModified) {
+            //touched but maybe not changed (checkouts etc.)
+            if (checksum(file) != entry.checksum) {
+                misses.incrementAndGet();
+                return null;
+            }
+            entry.lastModified = lastModified;
+        }
+
+        hits.incrementAndGet();
+        used.put(path, entry);
+        return entry.dependencies;
+    }
+
+    /**
+     * Stores dependencies scanned for the file, stamped with current file
+     * state. Dependencies scanned before the file changed are stamped with
+     * new state, use {@link #put(FSFile, FileDependencies, long, long, long)}
+     * with state taken before scanning.
+     *
+     * @param file
+     * @param dependencies
+     * @throws IOException
+     */
+    public void put(FSFile file, FileDependencies dependencies)
+        throws IOException {
+        put(file, dependencies, file.lastModified(), file.length(),
+            FileDependencies.NO_CHECKSUM);
+    }
+
+    /**
+     * Stores dependencies scanned for the file. If checksum was not computed
+     * while scanning, file is read again and nothing is stored if file
+     * changed since scanning.
+     *
+     * @param file
+     * @param dependencies
+     * @param lastModified file modification time taken before scanning
+     * @param length file length taken before scanning
+     * @param checksum CRC32 of file content computed while scanning,
+     *  FileDependencies.NO_CHECKSUM to read the file again
+     * @throws IOException
+     */
+    public void put(FSFile file, FileDependencies dependencies,
+        long lastModified, long length, long checksum) throws IOException {
+        if (checksum == FileDependencies.NO_CHECKSUM) {
+            checksum = checksum(file);
+            if (file.lastModified() != lastModified
+                || file.length() != length) {
+                //checksum is not of scanned content
+                return;
+            }
+        }
+        Entry entry = new Entry();
+        entry.lastModified = lastModified;
+        entry.length = length;
+        entry.checksum = checksum;
+        entry.dependencies = dependencies;
+        String path = file.getAbsolutePath();
+        entries.put(path, entry);
+        used.put(path, entry);
+    }
+
+    /**
+     * Removes entries of given files and files in given directories.
+     *
+     * @param paths normalized absolute paths
+     */
+    public void invalidate(Set<String> paths) {
+        for (String path : entries.keySet()) {
+            if (CompilationCache.isAffected(path, paths)) {
+                entries.remove(path);
+                used.remove(path);
+            }
+        }
+    }
+
+    /**
+     * @return the cache file location, null if kept in memory only
+     */
+    public FSFile getLocation() {
+        return location;
+    }
+
+    /**
+     * @return the hits count since creation
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the misses count since creation
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Default cache location for given output path.
+     *
+     * @param output
+     * @return cache location
+     */
+    public static FSFile getLocationForOutput(String output) {
+        return new CFile(output + ".deps");
+    }
+
+    static long checksum(FSFile file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[8192];
+        InputStream in = file.getInputStream();
+        try {
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                crc.update(buf, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String string)
+        throws IOException {
+        if (string == null) {
+            out.writeInt(NO_LINE);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len == NO_LINE) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task scanning files for dependency directives. Results are put
+ * to concurrent map keyed by absolute path. Files that could not be scanned
+ * are skipped - they will be scanned again, in order, by the dependency walk.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+class DependencyScanTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 16;
+
+    private final MainProcessor processor;
+    private final List<FSFile> files;
+    private final int from;
+    private final int to;
+    private final Map<String, FileDependencies> results;
+
+    DependencyScanTask(
+        MainProcessor processor,
+        List<FSFile> files,
+        int from,
+        int to,
+        Map<String, FileDependencies> results) {
+        this.processor = processor;
+        this.files = files;
+        this.from = from;
+        this.to = to;
+        this.results = results;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            for (int i = from; i < to; i++) {
+                FSFile file = files.get(i);
+                try {
+                    FileDependencies scan =
+                        processor.getFileDependencies(file);
+                    results.put(file.getAbsolutePath(),
+                        scan == null ? MainProcessor.NO_FILE : scan);
+                } catch (IOException ex) {
+                    //leave it to the walk
+                }
+            }
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new DependencyScanTask(processor, files, from, middle, results),
+                new DependencyScanTask(processor, files, middle, to, results));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.MainProcessor.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of scanning single file for dependency directives. Directives are
+ * kept in the order they appear in the file, each as Object[]{String path,
+ * Types type, String line} - same shape as used by dependency parser.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class FileDependencies {
+
+    /**
+     * Checksum not known, CRC32 values are never negative.
+     */
+    public static final long NO_CHECKSUM = -1;
+
+    private final List<Object[]> directives = new ArrayList<Object[]>();
+    private boolean excluded = false;
+    private String excludingLine = null;
+    private long checksum = NO_CHECKSUM;
+    private long lastModified = 0;
+    private long length = 0;
+
+    public void addDirective(String path, Types type, String line) {
+        directives.add(new Object[]{path, type, line});
+    }
+
+    /**
+     * @return directives found, Object[]{String path, Types type, String line}
+     */
+    public List<Object[]> getDirectives() {
+        return directives;
+    }
+
+    /**
+     * @return true if file contains one of file exclusion keywords
+     */
+    public boolean isExcluded() {
+        return excluded;
+    }
+
+    /**
+     * @param excludingLine the line that caused file to be excluded
+     */
+    public void setExcluded(String excludingLine) {
+        this.excluded = true;
+        this.excludingLine = excludingLine;
+    }
+
+    /**
+     * @return the line that caused file to be excluded
+     */
+    public String getExcludingLine() {
+        return excludingLine;
+    }
+
+    /**
+     * @return CRC32 of file content scanned, NO_CHECKSUM if not known
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @param checksum CRC32 of file content scanned
+     */
+    public void setChecksum(long checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return modification time of file taken before it was scanned
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return length of file taken before it was scanned
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @param lastModified modification time of file taken before scanning
+     * @param length length of file taken before scanning
+     */
+    public void setStamp(long lastModified, long length) {
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled wildcard path pattern, like "a/b/*.js" (import a.b.*). Star
+ * matches any characters in a name, "**" element matches any number of
+ * directories and element starting with "**" matches files in any
+ * subdirectory: "a/**.js" (import a.**) is same as "a/**&#47;*.js".
+ *
+ * Patterns are compiled once, see compile().
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class Glob {
+
+    public static final String ANY_DIRS = "**";
+    private static final char STAR = '*';
+
+    private static final Map<String, Glob> compiled =
+        new ConcurrentHashMap<String, Glob>();
+
+    //name parts between stars, null for ANY_DIRS element
+    private final String[][] elements;
+    private final String pattern;
+
+    private Glob(String pattern) {
+        this.pattern = pattern;
+        List<String[]> list = new ArrayList<String[]>();
+        int len = pattern.length();
+        int start = 0;
+        for (int i = 0; i <= len; i++) {
+            if (i == len || isSeparator(pattern.charAt(i))) {
+                if (i > start) {
+                    String element = pattern.substring(start, i);
+                    if (element.startsWith(ANY_DIRS)) {
+                        list.add(null);
+                        element = element.substring(1);
+                        while (element.startsWith(ANY_DIRS)) {
+                            element = element.substring(1);
+                        }
+                        if (element.length() > 1) {
+                            list.add(split(element));
+                        }
+                    } else {
+                        list.add(split(element));
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        //"**" at the end matches all files below
+        if (!list.isEmpty() && list.get(list.size() - 1) == null) {
+            list.add(split("*"));
+        }
+        elements = list.toArray(new String[list.size()][]);
+    }
+
+    /**
+     * @param pattern relative path pattern
+     * @return compiled pattern, cached
+     */
+    public static Glob compile(String pattern) {
+        Glob glob = compiled.get(pattern);
+        if (glob == null) {
+            glob = new Glob(pattern);
+            compiled.put(pattern, glob);
+        }
+        return glob;
+    }
+
+    /**
+     * @param path
+     * @return true if path contains wildcards
+     */
+    public static boolean isGlob(String path) {
+        return path != null && path.indexOf(STAR) != -1;
+    }
+
+    /**
+     * @return count of path elements
+     */
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     * @param element element index
+     * @return true if element matches any number of directories
+     */
+    public boolean isAnyDirs(int element) {
+        return elements[element] == null;
+    }
+
+    /**
+     * @param element element index, not ANY_DIRS
+     * @param name file or directory name
+     * @return true if name matches element
+     */
+    public boolean matches(int element, String name) {
+        String[] parts = elements[element];
+        if (parts.length == 1) {
+            return name.equals(parts[0]);
+        }
+        String first = parts[0];
+        String last = parts[parts.length - 1];
+        if (name.length() < first.length() + last.length()
+            || !name.startsWith(first)
+            || !name.endsWith(last)) {
+            return false;
+        }
+        int from = first.length();
+        int to = name.length() - last.length();
+        for (int i = 1; i < parts.length - 1; i++) {
+            int idx = name.indexOf(parts[i], from);
+            if (idx == -1 || idx + parts[i].length() > to) {
+                return false;
+            }
+            from = idx + parts[i].length();
+        }
+        return true;
+    }
+
+    /**
+     * Matches relative path, see SourceIndex.find() for matching files.
+     *
+     * @param path relative path
+     * @return true if path matches
+     */
+    public boolean matches(String path) {
+        List<String> names = new ArrayList<String>();
+        int len = path.length();
+        int start = 0;
+        for (int i = 0; i <= len; i++) {
+            if (i == len || isSeparator(path.charAt(i))) {
+                if (i > start) {
+                    names.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return matches(names, 0, 0);
+    }
+
+    private boolean matches(List<String> names, int name, int element) {
+        if (element == elements.length) {
+            return name == names.size();
+        }
+        if (isAnyDirs(element)) {
+            for (int i = name; i <= names.size(); i++) {
+                if (matches(names, i, element + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return name < names.size()
+            && matches(element, names.get(name))
+            && matches(names, name + 1, element + 1);
+    }
+
+    private static String[] split(String element) {
+        List<String> parts = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i <= element.length(); i++) {
+            if (i == element.length() || element.charAt(i) == STAR) {
+                parts.add(element.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return parts.toArray(new String[parts.size()]);
+    }
+
+    private static boolean isSeparator(char ch) {
+        return ch == '/' || ch == File.separatorChar;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolved injections (//:inject directives), by classpath. Each entry holds
+ * injected content and the files used to produce it together with paths
+ * they were found by.
+ *
+ * Entries are checked when taken: every path must still be found as the
+ * same file in source bases (see MainProcessor.findSourceFile) and files
+ * must have same modification time and size. Paths reported by the watcher
+ * are dropped with invalidate().
+ *
+ * Cache is kept between compilations by CompilationCache and is thread
+ * safe.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class InjectionCache {
+
+    private final Map<String, Injection> injections =
+        new ConcurrentHashMap<String, Injection>();
+
+    /**
+     * Injected content and files used to produce it.
+     */
+    public static class Injection {
+
+        private final String content;
+        private final List<String> paths;
+        private final List<FSFile> sources;
+        private final long[] stamps;
+
+        /**
+         * @param content injected content
+         * @param paths paths files were found by, injected file path first
+         * @param sources files found, in paths order
+         * @param stamps modification time and size of each source, taken
+         *  before it was read
+         */
+        public Injection(
+            String content,
+            List<String> paths,
+            List<FSFile> sources,
+            long[] stamps) {
+            this.content = content;
+            this.paths = paths;
+            this.sources = sources;
+            this.stamps = stamps;
+        }
+
+        /**
+         * @return injected content
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * @return paths files were found by, injected file path first
+         */
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        /**
+         * @return files used to produce content, injected file first
+         */
+        public List<FSFile> getSources() {
+            return sources;
+        }
+
+        /**
+         * @return modification time and size of each source, in sources
+         *  order
+         */
+        public long[] getStamps() {
+            return stamps;
+        }
+    }
+
+    /**
+     * @param key injection key, classpath and processor settings
+     * @param processor processor finding files in source bases
+     * @return injection, null if not cached or any of its files changed
+     */
+    public Injection get(String key, MainProcessor processor) {
+        Injection injection = injections.get(key);
+        if (injection == null) {
+            return null;
+        }
+        for (int i = 0; i < injection.paths.size(); i++) {
+            FSFile found = processor.findSourceFile(injection.paths.get(i));
+            if (found == null || !found.getAbsolutePath().equals(
+                injection.sources.get(i).getAbsolutePath())) {
+                injections.remove(key);
+                return null;
+            }
+        }
+        if (!Arrays.equals(injection.stamps,
+            CompilationCache.stamps(injection.sources))) {
+            injections.remove(key);
+            return null;
+        }
+        return injection;
+    }
+
+    /**
+     * @param key injection key, classpath and processor settings
+     * @param injection
+     */
+    public void put(String key, Injection injection) {
+        injections.put(key, injection);
+    }
+
+    /**
+     * Drops injections using given files or files in given directories.
+     * Null paths set drops all.
+     *
+     * @param paths normalized absolute paths
+     */
+    public void invalidate(Set<String> paths) {
+        if (paths == null) {
+            injections.clear();
+            return;
+        }
+        for (Map.Entry<String, Injection> entry : injections.entrySet()) {
+            for (FSFile source : entry.getValue().sources) {
+                if (CompilationCache.isAffected(
+                    source.getAbsolutePath(), paths)) {
+                    injections.remove(entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escaping of text to javascript double quoted string contents, single pass
+ * over the text with a lookup table. Runs of characters not escaped are
+ * appended to the destination at once, escapes are precomputed, so nothing
+ * is allocated.
+ *
+ * QUOTES escapes backslashes and double quotes only (css2js, html2js).
+ * STRING also escapes control characters (except tab) and characters
+ * above 512 which are not letters or digits, as unicode escapes (string and
+ * template chunks).
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class JSEscaper {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    //non printable characters above ascii, bit per character
+    private static final long[] NON_PRINTABLE = new long[65536 / 64];
+
+    static {
+        for (int ch = 513; ch < 65536; ch++) {
+            if (!Character.isLetterOrDigit((char) ch)) {
+                NON_PRINTABLE[ch >> 6] |= 1L << ch;
+            }
+        }
+    }
+
+    public static final JSEscaper QUOTES = new JSEscaper(false);
+    public static final JSEscaper STRING = new JSEscaper(true);
+
+    //escapes of ascii characters, null if not escaped
+    private final String[] ascii = new String[128];
+    //escaped ascii characters, bit per character (0-63 and 64-127)
+    private final long low;
+    private final long high;
+    private final boolean unicode;
+
+    private JSEscaper(boolean unicode) {
+        this.unicode = unicode;
+        ascii['\\'] = "\\\\";
+        ascii['"'] = "\\\"";
+        if (unicode) {
+            for (char ch = 0; ch < 32; ch++) {
+                if (ch != '\t') {
+                    ascii[ch] = "\\u00" + HEX[ch >> 4] + HEX[ch & 0xf];
+                }
+            }
+        }
+        long[] masks = new long[2];
+        for (int ch = 0; ch < 128; ch++) {
+            if (ascii[ch] != null) {
+                masks[ch >> 6] |= 1L << ch;
+            }
+        }
+        low = masks[0];
+        high = masks[1];
+    }
+
+    /**
+     * @param ch
+     * @return true if character is escaped
+     */
+    public boolean isEscaped(char ch) {
+        if (ch < 64) {
+            return (low & (1L << ch)) != 0;
+        }
+        if (ch < 128) {
+            return (high & (1L << ch)) != 0;
+        }
+        return unicode && (NON_PRINTABLE[ch >> 6] & (1L << ch)) != 0;
+    }
+
+    /**
+     * @param text
+     * @return escaped text
+     */
+    public String escape(String text) {
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        escape(text, 0, text.length(), builder);
+        return builder.toString();
+    }
+
+    /**
+     * @param text
+     * @param start
+     * @param end
+     * @param out where escaped text is appended
+     */
+    public void escape(CharSequence text, int start, int end,
+        StringBuilder out) {
+        try {
+            escape(text, start, end, (Appendable) out);
+        } catch (IOException ex) {
+            //not thrown by StringBuilder
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @param text
+     * @param start
+     * @param end
+     * @param out where escaped text is appended
+     * @throws IOException
+     */
+    public void escape(CharSequence text, int start, int end, Appendable out)
+        throws IOException {
+        int from = start;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (isEscaped(ch)) {
+                if (from < i) {
+                    out.append(text, from, i);
+                }
+                if (ch < 128) {
+                    out.append(ascii[ch]);
+                } else {
+                    out.append('\\').append('u')
+                        .append(HEX[(ch >> 12) & 0xf])
+                        .append(HEX[(ch >> 8) & 0xf])
+                        .append(HEX[(ch >> 4) & 0xf])
+                        .append(HEX[ch & 0xf]);
+                }
+                from = i + 1;
+            }
+        }
+        if (from < end) {
+            out.append(text, from, end);
+        }
+    }
+
+    /**
+     * @param text
+     * @param start
+     * @param end
+     * @param out where escaped text is written
+     * @throws IOException
+     */
+    public void escape(char[] text, int start, int end, Writer out)
+        throws IOException {
+        int from = start;
+        for (int i = start; i < end; i++) {
+            char ch = text[i];
+            if (isEscaped(ch)) {
+                if (from < i) {
+                    out.write(text, from, i - from);
+                }
+                if (ch < 128) {
+                    out.write(ascii[ch]);
+                } else {
+                    out.write('\\');
+                    out.write('u');
+                    out.write(HEX[(ch >> 12) & 0xf]);
+                    out.write(HEX[(ch >> 8) & 0xf]);
+                    out.write(HEX[(ch >> 4) & 0xf]);
+                    out.write(HEX[ch & 0xf]);
+                }
+                from = i + 1;
+            }
+        }
+        if (from < end) {
+            out.write(text, from, end - from);
+        }
+    }
+}
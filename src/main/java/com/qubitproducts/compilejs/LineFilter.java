@@ -0,0 +1,155 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+
+/**
+ * Chunk sink splitting chunks content to lines, as BufferedReader would do:
+ * "\n", "\r" and "\r\n" end lines and text after last line ending is a line
+ * only if it is not empty. Lines are passed as slices of appended text,
+ * copied only if a line spans more appends.
+ *
+ * Chunks not accepted by startLines() pass to the output unchanged.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public abstract class LineFilter implements ChunkSink {
+
+    protected final ChunkSink out;
+
+    private final StringBuilder partial = new StringBuilder();
+    private boolean lines = false;
+    private boolean cr = false;
+
+    /**
+     * @param out sink for processed chunks
+     */
+    public LineFilter(ChunkSink out) {
+        this.out = out;
+    }
+
+    /**
+     * Starts chunk, if it is processed output chunk must be started too.
+     *
+     * @param chunk chunk started, see ChunkSink.startChunk
+     * @return true if chunk is processed by lines, false to pass it
+     * @throws IOException
+     */
+    protected abstract boolean startLines(Chunk chunk) throws IOException;
+
+    /**
+     * Line of processed chunk, text must not be kept after the call.
+     *
+     * @param text
+     * @param start line start
+     * @param end line end, exclusive, without line ending
+     * @throws IOException
+     */
+    protected abstract void line(CharSequence text, int start, int end)
+        throws IOException;
+
+    /**
+     * Ends processed chunk, output chunk must be ended too.
+     *
+     * @throws IOException
+     */
+    protected abstract void endLines() throws IOException;
+
+    @Override
+    public final void startChunk(Chunk chunk) throws IOException {
+        lines = startLines(chunk);
+        cr = false;
+        partial.setLength(0);
+        if (!lines) {
+            out.startChunk(chunk);
+        }
+    }
+
+    @Override
+    public final Appendable append(CharSequence text, int start, int end)
+        throws IOException {
+        if (!lines) {
+            out.append(text, start, end);
+            return this;
+        }
+        int from = start;
+        if (cr && from < end && text.charAt(from) == '\n') {
+            from++;
+        }
+        cr = false;
+        for (int i = from; i < end; i++) {
+            char ch = text.charAt(i);
+            if (ch == '\n' || ch == '\r') {
+                if (partial.length() > 0) {
+                    partial.append(text, from, i);
+                    line(partial, 0, partial.length());
+                    partial.setLength(0);
+                } else {
+                    line(text, from, i);
+                }
+                if (ch == '\r') {
+                    if (i + 1 == end) {
+                        cr = true;
+                    } else if (text.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                }
+                from = i + 1;
+            }
+        }
+        partial.append(text, from, end);
+        return this;
+    }
+
+    @Override
+    public final Appendable append(CharSequence text) throws IOException {
+        if (text == null) {
+            text = "null";
+        }
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public final Appendable append(char ch) throws IOException {
+        return append(String.valueOf(ch), 0, 1);
+    }
+
+    @Override
+    public final void endChunk() throws IOException {
+        if (lines) {
+            if (partial.length() > 0) {
+                line(partial, 0, partial.length());
+                partial.setLength(0);
+            }
+            endLines();
+            lines = false;
+        } else {
+            out.endChunk();
+        }
+    }
+
+    /**
+     * Ends chunks stream and closes the output.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
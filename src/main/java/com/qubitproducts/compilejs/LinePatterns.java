@@ -0,0 +1,237 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import static com.qubitproducts.compilejs.MainProcessorHelper.EMPTY;
+import static com.qubitproducts.compilejs.MainProcessorHelper.TILC;
+import static com.qubitproducts.compilejs.MainProcessorHelper.replaceFirstChar;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All lines patterns of processor configuration compiled to one automaton:
+ * line ignores (-dl), file ignore markers (-df), stripped wraps (-dw) and
+ * chunks wraps (*~css* etc.).
+ *
+ * Patterns indexes: line ignores, file ignores, stripped wraps starts and
+ * ends (pairs) and chunks wraps starts and ends (pairs), see getters.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class LinePatterns {
+
+    public static final int IGNORE = 1;
+    public static final int FILE_IGNORE = 1 << 1;
+    public static final int STRIP = 1 << 2;
+    public static final int CHUNK = 1 << 3;
+
+    private final PatternsMatcher matcher;
+    private final String[] patterns;
+    private final List<String> wraps;
+    private final int ignoresTo;
+    private final int stripsFrom;
+    private final int chunksFrom;
+    private final String[][] chunkWraps;
+
+    /**
+     * @param lineIgnores lines containing any of are ignored
+     * @param fileIgnores files starting with any of are ignored
+     * @param strips wraps (ending markers) to strip, invalid ones are
+     *  skipped, see MainProcessorHelper.stripFromWrap
+     * @param wraps chunks wraps (ending markers)
+     */
+    public LinePatterns(
+        String[] lineIgnores,
+        String[] fileIgnores,
+        String[] strips,
+        List<String> wraps) {
+        List<String> list = new ArrayList<String>();
+        List<Integer> groups = new ArrayList<Integer>();
+
+        add(list, groups, lineIgnores, 0);
+        ignoresTo = list.size();
+        add(list, groups, fileIgnores, 1);
+
+        stripsFrom = list.size();
+        if (strips != null) {
+            for (String strip : strips) {
+                if (strip != null && strip.length() >= 3) {
+                    list.add(replaceFirstChar(strip, TILC, null));
+                    list.add(strip);
+                    groups.add(2);
+                    groups.add(2);
+                }
+            }
+        }
+
+        chunksFrom = list.size();
+        if (wraps != null) {
+            for (String wrap : wraps) {
+                if (wrap != null && !wrap.equals(EMPTY)) {
+                    list.add(replaceFirstChar(wrap, TILC, null));
+                    list.add(wrap);
+                    groups.add(3);
+                    groups.add(3);
+                }
+            }
+        }
+
+        this.wraps = wraps;
+        this.patterns = list.toArray(new String[list.size()]);
+        this.chunkWraps = new String[(patterns.length - chunksFrom) / 2][];
+        for (int i = 0; i < chunkWraps.length; i++) {
+            chunkWraps[i] = new String[]{
+                patterns[chunksFrom + 2 * i],
+                patterns[chunksFrom + 2 * i + 1]
+            };
+        }
+        int[] groupsArray = new int[groups.size()];
+        for (int i = 0; i < groupsArray.length; i++) {
+            groupsArray[i] = groups.get(i);
+        }
+        this.matcher = new PatternsMatcher(this.patterns, groupsArray);
+    }
+
+    private static void add(List<String> list, List<Integer> groups,
+        String[] strings, int group) {
+        if (strings != null) {
+            for (String string : strings) {
+                list.add(string);
+                groups.add(group);
+            }
+        }
+    }
+
+    /**
+     * @param wraps chunks wraps
+     * @return true if patterns were compiled with same chunks wraps
+     */
+    public boolean isFor(List<String> wraps) {
+        return this.wraps == null ? wraps == null : this.wraps.equals(wraps);
+    }
+
+    /**
+     * @param line
+     * @return true if line contains any of line ignores
+     */
+    public boolean isIgnored(CharSequence line) {
+        return matcher.contains(line, IGNORE);
+    }
+
+    /**
+     * @param line
+     * @return true if line starts with any of file ignores
+     */
+    public boolean isFileIgnored(CharSequence line) {
+        return matcher.startsWith(line, FILE_IGNORE);
+    }
+
+    /**
+     * @param found matched patterns
+     * @return index of first chunk wrap (in wraps order) which start was
+     *  found, -1 if none
+     */
+    public int getChunkStart(boolean[] found) {
+        for (int i = 0; i < chunkWraps.length; i++) {
+            if (found[chunksFrom + 2 * i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param found matched patterns
+     * @param wrap chunk wrap index
+     * @return true if chunk wrap end was found
+     */
+    public boolean isChunkEnd(boolean[] found, int wrap) {
+        return found[chunksFrom + 2 * wrap + 1];
+    }
+
+    /**
+     * @param wrap chunk wrap index
+     * @return Array of {starting, ending} wrap string
+     */
+    public String[] getChunkWrap(int wrap) {
+        return chunkWraps[wrap];
+    }
+
+    /**
+     * @return count of valid stripped wraps
+     */
+    public int getStripsCount() {
+        return (chunksFrom - stripsFrom) / 2;
+    }
+
+    /**
+     * @param strip stripped wrap index
+     * @return stripped wrap (ending marker)
+     */
+    public String getStripWrap(int strip) {
+        return patterns[stripsFrom + 2 * strip + 1];
+    }
+
+    /**
+     * @return count of patterns, size of array for match()
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Marks all patterns line contains, see is*(found) methods.
+     *
+     * @param line
+     * @param found array of size() length
+     * @return groups mask of found patterns
+     */
+    public int match(CharSequence line, boolean[] found) {
+        return matcher.match(line, found);
+    }
+
+    /**
+     * @param found matched patterns
+     * @return true if line ignore was found
+     */
+    public boolean isIgnored(boolean[] found) {
+        for (int i = 0; i < ignoresTo; i++) {
+            if (found[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param found matched patterns
+     * @param strip stripped wrap index
+     * @return true if stripped wrap start was found
+     */
+    public boolean isStripStart(boolean[] found, int strip) {
+        return found[stripsFrom + 2 * strip];
+    }
+
+    /**
+     * @param found matched patterns
+     * @param strip stripped wrap index
+     * @return true if stripped wrap end was found
+     */
+    public boolean isStripEnd(boolean[] found, int strip) {
+        return found[stripsFrom + 2 * strip + 1];
+    }
+}
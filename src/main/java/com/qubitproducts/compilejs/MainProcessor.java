@@ -19,6 +19,8 @@
 package com.qubitproducts.compilejs;
 
 import com.qubitproducts.compilejs.fs.LineReader;
+import com.qubitproducts.compilejs.fs.LinesCache;
+import com.qubitproducts.compilejs.fs.PooledLineReader;
 import static com.qubitproducts.compilejs.MainProcessorHelper.chunkToExtension;
 import static com.qubitproducts.compilejs.Utils.translateClasspathToPath;
 import com.qubitproducts.compilejs.fs.CFile;
@@ -30,11 +32,22 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Pattern;
 
 /**
@@ -160,6 +173,20 @@ public class MainProcessor {
      * simple custom console logger
      */
     private Map<String, List<String>> lineReaderCache;
+    private DependencyGraphCache dependencyGraphCache = null;
+    private Map<String, FileDependencies> scannedDependencies = null;
+    private CompilationCache compilationCache = null;
+    //sources of file processed by current thread
+    private final ThreadLocal<CompilationCache.Sources> currentFileSources =
+        new ThreadLocal<CompilationCache.Sources>();
+    private int threads = 1;
+    //files processed per thread before their chunks are appended
+    private static final int FILES_PER_THREAD = 16;
+
+    /**
+     * Placeholder for files that do not exist in scanned dependencies map.
+     */
+    static final FileDependencies NO_FILE = new FileDependencies();
     private String[] excludedFilesFromListing;
 
     /**
@@ -194,6 +221,9 @@ public class MainProcessor {
     private String[] filePathExcludePatterns = null;
 
     private String[] fileNamesExcluded = null;
+    private volatile LinePatterns linePatterns = null;
+    private volatile SourceLister sourceLister = null;
+    private volatile SourceFilter sourceFilter = null;
 
     /**
      * Private function checking if line should be excluded. It uses instance
@@ -203,18 +233,42 @@ public class MainProcessor {
      * @param line String line to be tested
      * @return
      */
-    private boolean excludingFile(String line) {
+    private boolean excludingFile(CharSequence line) {
         if (line == null) {
             return false;
         }
-        for (String matcher : this.getStringsToIgnoreFile()) {
-            if (matcher != null
-                && matcher.length() > 0
-                && line.startsWith(matcher)) {
-                return true;
-            }
+        return this.getLinePatterns().isFileIgnored(line);
+    }
+
+    /**
+     * Lines patterns compiled from line ignores, file ignores and wraps to
+     * strip. Compiled once and recompiled when any of them is set.
+     *
+     * @return line patterns without chunks wraps
+     */
+    protected LinePatterns getLinePatterns() {
+        LinePatterns patterns = this.linePatterns;
+        if (patterns == null) {
+            patterns = this.getLinePatterns(null);
         }
-        return false;
+        return patterns;
+    }
+
+    /**
+     * @param wraps chunks wraps
+     * @return line patterns compiled also with chunks wraps
+     */
+    protected LinePatterns getLinePatterns(List<String> wraps) {
+        LinePatterns patterns = this.linePatterns;
+        if (patterns == null || (wraps != null && !patterns.isFor(wraps))) {
+            patterns = new LinePatterns(
+                this.getLineIgnores(),
+                this.getStringsToIgnoreFile(),
+                this.getFromToIgnore(),
+                wraps);
+            this.linePatterns = patterns;
+        }
+        return patterns;
     }
 
     /**
@@ -255,6 +309,160 @@ public class MainProcessor {
     public Map<String, List<String>> getLineReaderCache() {
         return this.lineReaderCache;
     }
+
+    /**
+     * @return the threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Number of threads used to list source directories, scan files for
+     * dependencies and run tasks, see invokeAll(). If more than one, files
+     * are scanned concurrently before dependencies are ordered.
+     * Order of results does not depend on threads number.
+     * @param threads the threads to set
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Runs tasks using this processor concurrently, on pool of getThreads()
+     * threads, or one after another if single thread is set. Tasks invoked
+     * from a task already running in a pool are forked in that pool, so
+     * nested tasks never exceed the threads number.
+     * Line reader cache is synchronized while tasks run.
+     * 
+     * @param <T>
+     * @param tasks
+     * @return results in tasks order
+     * @throws IOException first (in tasks order) task failure
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+        throws IOException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (this.getThreads() <= 1 || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        List<ForkJoinTask<T>> forked = new ArrayList<ForkJoinTask<T>>();
+        if (ForkJoinTask.inForkJoinPool()) {
+            for (Callable<T> task : tasks) {
+                forked.add(ForkJoinTask.adapt(task).fork());
+            }
+            return join(forked, results);
+        }
+
+        Map<String, List<String>> cache = this.getLineReaderCache();
+        if (cache != null && !(cache instanceof ConcurrentMap
+            || cache instanceof LinesCache)) {
+            this.lineReaderCache = Collections.synchronizedMap(cache);
+        }
+        ForkJoinPool pool = new ForkJoinPool(this.getThreads());
+        try {
+            for (Callable<T> task : tasks) {
+                forked.add(pool.submit(task));
+            }
+            return join(forked, results);
+        } finally {
+            pool.shutdown();
+            this.lineReaderCache = cache;
+        }
+    }
+
+    private static <T> T call(Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static <T> List<T> join(
+        List<ForkJoinTask<T>> forked, List<T> results) throws IOException {
+        try {
+            for (ForkJoinTask<T> task : forked) {
+                results.add(task.join());
+            }
+            return results;
+        } catch (RuntimeException ex) {
+            //wait for the rest, they may still use shared state
+            for (ForkJoinTask<T> task : forked) {
+                task.quietlyJoin();
+            }
+            for (Throwable cause = ex; cause != null;
+                cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the compilationCache
+     */
+    public CompilationCache getCompilationCache() {
+        return compilationCache;
+    }
+
+    /**
+     * Sets cache kept between compilations. If set, processed chunks of
+     * files that did not change are reused.
+     * @param compilationCache the compilationCache to set
+     */
+    public void setCompilationCache(CompilationCache compilationCache) {
+        this.compilationCache = compilationCache;
+    }
+
+    /**
+     * Processors reading other files than the one being processed (for
+     * example injections) must register them here, so cached results can
+     * be invalidated when any of them changes. File is stamped with its
+     * current state, register it before reading.
+     * @param file file used to process current file
+     */
+    public void addFileSource(FSFile file) {
+        addFileSource(file, file.lastModified(), file.length());
+    }
+
+    /**
+     * @param file file used to process current file
+     * @param lastModified file modification time taken before reading it
+     * @param length file length taken before reading it
+     * @see #addFileSource(FSFile)
+     */
+    public void addFileSource(FSFile file, long lastModified, long length) {
+        CompilationCache.Sources sources = currentFileSources.get();
+        if (sources != null) {
+            sources.add(file, lastModified, length);
+        }
+    }
+
+    /**
+     * @return the dependencyGraphCache
+     */
+    public DependencyGraphCache getDependencyGraphCache() {
+        return dependencyGraphCache;
+    }
+
+    /**
+     * Sets persistent dependency graph cache. If set, files that did not 
+     * change since cache was written will not be read to find dependencies.
+     * @param dependencyGraphCache the dependencyGraphCache to set
+     */
+    public void setDependencyGraphCache(
+        DependencyGraphCache dependencyGraphCache) {
+        this.dependencyGraphCache = dependencyGraphCache;
+    }
     
     /**
      * This exclude works at the file tree listing filtering level.
@@ -460,6 +668,13 @@ public class MainProcessor {
         FSFile location = new CFile(getCwd(), dir, true);
         location = new CFile(location, base);//no cwd
         FSFile[] files = location.listFiles();
+        //stable order, as wildcards resolved by source index
+        Arrays.sort(files, new Comparator<FSFile>() {
+            @Override
+            public int compare(FSFile a, FSFile b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
 
         pattern = pattern.trim();
 
@@ -487,10 +702,11 @@ public class MainProcessor {
         return list;
     }
     
-    private final HashMap<String, String> helpingMap =
-                                                new HashMap<String, String>();
-    private final HashMap<String, List<String[]>> helpingImportsMap =
-                                        new HashMap<String, List<String[]>>();
+    //dependency lookups may run in tasks (see invokeAll()), maps are shared
+    private final Set<String> helpingMap = Collections.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>());
+    private final Map<String, List<String[]>> helpingImportsMap =
+        new ConcurrentHashMap<String, List<String[]>>();
 
     /**
      * Function finds dependency path depending on input specified and
@@ -522,8 +738,17 @@ public class MainProcessor {
         if (type == Types.IMPORT || type == Types.CSS) {
             pathPlusType = pathPattern + type.toString();
             //check if its in cache already registered
-            if (helpingImportsMap.containsKey(pathPlusType)) {
-                return helpingImportsMap.get(pathPlusType);
+            List<String[]> cached = helpingImportsMap.get(pathPlusType);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            } else if (SourceIndex.isIndexable(pathPattern)
+                && Glob.isGlob(pathPattern)) {
+                //wildcards resolved from source bases index
+                Glob glob = Glob.compile(pathPattern);
+                for (String dir : this.getSourceBase()) {
+                    dependencies.addAll(this.getSourceIndex().find(
+                        new CFile(getCwd(), dir, true).getPath(), glob));
+                }
             } else if (pathPattern.contains("*")) {
                 //multiple import case (* - stars)
                 //regex at end
@@ -578,20 +803,25 @@ public class MainProcessor {
                         String path = 
                             new CFile(dirs[0], dependencyPathString, true)
                                 .getPath();
-                        helpingMap.put(path, null);
+                        helpingMap.add(path);
                         results.add(new String[]{path, dirs[0]});
                     }
                 }
                 
+                boolean indexable = 
+                    SourceIndex.isIndexable(dependencyPathString);
                 for (String dir : dirs) {
                     //@todo cwd checking option may not be necessary
                     String path = new CFile(dir, dependencyPathString, true)
                         .getPath();
                     //@todo - adding virtual paths??? 
                     //so fir single repo virtual path is listed?
-                    if (helpingMap.containsKey(path)
-                        || this.checkIfExists(getCwd(), path)) {
-                        helpingMap.put(path, null);
+                    if (helpingMap.contains(path)
+                        || (indexable
+                            ? this.existsInSourceBase(
+                                dir, dependencyPathString)
+                            : this.checkIfExists(getCwd(), path))) {
+                        helpingMap.add(path);
                         /**here**/ 
                         //results.add(new String[]{dependencyPathString, dir});
                         results.add(new String[]{path, dir});
@@ -602,18 +832,111 @@ public class MainProcessor {
         }
 
         if (pathPlusType != null) {
-            helpingImportsMap.put(pathPattern, results);
+            helpingImportsMap.put(pathPlusType, results);
         }
 
         return results.isEmpty() ? null : results;
     }
 
     private boolean notCheckingIfFilesExist = false;
-    private final HashMap<String, Boolean> existingFiles
-        = new HashMap<String, Boolean>();
+    private final Map<String, Boolean> existingFiles
+        = new ConcurrentHashMap<String, Boolean>();
+    private volatile SourceIndex sourceIndex = null;
+    private volatile CanonicalPaths canonicalPaths = null;
+    private volatile InjectionCache injectionCache = null;
+    private volatile CanonicalPaths.BasePrefixes basePrefixes = null;
+
+    /**
+     * Source bases index, kept by compilation cache between compilations or
+     * created for this compilation.
+     *
+     * @return the index
+     */
+    protected synchronized SourceIndex getSourceIndex() {
+        SourceIndex index = this.sourceIndex;
+        if (index == null) {
+            CompilationCache cache = this.getCompilationCache();
+            if (cache != null) {
+                index = cache.getSourceIndex();
+                index.refresh();
+            } else {
+                index = new SourceIndex();
+            }
+            this.sourceIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Canonical paths resolved during compilation, taken from compilation
+     * cache if present.
+     *
+     * @return canonical paths
+     */
+    protected CanonicalPaths getCanonicalPaths() {
+        CanonicalPaths paths = this.canonicalPaths;
+        if (paths == null) {
+            CompilationCache cache = this.getCompilationCache();
+            paths = cache != null
+                ? cache.getCanonicalPaths() : new CanonicalPaths();
+            this.canonicalPaths = paths;
+        }
+        return paths;
+    }
+
+    /**
+     * Injections resolved during compilation, taken from compilation cache
+     * if present.
+     *
+     * @return injections cache
+     */
+    public InjectionCache getInjectionCache() {
+        InjectionCache injections = this.injectionCache;
+        if (injections == null) {
+            CompilationCache cache = this.getCompilationCache();
+            injections = cache != null
+                ? cache.getInjectionCache() : new InjectionCache();
+            this.injectionCache = injections;
+        }
+        return injections;
+    }
+
+    /**
+     * Finds file in source bases, first base containing it wins (as for
+     * dependencies). Path not found in any of bases is checked relative to
+     * current working directory.
+     *
+     * @param path path relative to source bases
+     * @return file found or null
+     */
+    public FSFile findSourceFile(String path) {
+        boolean indexable = SourceIndex.isIndexable(path);
+        for (String dir : this.getSourceBase()) {
+            String base = new CFile(getCwd(), dir, true).getPath();
+            if (indexable
+                ? this.getSourceIndex().exists(base, path)
+                : new CFile(base, path).exists()) {
+                return new CFile(base, path);
+            }
+        }
+        FSFile file = new CFile(getCwd(), path, true);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Checks in source bases index if file or directory exists.
+     *
+     * @param dir source base, as in getSourceBase()
+     * @param path indexable path relative to source base
+     * @return true if exists
+     */
+    private boolean existsInSourceBase(String dir, String path) {
+        return this.getSourceIndex()
+            .exists(new CFile(getCwd(), dir, true).getPath(), path);
+    }
 
     private boolean checkIfExists(FSFile file) {
-        Boolean exists = existingFiles.get(file.getAbsoluteFile());
+        Boolean exists = existingFiles.get(file.getAbsolutePath());
         if (exists == null) {
             exists = file.exists();
             existingFiles.put(file.getAbsolutePath(), exists);
@@ -654,6 +977,7 @@ public class MainProcessor {
             names.length);
 
         fileNamesExcluded = newArray;
+        sourceFilter = null;
     }
 
     public String[] getFileNamesExcluded() {
@@ -662,6 +986,7 @@ public class MainProcessor {
 
     public void setFileNamesExcluded(String[] names) {
         fileNamesExcluded = names;
+        sourceFilter = null;
     }
 
     /**
@@ -676,6 +1001,7 @@ public class MainProcessor {
      */
     public void setFileExcludePatterns(String[] fileExcludePatterns) {
         this.fileExcludePatterns = fileExcludePatterns;
+        this.sourceFilter = null;
     }
 
     /**
@@ -690,6 +1016,7 @@ public class MainProcessor {
      */
     public void setFilePathExcludePatterns(String[] filePathExcludePatterns) {
         this.filePathExcludePatterns = filePathExcludePatterns;
+        this.sourceFilter = null;
     }
 
     /**
@@ -735,19 +1062,50 @@ public class MainProcessor {
     }
 
     /**
-     * @return the processor
+     * Processors run over each file chunks, list can be modified before
+     * processing starts, see getChunkProcessors().
+     * @return the processors
      */
     public List<Processor> getProcessors() {
         return processors;
     }
 
     /**
+     * Adds processor to the chain run over each file chunks, processors
+     * implementing ChunkProcessor are run as such.
      * @param processor the processor to set
      */
     public void addProcessor(Processor processor) {
         this.processors.add(processor);
     }
 
+    /**
+     * Adds processor to the chain run over each file chunks, after all
+     * processors of getProcessors().
+     * @param processor
+     */
+    public void addChunkProcessor(ChunkProcessor processor) {
+        this.chunkProcessors.add(processor);
+    }
+
+    /**
+     * Chain run over each file chunks: processors of getProcessors(), in
+     * order, followed by ones added with addChunkProcessor(). Chain is
+     * created on each call, so it follows changes of getProcessors().
+     * @return processors chain run over each file chunks
+     */
+    public List<ChunkProcessor> getChunkProcessors() {
+        List<ChunkProcessor> chain = new ArrayList<ChunkProcessor>(
+            processors.size() + chunkProcessors.size());
+        for (Processor processor : processors) {
+            chain.add(processor instanceof ChunkProcessor
+                ? (ChunkProcessor) processor
+                : ProcessorChain.adapt(processor));
+        }
+        chain.addAll(chunkProcessors);
+        return chain;
+    }
+
     /**
      * Default strings used to specify lines ignored during merge.
      */
@@ -784,7 +1142,8 @@ public class MainProcessor {
 
     /**
      * Function listing recursively entire listedFiles tree. Similar to plain find in
-     * UNIX.
+     * UNIX. Directories are listed concurrently if threads number is more
+     * than one, see SourceLister.
      *
      * @param file java.io.FSFile FSFile specifying tree root node (mostly a
      * directory).
@@ -794,45 +1153,20 @@ public class MainProcessor {
     public List<FSFile> listFilesTree(
                                         final FSFile file,
                                         String[] excludedFiles) {
-        boolean check = true;
-        String regex = null;
-        if (excludedFiles != null) {
-            String tmpName = file.getName();
-            for (String excludedDir : excludedFiles) {
-                if (tmpName.matches(excludedDir)) {
-                    check = false;
-                    regex = excludedDir;
-                    break;
-                }
-            }
+        SourceLister lister = this.sourceLister;
+        if (lister == null || !lister.isFor(excludedFiles)) {
+            lister = new SourceLister(excludedFiles);
+            this.sourceLister = lister;
         }
-        if (check) {
-            ArrayList<FSFile> results = new ArrayList();
-            FSFile[] files = file.listFiles();
-            if (files == null) {
-                results.add(file);
-            } else {
-                for (FSFile subFile : files) {
-                    if (!subFile.isDirectory()) {
-                        results.add(subFile);
-                    } else {
-                        List<FSFile> subdir = 
-                            listFilesTree(subFile, excludedFiles);
-                        if (subdir != null) {
-                            results.addAll(subdir);
-                        }
-                    }
-                }
-            }
-            return results;
-        } else {
-            if (this.log.LOG) {
-                this.log.log("Excluded file by regex " + regex
-                    + ": " + file.getAbsolutePath());
+        if (this.getThreads() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(this.getThreads());
+            try {
+                return lister.list(file, pool, this.log);
+            } finally {
+                pool.shutdown();
             }
         }
-
-        return null;
+        return lister.list(file, null, this.log);
     }
 
     /**
@@ -843,12 +1177,7 @@ public class MainProcessor {
      * @see ignores#lineIgnores
      */
     protected boolean isLineIgnored(String test) {
-        for (String matcher : this.getLineIgnores()) {
-            if (matcher != null && matcher.length() > 0 && test.contains(matcher)) {
-                return true;
-            }
-        }
-        return false;
+        return this.getLinePatterns().isIgnored(test);
     }
 
     /**
@@ -859,46 +1188,41 @@ public class MainProcessor {
      * @return
      */
     protected boolean testIfFileIncluded(FSFile test) {
-        String[] strings = this.getMergeOnly();
-        String name = test.getName();
-
-        String[] exludedNames = getFileNamesExcluded();
-        if (exludedNames != null) {
-            for (String exludedName : exludedNames) {
-                if (name.equals(exludedName)) {
-//                if (LOG) {
-//                    logVeryVerbosive(
-//                        " --> Excluded file by name:" + exludedName);
-//                  }
-                    return false;
-                }
-            }
-        }
+        return this.getSourceFilter()
+            .isIncluded(test, this.getCanonicalPaths());
+    }
 
-        for (String string : strings) {
-            if (string.equals("*") || name.endsWith(string)) {
-                if (this.getFileExcludePatterns() != null) {
-                    for (String match : this.getFileExcludePatterns()) {
-                        if (name.matches(match)) {
-                            return false;
-                        }
-                    }
-                }
-                if (this.getFilePathExcludePatterns() != null) {
-                    for (String match : this.getFilePathExcludePatterns()) {
-                        try {
-                            if (test.getCanonicalPath().matches(match)) {
-                                return false;
-                            }
-                        } catch (IOException e) {
-                            //just try
-                        }
-                    }
+    /**
+     * Files selection rules (merge only extensions, excluded names, names
+     * and paths patterns) compiled once. Filter is taken from compilation
+     * cache if it was compiled for the same rules.
+     *
+     * @return the filter
+     */
+    protected SourceFilter getSourceFilter() {
+        SourceFilter filter = this.sourceFilter;
+        if (filter == null) {
+            CompilationCache cache = this.getCompilationCache();
+            if (cache != null) {
+                filter = cache.getSourceFilter();
+            }
+            if (filter == null || !filter.isFor(
+                this.getMergeOnly(),
+                this.getFileNamesExcluded(),
+                this.getFileExcludePatterns(),
+                this.getFilePathExcludePatterns())) {
+                filter = new SourceFilter(
+                    this.getMergeOnly(),
+                    this.getFileNamesExcluded(),
+                    this.getFileExcludePatterns(),
+                    this.getFilePathExcludePatterns());
+                if (cache != null) {
+                    cache.setSourceFilter(filter);
                 }
-                return true;
             }
+            this.sourceFilter = filter;
         }
-        return false;
+        return filter;
     }
 
     /**
@@ -1063,7 +1387,7 @@ public class MainProcessor {
             //no Cwd here!
             FSFile file = new CFile(dirBase, item, true);
 
-            if (file.getCanonicalFile().getAbsolutePath()
+            if (this.getCanonicalPaths().getCanonicalPath(file)
                 .equals(currentOutputToIgnore)) {
                 if (this.log.LOG) {
                     this.log.log("!!! FSFile is the current output (EXCLUDING): "
@@ -1114,6 +1438,8 @@ public class MainProcessor {
     }
 
     private final List<Processor> processors = new ArrayList<Processor>();
+    private final List<ChunkProcessor> chunkProcessors =
+        new ArrayList<ChunkProcessor>();
 
     private FSFile getFileForCurrentPath (String location, String dirBase) {
             dirBase = new CFile(this.getCwd(), dirBase, true).getAbsolutePath();
@@ -1142,62 +1468,57 @@ public class MainProcessor {
      * Processing single file.
      * 
      * @param file
-     * @param in
-     * @param allChunks
      * @param checkLinesExcluded
      * @param wraps
      * @param defaultExtension
+     * @return file chunks, null if file does not exist
      * @throws IOException 
      */
-    private void processSingleFile(
+    private List<Chunk> processSingleFile(
         FSFile file,
-        Map<String, StringBuilder> allChunks,
         boolean checkLinesExcluded,
         List<String> wraps,
         String defaultExtension) throws IOException {
 
-        String tmp;
-        List<String> lines = new ArrayList<String>();
         LineReader in = null;
+        CompilationCache cache = this.getCompilationCache();
+        LinePatterns patterns = this.getLinePatterns(wraps);
 
-        try {
-            in = file.getLineReader(this.getLineReaderCache());
-            while ((tmp = in.readLine()) != null) {
-                if (!checkLinesExcluded || !isLineIgnored(tmp)) {
-                    lines.add(tmp);
-                } else if (isKeepLines()) {
-                    lines.add(EMPTY);
-                }
+        if (cache != null) {
+            List<Chunk> cached = cache.getChunks(file, defaultExtension);
+            if (cached != null) {
+                return cached;
             }
+            CompilationCache.Sources sources = new CompilationCache.Sources();
+            sources.add(file);
+            currentFileSources.set(sources);
+        }
 
-            lines = MainProcessorHelper
-                .stripFromWraps(lines,
-                    this.getFromToIgnore(),
-                    isKeepLines() ? EMPTY : null);
-
-            List<Object[]> chunks
+        try {
+            in = file.getLineReader(this.getLineReaderCache());
+            List<Chunk> chunks
                 = MainProcessorHelper
-                .getStringInChunks(lines, wraps, defaultExtension);
+                .getStringInChunks(in,
+                    patterns,
+                    checkLinesExcluded,
+                    isKeepLines() ? EMPTY : null,
+                    defaultExtension,
+                    file);
 
             int idx = file.getName().lastIndexOf('.') + 1;
+            List<ChunkProcessor> chain = this.getChunkProcessors();
 
-            if (idx != -1 && !this.getProcessors().isEmpty()) {
+            if (idx != -1 && !chain.isEmpty()) {
                 String ext = file.getName().substring(idx);
-                for (Processor proc : this.getProcessors()) {
-                    proc.process(chunks, ext);
-                }
+                chunks = ProcessorChain.process(chain, chunks, ext);
             }
 
-            for (Object[] chunk : chunks) {
-                String key = chunkToExtension((String) chunk[0]);
-                StringBuilder builder = allChunks.get(key);
-                if (builder == null) {
-                    builder = new StringBuilder();
-                    allChunks.put(key, builder);
-                }
-                builder.append((StringBuilder) chunk[1]);
-                builder.append(RET);
+            if (cache != null) {
+                cache.putChunks(file, defaultExtension,
+                    currentFileSources.get(), chunks);
             }
+            
+            return chunks;
         } catch (FileNotFoundException fnf) {
             if (this.log.LOG) {
                 this.log.log(">>> FSFile DOES NOT exist! Some of FSFile files may"
@@ -1206,16 +1527,35 @@ public class MainProcessor {
                     + "whats missing.\n    FSFile failed to open: "
                     + file.getAbsolutePath());
             }
+            return null;
         } finally {
+            currentFileSources.remove();
             if (in != null) {
                 in.close();
             }
         }
     }
+
+    private static void appendChunks(
+        Map<String, StringBuilder> allChunks,
+        List<Chunk> chunks) {
+        for (Chunk chunk : chunks) {
+            String key = chunk.getExtension();
+            StringBuilder builder = allChunks.get(key);
+            if (builder == null) {
+                builder = new StringBuilder();
+                allChunks.put(key, builder);
+            }
+            builder.append(chunk.getContent());
+            builder.append(RET);
+        }
+    }
     
     /**
      * Important function merging paths contents and grouping contents to
      * wraps defined by wraps argument.
+     * Files are processed concurrently if more threads are set, see
+     * setThreads(), chunks are always merged in paths order.
      * @param paths
      * @param checkLinesExcluded
      * @param outputName
@@ -1233,21 +1573,62 @@ public class MainProcessor {
         String defaultExtension)
         throws FileNotFoundException, IOException {
 
+        Map<String, StringBuilder> allChunks
+            = new HashMap<String, StringBuilder>();
+        
+        mergeFilesWithChunks(paths, checkLinesExcluded, outputName, wraps,
+            defaultExtension, allChunks, null);
+
+        return allChunks;
+    }
+
+    /**
+     * Streaming version of mergeFilesWithChunksAndStripFromWraps, chunks
+     * are appended to outputs spools, file by file.
+     * @param paths
+     * @param checkLinesExcluded
+     * @param outputName
+     * @param wraps
+     * @param defaultExtension
+     * @param outputs
+     * @throws FileNotFoundException
+     * @throws IOException 
+     */
+    public void mergeFilesWithChunksAndStripFromWraps(
+        Map<String, String> paths,
+        boolean checkLinesExcluded,
+        String outputName,
+        List<String> wraps,
+        String defaultExtension,
+        ChunkOutputs outputs)
+        throws FileNotFoundException, IOException {
+        mergeFilesWithChunks(paths, checkLinesExcluded, outputName, wraps,
+            defaultExtension, null, outputs);
+    }
+
+    private void mergeFilesWithChunks(
+        Map<String, String> paths,
+        final boolean checkLinesExcluded,
+        String outputName,
+        final List<String> wraps,
+        String defaultExtension,
+        Map<String, StringBuilder> allChunks,
+        ChunkOutputs outputs)
+        throws FileNotFoundException, IOException {
+
         if (defaultExtension == null) {
             defaultExtension = EMPTY;
         }
 
-
-        Map<String, StringBuilder> allChunks
-            = new HashMap<String, StringBuilder>();
-
-          for (Map.Entry<String, String> entry : paths.entrySet()) {
+        final String extension = defaultExtension;
+        List<FSFile> files = new ArrayList<FSFile>(paths.size());
+        for (Map.Entry<String, String> entry : paths.entrySet()) {
 
             String currentPath = entry.getKey();
             String dirBase = entry.getValue();
             FSFile file = getFileForCurrentPath(currentPath, dirBase);
             
-            if (file.getCanonicalFile().getAbsolutePath()
+            if (this.getCanonicalPaths().getCanonicalPath(file)
                 .equals(outputName)) {
                 if (this.log.LOG) {
                     this.log.log(
@@ -1255,30 +1636,48 @@ public class MainProcessor {
                         + file.getAbsolutePath());
                 }
             } else {
-                //if (this.checkIfExists(file)) {
-                //if (LOG)log(">>> FSFile DOES exist: " + 
-                //                   file.getAbsolutePath());
-                processSingleFile(
-                    file,
-                    allChunks,
-                    checkLinesExcluded,
-                    wraps,
-                    defaultExtension);
-                
+                files.add(file);
+            }
+        }
+
+        //files are processed concurrently (if more threads), in windows
+        // so only few files chunks are kept before appending them in order
+        int window = Math.max(1, this.getThreads()) * FILES_PER_THREAD;
+        for (int from = 0; from < files.size(); from += window) {
+            List<FSFile> batch =
+                files.subList(from, Math.min(files.size(), from + window));
+            List<Callable<List<Chunk>>> tasks =
+                new ArrayList<Callable<List<Chunk>>>(batch.size());
+            for (final FSFile file : batch) {
+                tasks.add(new Callable<List<Chunk>>() {
+                    @Override
+                    public List<Chunk> call() throws IOException {
+                        return processSingleFile(
+                            file,
+                            checkLinesExcluded,
+                            wraps,
+                            extension);
+                    }
+                });
+            }
+
+            List<List<Chunk>> results = invokeAll(tasks);
+            for (int i = 0; i < batch.size(); i++) {
+                List<Chunk> chunks = results.get(i);
+                if (chunks != null) {
+                    if (outputs != null) {
+                        outputs.append(chunks);
+                    } else {
+                        appendChunks(allChunks, chunks);
+                    }
+                }
+
                 if (this.log.LOG) {
-                    this.log.log(">>> Merging: " + file.getAbsolutePath());
+                    this.log.log(">>> Merging: "
+                        + batch.get(i).getAbsolutePath());
                 }
-//        } else {
-//          if (LOG)log(">>> FSFile DOES NOT exist! Some of FSFile listedFiles may"
-//                  + " point to dependencies that do not match -s and"
-//                  + " --file-deps-pref  directory! Use -vv and see "
-//                  + "whats missing.\n    FSFile failed to open: "
-//                  + file.getAbsolutePath());
-//        }
             }
         }
-
-        return allChunks;
     }
 
     //chunks definitions must be valid
@@ -1308,10 +1707,19 @@ public class MainProcessor {
                 currentOutputName = outputName;
             }
             if (chunk != null && chunk.length() > 0) {
+                if (clear) {
+                    if (!OutputFile.write(currentOutputName, chunk, null)
+                        && this.log.LOG) {
+                        this.log.log(">>> Output not changed: "
+                            + currentOutputName);
+                    }
+                    outputs.add(currentOutputName);
+                    continue;
+                }
                 BufferedWriter writer = null;
                 try {
                     writer = new CFile(currentOutputName)
-                        .getBufferedWriter(!clear);
+                        .getBufferedWriter(true);
                     writer.append(chunk);
                     writer.flush();
                     outputs.add(currentOutputName);
@@ -1326,6 +1734,63 @@ public class MainProcessor {
         return outputs;
     }
 
+    /**
+     * Streams outputs contents to files named by output name and content
+     * extension (empty extension is the output name itself).
+     * 
+     * @param chunks
+     * @param outputName
+     * @return written outputs
+     * @throws IOException 
+     */
+    public List<String> writeOutputs(
+        ChunkOutputs chunks,
+        String outputName) throws IOException {
+        List<String> outputs  = new ArrayList<>();
+        
+        for (Map.Entry<String, List<Object>> entrySet
+                : chunks.getContents().entrySet()) {
+            List<Object> content = entrySet.getValue();
+            String chunkRawName = entrySet.getKey();
+            String currentOutputName = outputName + "." + chunkRawName;
+            if (chunkRawName.equals(EMPTY)) {
+                currentOutputName = outputName;
+            }
+            if (!chunks.isEmpty(content)) {
+                writeOutput(chunks, content, currentOutputName, null);
+                outputs.add(currentOutputName);
+            }
+        }
+        
+        return outputs;
+    }
+
+    /**
+     * Streams content to the output file. Output is replaced only if
+     * content changed, see OutputFile.
+     * 
+     * @param chunks
+     * @param content content parts
+     * @param outputName
+     * @param charset null for default
+     * @throws IOException 
+     */
+    public void writeOutput(
+        ChunkOutputs chunks,
+        List<Object> content,
+        String outputName,
+        Charset charset) throws IOException {
+        OutputFile output = new OutputFile(outputName, charset);
+        try {
+            chunks.write(content, output.open());
+            if (!output.commit() && this.log.LOG) {
+                this.log.log(">>> Output not changed: " + outputName);
+            }
+        } finally {
+            output.abort();
+        }
+    }
+
     /**
      * Function getting dependencies map by using file as input.
      *
@@ -1352,8 +1817,9 @@ public class MainProcessor {
         helpingMap.clear();
         dependenciesChecked.clear();
         existingFiles.clear();
-        prefixCacheForDetector.clear();
-        cannonicalFilesCache.clear();
+        sourceIndex = null;
+        canonicalPaths = null;
+        basePrefixes = null;
     }
 
     /**
@@ -1410,6 +1876,15 @@ public class MainProcessor {
             classpaths.add(startingFile.getPath());
         }
 
+        DependencyGraphCache graphCache = this.getDependencyGraphCache();
+        String graphCachePath = null;
+        if (graphCache != null && !ignoreDependencies) {
+            graphCache.load(this.getScanSignature());
+            if (graphCache.getLocation() != null) {
+                graphCachePath = graphCache.getLocation().getAbsolutePath();
+            }
+        }
+
         //check which match extensions set
         for (Map.Entry<String, List<FSFile>> entrySet : 
                 listedFiles.entrySet()) {
@@ -1417,9 +1892,12 @@ public class MainProcessor {
             String key = entrySet.getKey();
             for (int i = 0; i < tmp.size(); i++) {
                 FSFile f = tmp.get(i);
+                String canonicalPath =
+                    this.getCanonicalPaths().getCanonicalPath(f);
                 if (!this.testIfFileIncluded(f)
+                    || canonicalPath.equals(graphCachePath)
                     || pathLocationCanBeAnOutput(
-                        f.getCanonicalFile().getAbsolutePath(),
+                        canonicalPath,
                         currentOutput)) {
                     // do not include current startingFile
                     if (this.log.LOG) {
@@ -1452,39 +1930,60 @@ public class MainProcessor {
 
         String inputFileBaseDir = this.getSourceBase()[0];
 
-        //this is a hash ensuring that no file duplicates will occure in dependencies
-        //@TODO check where allPaths can be added
-        for (Map.Entry<String, List<FSFile>> entrySet : listedFiles.entrySet()) {
-            List<FSFile> listedFilesKeySet = entrySet.getValue();
+        if (!ignoreDependencies && this.getThreads() > 1) {
+            this.scanFilesDependencies(listedFiles);
+        }
+
+        try {
+            //this is a hash ensuring that no file duplicates will occure in dependencies
+            //@TODO check where allPaths can be added
+            for (Map.Entry<String, List<FSFile>> entrySet : listedFiles.entrySet()) {
+                List<FSFile> listedFilesKeySet = entrySet.getValue();
             
-            for (FSFile file : listedFilesKeySet) {
-                //if (LOG)log( listedFiles.get(i).getAbsolutePath());
-                String dependencyPath = file.getAbsolutePath();
-                //already in
-                if (this.dependenciesChecked.containsKey(dependencyPath)) {
-                    continue;
+                for (FSFile file : listedFilesKeySet) {
+                    //if (LOG)log( listedFiles.get(i).getAbsolutePath());
+                    String dependencyPath = file.getAbsolutePath();
+                    //already in
+                    if (this.dependenciesChecked.containsKey(dependencyPath)) {
+                        continue;
+                    }
+                    //dont process current path, if any dependencies chain contains allPaths
+                    this.dependenciesChecked.put(dependencyPath, null);
+                    this.processFileDependencies(file,
+                        paths,
+                        excludes,
+                        relative,
+                        ignoreDependencies,
+                        checkIfFileExists,
+                        inputFileBaseDir, //starting dir!
+                        null);
                 }
-                //dont process current path, if any dependencies chain contains allPaths
-                this.dependenciesChecked.put(dependencyPath, null);
-                this.processFileDependencies(file,
-                    paths,
-                    excludes,
-                    relative,
-                    ignoreDependencies,
-                    checkIfFileExists,
-                    inputFileBaseDir, //starting dir!
-                    null);
             }
+        } finally {
+            this.scannedDependencies = null;
         }
         if (ignoreDependencies) {
             if (this.log.LOG) {
                 this.log.log(">>> Dependencies includes ignored !");
             }
+        } else if (graphCache != null) {
+            if (this.log.LOG) {
+                this.log.log(">>> Dependency graph cache hits: "
+                    + graphCache.getHits() + ", misses: "
+                    + graphCache.getMisses());
+            }
+            try {
+                graphCache.save();
+            } catch (IOException ex) {
+                this.log.log("Could not save dependency graph cache: "
+                    + ex.getMessage());
+            }
         }
 
         return paths;
     }
     
+    //processFileDependencies runs in calling thread only
     private final Map<String, String> dependenciesChecked =
         new HashMap<String, String>();
     
@@ -1531,26 +2030,18 @@ public class MainProcessor {
             }
         }
 
-        String line;
-        Object[] dependencyPathObject = null;//String, Type
-        LineReader in = null;
         boolean excludeThisFile = false;
-        boolean mayBePreProcessorLine = false;
         List<String[]> dependenciesPathsObjects;
 
         if (!ignoreDependencies) {
-            try {
-
-                in = file.getLineReader(this.getLineReaderCache());
-                line = in.readLine();
-
-                // make sure its not excluded first line
-                if (this.excludingFile(line)) {
+            FileDependencies scan = this.getFileDependencies(file);
+            if (scan != null) {
+                if (scan.isExcluded()) {
                     if (this.log.LOG) {
                         this.log.log(">>> FSFile \"" + file.getAbsolutePath()
                             + "\" will be excluded by one of keywords exclusion"
                             + ", the line:"
-                            + line);
+                            + scan.getExcludingLine());
                     }
                     excludeThisFile = true;
                 }
@@ -1566,21 +2057,15 @@ public class MainProcessor {
                             + file.getPath());
                     }
                 }
-                //log(this.getCurrentIndent() + "FSFile: " + file.getPath());
-                do {
-                    // check if line contains preprocessing words
-                    mayBePreProcessorLine = lineMayContainPreProcessor(line);
-                    dependencyPathObject = this.parseDependencyFromLine(line);
+
+                for (Object[] dependencyPathObject : scan.getDirectives()) {
+                    String dependencyPathString = 
+                        (String) dependencyPathObject[0];
+                    String line = (String) dependencyPathObject[2];
                     dependenciesPathsObjects = 
                         this.getDependenciesPath(dependencyPathObject);
-                    String dependencyPathString = null;
 
-                    if (dependencyPathObject != null) {
-                        dependencyPathString = (String) dependencyPathObject[0];
-                    }
-
-                    if (dependencyPathObject != null
-                        && dependenciesPathsObjects != null
+                    if (dependenciesPathsObjects != null
                         && !this.dependenciesChecked
                             .containsKey(dependencyPathString)) {
                         for (String[] depsItem : dependenciesPathsObjects) {
@@ -1595,7 +2080,7 @@ public class MainProcessor {
                                     this.getCurrentIndent() + dependenciesPaths[0]
                                     + " base: " + dependenciesPaths[1]
                                     + ",  path: "
-                                    + ((String) dependencyPathObject[0])
+                                    + dependencyPathString
                                     + " (directive line: " + line + ")");
                             }
 
@@ -1624,42 +2109,20 @@ public class MainProcessor {
                                 setIndentLevel(getIndentLevel() - 1);
                             }
                         }
-                    } else {
-                        if (dependencyPathObject != null &&
-                            dependenciesPathsObjects == null) {
-                            //do not recheck!
-                            if (this.log.LOG) {
-                                this.log.log(this.getCurrentIndent()
-                                    + ">>> !!! Dependency file could not be "
-                                    + " found, either file does "
-                                    + "not exist or source base is incorrect! "
-                                    + "dependency line: "
-                                    + line + " : " + 
-                                    ((String) dependencyPathObject[0]));
-                            }
+                    } else if (dependenciesPathsObjects == null) {
+                        //do not recheck!
+                        if (this.log.LOG) {
+                            this.log.log(this.getCurrentIndent()
+                                + ">>> !!! Dependency file could not be "
+                                + " found, either file does "
+                                + "not exist or source base is incorrect! "
+                                + "dependency line: "
+                                + line + " : " + dependencyPathString);
                         }
                     }
 
                     this.dependenciesChecked.put(dependencyPathString, null);
-
-                    line = in.readLine();
-
-                    //check every line
-                    if (this.excludingFile(line)) {
-                        if (this.log.LOG) {
-                            this.log.log(">>> FSFile \"" + file.getAbsolutePath()
-                                + "\" will be excluded by one of keywords "
-                                + "exclusion, the line:"
-                                + line);
-                        }
-                        excludeThisFile = true;
-                    }
-                    //till not excluded, still have lines or are still 
-                    //preprocessor lines.
-                    // by default all lines are treated as preprocessor,
-                    // see: checkEveryLine          
-                } while (!excludeThisFile && 
-                    mayBePreProcessorLine && line != null);
+                }
 
                 if (from == null) {
                     this.setIndentLevel(0);
@@ -1669,21 +2132,6 @@ public class MainProcessor {
                             + file.getPath());
                     }
                 }
-            } catch (FileNotFoundException ex) {
-                if (this.log.LOG) {
-                    this.log.log(this.getCurrentIndent()
-                        + ">>> !!! FSFile not found, either file does "
-                        + "not exist or source base is incorrect! PATH: "
-                        + file.getPath() + "\n Exception: \n");
-                }
-                if (this.log.LOG) {
-                    this.log.log(ex.getMessage());
-                }
-
-            } finally {
-                if (in != null) {
-                    in.close();
-                }
             }
         }
 
@@ -1700,6 +2148,209 @@ public class MainProcessor {
         return false;
     }
 
+    /**
+     * Returns dependency directives for the file. Uses dependency graph cache
+     * if set and file did not change, otherwise scans the file.
+     *
+     * @param file
+     * @return directives or null if file does not exist
+     * @throws IOException
+     */
+    FileDependencies getFileDependencies(FSFile file)
+        throws IOException {
+        if (scannedDependencies != null) {
+            FileDependencies scanned = 
+                scannedDependencies.get(file.getAbsolutePath());
+            if (scanned != null) {
+                return scanned == NO_FILE ? null : scanned;
+            }
+        }
+
+        DependencyGraphCache graphCache = this.getDependencyGraphCache();
+        if (graphCache != null) {
+            FileDependencies cached = graphCache.get(file);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        FileDependencies scan = this.scanFileDependencies(file);
+
+        if (graphCache != null && scan != null) {
+            graphCache.put(file, scan, scan.getLastModified(),
+                scan.getLength(), scan.getChecksum());
+        }
+
+        return scan;
+    }
+
+    /**
+     * Scans concurrently listed files and all their dependencies, wave by 
+     * wave: each wave scans files found as dependencies of previous one.
+     * Results are used by processFileDependencies which remains sequential,
+     * so the final order is the same as with single thread.
+     *
+     * @param listedFiles
+     */
+    private void scanFilesDependencies(Map<String, List<FSFile>> listedFiles) {
+        Map<String, FileDependencies> results =
+            new ConcurrentHashMap<String, FileDependencies>();
+        Set<String> queued = new HashSet<String>();
+        List<FSFile> wave = new ArrayList<FSFile>();
+
+        for (List<FSFile> files : listedFiles.values()) {
+            for (FSFile file : files) {
+                if (queued.add(file.getAbsolutePath())) {
+                    wave.add(file);
+                }
+            }
+        }
+
+        Map<String, List<String>> cache = this.getLineReaderCache();
+        if (cache != null && !(cache instanceof ConcurrentMap
+            || cache instanceof LinesCache)) {
+            this.lineReaderCache = Collections.synchronizedMap(cache);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.getThreads());
+        try {
+            while (!wave.isEmpty()) {
+                pool.invoke(new DependencyScanTask(
+                    this, wave, 0, wave.size(), results));
+
+                List<FSFile> next = new ArrayList<FSFile>();
+                for (FSFile file : wave) {
+                    FileDependencies scan = 
+                        results.get(file.getAbsolutePath());
+                    if (scan == null) {
+                        continue;
+                    }
+                    for (Object[] directive : scan.getDirectives()) {
+                        List<String[]> found = getDependenciesPath(directive);
+                        if (found == null) {
+                            continue;
+                        }
+                        for (String[] dependency : found) {
+                            FSFile tmp = 
+                                new CFile(getCwd(), dependency[0], true);
+                            if (queued.add(tmp.getAbsolutePath())) {
+                                next.add(tmp);
+                            }
+                        }
+                    }
+                }
+                wave = next;
+            }
+        } finally {
+            pool.shutdown();
+            this.lineReaderCache = cache;
+        }
+
+        if (this.log.LOG) {
+            this.log.log(">>> Scanned " + results.size()
+                + " files for dependencies using "
+                + this.getThreads() + " threads.");
+        }
+
+        this.scannedDependencies = results;
+    }
+
+    /**
+     * Reads the file and collects dependency directives in order of
+     * appearance. Reading stops when file gets excluded by one of
+     * this.stringsToIgnoreFile keywords or, if not checking every line, when
+     * first line not looking like preprocessor line is met.
+     *
+     * @param file
+     * @return directives or null if file does not exist
+     * @throws IOException
+     */
+    FileDependencies scanFileDependencies(FSFile file) throws IOException {
+        FileDependencies result = new FileDependencies();
+        LineReader in = null;
+        try {
+            result.setStamp(file.lastModified(), file.length());
+            //lines are views, strings are created for directives only
+            in = file.getPooledLineReader(this.getLineReaderCache());
+            CharSequence line = in.readLineSequence();
+            boolean mayBePreProcessorLine;
+
+            // make sure its not excluded first line
+            if (this.excludingFile(line)) {
+                result.setExcluded(line.toString());
+            }
+
+            do {
+                // check if line contains preprocessing words
+                mayBePreProcessorLine = lineMayContainPreProcessor(line);
+                if (line != null && mayBeDependencyLine(line)) {
+                    String string = line.toString();
+                    Object[] dependencyPathObject = 
+                        this.parseDependencyFromLine(string);
+
+                    if (dependencyPathObject != null) {
+                        result.addDirective(
+                            (String) dependencyPathObject[0],
+                            (Types) dependencyPathObject[1],
+                            string);
+                    }
+                }
+
+                line = in.readLineSequence();
+
+                //check every line
+                if (!result.isExcluded() && this.excludingFile(line)) {
+                    result.setExcluded(line.toString());
+                }
+                //till not excluded, still have lines or are still 
+                //preprocessor lines.
+                // by default all lines are treated as preprocessor,
+                // see: checkEveryLine          
+            } while (!result.isExcluded() && 
+                mayBePreProcessorLine && line != null);
+
+            if (in instanceof PooledLineReader
+                && this.getDependencyGraphCache() != null) {
+                //file is read once, cache needs its checksum
+                result.setChecksum(((PooledLineReader) in).checksum());
+            }
+        } catch (FileNotFoundException ex) {
+            if (this.log.LOG) {
+                this.log.log(this.getCurrentIndent()
+                    + ">>> !!! FSFile not found, either file does "
+                    + "not exist or source base is incorrect! PATH: "
+                    + file.getPath() + "\n Exception: \n");
+                this.log.log(ex.getMessage());
+            }
+            return null;
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Signature of configuration affecting directives scanning. Dependency
+     * graph cache is valid only for the same signature.
+     *
+     * @return signature string
+     */
+    String getScanSignature() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getPreProcessorChar())
+            .append(onlyClassPath() ? '1' : '0')
+            .append(isIgnoreRequire() ? '1' : '0')
+            .append(isCheckEveryLine() ? '1' : '0');
+        if (getStringsToIgnoreFile() != null) {
+            for (String ignore : getStringsToIgnoreFile()) {
+                builder.append(RET).append(ignore);
+            }
+        }
+        return builder.toString();
+    }
+
     /**
      * Multiply input string given amount of times
      *
@@ -1718,8 +2369,6 @@ public class MainProcessor {
     private final HashMap<String, Boolean> alreadyProcessed = 
         new HashMap<String, Boolean>();
 
-    Map<String, FSFile> cannonicalFilesCache = new HashMap<String, FSFile>();
-
     /**
      * Private function handling addng/queueing elements to the paths linked
      * map. It also registers already excluded elements. It is mostly used by
@@ -1746,7 +2395,7 @@ public class MainProcessor {
         FSFile from) throws IOException {
 
         //FSFile originalFile = file;
-        file = file.getCanonicalFile();
+        file = this.getCanonicalPaths().getCanonicalFile(file);
         String fileAbsPath = file.getAbsolutePath();
 
         if (alreadyProcessed.containsKey(fileAbsPath)) {
@@ -1755,27 +2404,16 @@ public class MainProcessor {
         alreadyProcessed.put(fileAbsPath, true);
 
         String tmp;
-        FSFile srcBase; //or "." ?
-        //cache
-        FSFile found = cannonicalFilesCache.get(dirBase);
-        if (found != null) {
-            srcBase = found;
-        } else {
-            srcBase = new CFile(getCwd(), dirBase, true); //or "." ?
-            //make sure we have straight paths (not a/b/../b/c for example)
-            //all relative paths are versus src base
-            srcBase = srcBase.getCanonicalFile();
-            cannonicalFilesCache.put(dirBase, srcBase);
-        }
-
-        String prefix = srcBase.getAbsolutePath() + CFile.separator;
+        //make sure we have straight paths (not a/b/../b/c for example)
+        //all relative paths are versus src base
+        String prefix = this.getCanonicalPaths().getCanonicalPath(
+            new CFile(getCwd(), dirBase, true)) + CFile.separator;
 
         if (excludeThisFile) {
             //dont add but queue allPaths in excludes for future lineIgnores
             if (relative) {
                 Object[] results = detectDirectoryPrefix(
                     fileAbsPath,
-                    srcBase,
                     dirBase,
                     prefix);
                 
@@ -1806,7 +2444,7 @@ public class MainProcessor {
 
                 if (relative) {
                     Object[] results = detectDirectoryPrefix(
-                        fileAbsPath, srcBase, dirBase, prefix);
+                        fileAbsPath, dirBase, prefix);
                     
                     path = (String) results[0];
                     dirBase = (String) results[1];
@@ -1856,47 +2494,50 @@ public class MainProcessor {
         }
     }
 
-    Map<String, String> prefixCacheForDetector = new HashMap<String, String>();
     /*
-     * Useful at index generation.
-     * @param fileAbsPath
-     * @param srcBase
+     * Useful at index generation. Path is made relative to the source base
+     * given or, if not in it, to the first source base containing it.
+     * @param fileAbsPath canonical path
      * @param dirBase
-     * @param pref
-     * @return
+     * @param prefix canonical path of dirBase with trailing separator
+     * @return path, source base and its prefix
      * @throws IOException 
      */
-
     private Object[] detectDirectoryPrefix(
         String fileAbsPath,
-        FSFile srcBase,
         String dirBase,
         String prefix) throws IOException {
         //optimisticly ends here
-        String path = fileAbsPath.replace(prefix, EMPTY);
-        if (fileAbsPath.equals(path)) {
-            for (String item : this.getSourceBase()) {
-                String found = prefixCacheForDetector.get(item);
-                String nprefix;
-                if (found != null) {
-                    nprefix = found;
-                } else {
-                    srcBase = new CFile(getCwd(), item, true).getCanonicalFile();
-                    nprefix = srcBase.getAbsolutePath() + CFile.separator;
-                    prefixCacheForDetector.put(item, nprefix);
-                }
-
-                path = fileAbsPath.replace(nprefix, EMPTY);
-                if (!fileAbsPath.equals(path)) {
-                    dirBase = item;
-                    prefix = nprefix;
-                    break;
-                }
-            }
+        if (fileAbsPath.startsWith(prefix)) {
+            return new Object[]{
+                fileAbsPath.substring(prefix.length()), dirBase, prefix};
+        }
+        String path = fileAbsPath;
+        CanonicalPaths.BasePrefixes prefixes = this.getBasePrefixes();
+        int base = prefixes.find(fileAbsPath);
+        if (base != -1) {
+            dirBase = prefixes.getBase(base);
+            prefix = prefixes.getPrefix(base);
+            path = fileAbsPath.substring(prefix.length());
         }
         return new Object[]{path, dirBase, prefix};
     }
 
+    /**
+     * @return source bases prefixes, recreated if source bases changed
+     * @throws IOException
+     */
+    private CanonicalPaths.BasePrefixes getBasePrefixes() throws IOException {
+        CanonicalPaths.BasePrefixes prefixes = this.basePrefixes;
+        if (prefixes == null
+            || !prefixes.isFor(this.getCwd(), this.getSourceBase())) {
+            prefixes = this.getCanonicalPaths()
+                .getBasePrefixes(this.getCwd(), this.getSourceBase());
+            this.basePrefixes = prefixes;
+        }
+        return prefixes;
+    }
+
     /**
      * Function adding path with base dir to the specified map of paths. It will
      * check if allPaths is contained by excludes map and ignore allPaths if
@@ -1926,7 +2567,7 @@ public class MainProcessor {
      * @param line
      * @return
      */
-    private boolean lineMayContainPreProcessor(String line) {
+    private boolean lineMayContainPreProcessor(CharSequence line) {
         if (this.isCheckEveryLine()) {
             return true;
         }
@@ -1938,18 +2579,41 @@ public class MainProcessor {
             return false;
         }
 
-        line = line.trim();
+        int start = Utils.trimStart(line);
+        if (start == line.length()) {
+            return false;
+        }
 
-        char ch = line.charAt(0);
+        char ch = line.charAt(start);
         if (ch != '/' && ch != '#' && ch != '<' && ch != ';') {
             return false;
         }
 
-        return (line.startsWith("//")
-            || line.startsWith("/*")
-            || line.startsWith("##")
-            || line.startsWith("<!")
-            || line.startsWith(";"));
+        return (Utils.startsWith(line, start, "//")
+            || Utils.startsWith(line, start, "/*")
+            || Utils.startsWith(line, start, "##")
+            || Utils.startsWith(line, start, "<!")
+            || Utils.startsWith(line, start, ";"));
+    }
+
+    /**
+     * Cheap check if line can be a dependency directive, same as first
+     * checks of parseDependencyFromLine, without creating strings.
+     * 
+     * @param line
+     * @return false if line is surely not a directive
+     */
+    private boolean mayBeDependencyLine(CharSequence line) {
+        int start = Utils.trimStart(line);
+        if (Utils.trimEnd(line) - start < 4) {
+            return false;
+        }
+        char ch = line.charAt(start + 2);
+        if (ch != ':' && ch != '=') {
+            return false;
+        }
+        return line.charAt(start) == preProcessorChar
+            && line.charAt(start + 1) == preProcessorChar;
     }
 
     /* GETTERS AND SETTERS */
@@ -1965,6 +2629,7 @@ public class MainProcessor {
      */
     public void setLineIgnores(String[] ignores) {
         this.lineIgnores = ignores;
+        this.linePatterns = null;
     }
 
     /**
@@ -1979,6 +2644,7 @@ public class MainProcessor {
      */
     public void setMergeOnly(String[] mergeOnly) {
         this.mergeOnly = mergeOnly;
+        this.sourceFilter = null;
     }
 
     /**
@@ -1993,6 +2659,7 @@ public class MainProcessor {
      */
     public void setFromToIgnore(String[] fromToIgnore) {
         this.fromToIgnore = fromToIgnore;
+        this.linePatterns = null;
     }
 
     /**
@@ -2021,6 +2688,7 @@ public class MainProcessor {
      */
     public void setStringsToIgnoreFile(String[] fileIgnores) {
         this.stringsToIgnoreFile = fileIgnores;
+        this.linePatterns = null;
     }
 
     /**
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -161,8 +162,8 @@ public class MainProcessorHelper {
     writer.flush();
   }
     
-    public static HashMap<String, String> chunkToExtensionCache =
-        new HashMap<String, String>();
+    public static Map<String, String> chunkToExtensionCache =
+        new ConcurrentHashMap<String, String>();
     
     /**
      * 
@@ -195,7 +196,7 @@ public class MainProcessorHelper {
      * @param defaultChunkName
      * @return 
      */
-    public static List<Object[]> getStringInChunks(
+    public static List<Chunk> getStringInChunks(
         List<String> lines,
         List<String> wraps,
         String defaultChunkName) {
@@ -209,48 +210,144 @@ public class MainProcessorHelper {
      * @param wraps example: "/ *~config* /"
      * @param defaultChunkName
      * @param fromWrapChar if wraps start right after wrapping string
-     * @return Array of Object[String, StringBuilder] 
+     * @return chunks
      */
-    public static List<Object[]> getStringInChunks(
+    public static List<Chunk> getStringInChunks(
                 List<String> lines,
                 List<String> wraps,
                 String defaultChunkName,
                 boolean fromWrapChar) {
-        if (defaultChunkName == null) {
-            defaultChunkName = EMPTY;
-        }
-        //chunks are the xxx~namexxx elements
-        ArrayList<Object[]> chunks = new ArrayList<Object[]>();
-
-        StringBuilder defaultBuilder = new StringBuilder();
-        StringBuilder builder = new StringBuilder();
-        String endingWrap = null;
-        
-        //prepare wraps
-        ArrayList<String[]> startingWraps = new ArrayList<String[]>();
-        for (String wrap : wraps) {
-            if (wrap != null && !wrap.equals(EMPTY))
-            startingWraps.add(new String[]{
-                replaceFirstChar(wrap, TILC, null),
-                wrap
-            });
-        }
-        
-        boolean isChunk = false;
-        String[] currentWrap = null;
-        boolean sameLine = true;
-        boolean firstAppend = true;
+        return getStringInChunks(lines,
+            new LinePatterns(null, null, null, wraps),
+            defaultChunkName,
+            fromWrapChar);
+    }
+    
+    /**
+     * Same as getStringInChunks(lines, wraps, ...) but with wraps compiled
+     * once to patterns, all wraps are searched in single line scan.
+     * @param lines
+     * @param patterns patterns compiled with chunks wraps
+     * @param defaultChunkName
+     * @param fromWrapChar if wraps start right after wrapping string
+     * @return chunks
+     */
+    public static List<Chunk> getStringInChunks(
+                List<String> lines,
+                LinePatterns patterns,
+                String defaultChunkName,
+                boolean fromWrapChar) {
+        Chunker chunker =
+            new Chunker(patterns, defaultChunkName, fromWrapChar, null);
+        boolean[] found = new boolean[patterns.size()];
+        int number = 0;
         for (String line : lines) {
+            number++;
             if (line == null) {
                 continue;
             }
-            
+            patterns.match(line, found);
+            chunker.add(line, found, number);
+        }
+        return chunker.getChunks();
+    }
+    
+    /**
+     * Reads lines to chunks in single pass, for each line in order: line
+     * ignores filtering, wraps stripping and splitting to chunks, as 
+     * stripFromWraps and getStringInChunks would do with lines list. Each
+     * line is scanned once against all the patterns.
+     * @param reader lines source
+     * @param patterns patterns compiled with chunks wraps
+     * @param checkLinesExcluded if lines with line ignores are removed
+     * @param replacement replacement for removed lines, null to drop them
+     * @param defaultChunkName
+     * @param source file read, chunks source
+     * @return chunks
+     * @throws IOException 
+     */
+    public static List<Chunk> getStringInChunks(
+                LineReader reader,
+                LinePatterns patterns,
+                boolean checkLinesExcluded,
+                String replacement,
+                String defaultChunkName,
+                FSFile source) throws IOException {
+        Chunker chunker =
+            new Chunker(patterns, defaultChunkName, false, source);
+        Stripper stripper = new Stripper(patterns, replacement);
+        boolean[] found = new boolean[patterns.size()];
+        int number = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            int mask = patterns.match(line, found);
+            if (checkLinesExcluded
+                && (mask & LinePatterns.IGNORE) != 0
+                && patterns.isIgnored(found)) {
+                if (replacement == null) {
+                    continue;
+                }
+                line = stripper.replace(line);
+            } else {
+                stripper.setFound(found, mask);
+            }
+            line = stripper.strip(line);
+            if (line != null) {
+                chunker.add(line, stripper.getFound(), number);
+            }
+        }
+        return chunker.getChunks();
+    }
+    
+    /**
+     * Chunks splitting state, see getStringInChunks.
+     */
+    private static class Chunker {
+        
+        private final LinePatterns patterns;
+        private final String defaultChunkName;
+        private final boolean fromWrapChar;
+        private final FSFile source;
+        private final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+        private StringBuilder defaultBuilder = new StringBuilder();
+        //source lines chunks start at, wrapped one at its wrap start
+        private int defaultLine = 0;
+        private int line = 0;
+        private StringBuilder builder = new StringBuilder();
+        private String endingWrap = null;
+        private String[] currentWrap = null;
+        private int wrap = -1;
+        private boolean isChunk = false;
+        private boolean sameLine = true;
+        private boolean firstAppend = true;
+
+        Chunker(LinePatterns patterns,
+                String defaultChunkName,
+                boolean fromWrapChar,
+                FSFile source) {
+            this.patterns = patterns;
+            //chunks are the xxx~namexxx elements
+            this.defaultChunkName =
+                defaultChunkName == null ? EMPTY : defaultChunkName;
+            this.fromWrapChar = fromWrapChar;
+            this.source = source;
+        }
+
+        /**
+         * @param line
+         * @param found line matches of patterns
+         * @param number source line number
+         */
+        void add(String line, boolean[] found, int number) {
             if (endingWrap == null) {
-                currentWrap = containsAny(line, startingWraps);
+                wrap = patterns.getChunkStart(found);
+                currentWrap = wrap == -1 ? null : patterns.getChunkWrap(wrap);
                 endingWrap = currentWrap == null ? null : currentWrap[1];
+                this.line = number;
             }
             
-            if (endingWrap != null && line.contains(endingWrap)) {
+            if (endingWrap != null && patterns.isChunkEnd(found, wrap)) {
                 if (fromWrapChar) {
                     int from = 0;
                     if (sameLine) {
@@ -262,7 +359,7 @@ public class MainProcessorHelper {
                     builder.append(line.substring(from, to));
                 }
                 
-                chunks.add(new Object[]{endingWrap, builder});
+                chunks.add(new Chunk(endingWrap, builder, source, this.line));
                 //reset
                 sameLine = true;
                 builder = new StringBuilder();
@@ -270,6 +367,7 @@ public class MainProcessorHelper {
                 isChunk = false;
                 endingWrap = null;
                 currentWrap = null;
+                wrap = -1;
             } else {
                 sameLine = false;
                 //proceed normally
@@ -284,6 +382,7 @@ public class MainProcessorHelper {
                     if (endingWrap == null) {
                         if (firstAppend) {
                           firstAppend = false;
+                          defaultLine = number;
                         } else {
                             defaultBuilder.append(RET);
                         }
@@ -291,8 +390,10 @@ public class MainProcessorHelper {
                     } else {
                         //beggining of new chunk.
                         isChunk = true;//from next line read builder
-                        chunks.add(new Object[]{defaultChunkName, defaultBuilder});
+                        chunks.add(new Chunk(defaultChunkName,
+                            defaultBuilder, source, defaultLine));
                         defaultBuilder = new StringBuilder();
+                        defaultLine = 0;
                         firstAppend = true;
                         if (fromWrapChar) {
                             int from = line.indexOf(currentWrap[0]);
@@ -308,23 +409,19 @@ public class MainProcessorHelper {
                 }
             }
         }
-        
-        //flush unclosed ending
-        if (endingWrap != null) {
-            chunks.add(new Object[]{endingWrap, builder});
-        } else {
-            chunks.add(new Object[]{defaultChunkName, defaultBuilder});
-        }
-        return chunks;
-    }
-  
-    static private String[] containsAny(String line, List<String[]> strings) {
-        for (String[] string : strings) {
-            if (line.contains(string[0])) {
-                return string;
+
+        /**
+         * @return chunks, with unclosed ending flushed
+         */
+        List<Chunk> getChunks() {
+            if (endingWrap != null) {
+                chunks.add(new Chunk(endingWrap, builder, source, line));
+            } else {
+                chunks.add(new Chunk(defaultChunkName,
+                    defaultBuilder, source, defaultLine));
             }
+            return chunks;
         }
-        return null;
     }
     
     //@todo optimise
@@ -451,6 +548,116 @@ public class MainProcessorHelper {
       return lines;
   }
   
+  /**
+   * Strips lines from all wraps patterns were compiled with, in single pass
+   * and single scan of each line. Result is the same as stripping wraps one
+   * after another with stripFromWrap.
+   * @param lines
+   * @param patterns patterns compiled with wraps to strip
+   * @param replacement replacement for stripped lines, null to remove them
+   * @return stripped lines
+   * @throws IOException 
+   */
+  public static List<String> stripFromWraps(List<String> lines, 
+                                  LinePatterns patterns,
+                                  String replacement) throws IOException {
+    int count = patterns.getStripsCount();
+    if (count == 0 || lines == null) {
+      return lines;
+    }
+    if (count == 1) {
+      //single string search is faster than automaton
+      return stripFromWrap(lines, patterns.getStripWrap(0), replacement);
+    }
+    
+    ArrayList<String> result = new ArrayList<String>(lines.size());
+    Stripper stripper = new Stripper(patterns, replacement);
+    boolean[] found = new boolean[patterns.size()];
+    for (String line : lines) {
+      stripper.setFound(found, patterns.match(line, found));
+      line = stripper.strip(line);
+      if (line != null) {
+        result.add(line);
+      }
+    }
+    return result;
+  }
+  
+  /**
+   * Wraps stripping state, see stripFromWraps.
+   */
+  private static class Stripper {
+    
+    private final LinePatterns patterns;
+    private final String replacement;
+    private final boolean[] replacementFound;
+    private final int replacementMask;
+    private final boolean[] ignore;
+    private int stripping = 0;
+    private boolean[] found;
+    private int mask;
+
+    Stripper(LinePatterns patterns, String replacement) {
+      this.patterns = patterns;
+      this.replacement = replacement;
+      this.replacementFound = new boolean[patterns.size()];
+      this.replacementMask = replacement == null
+          ? 0 : patterns.match(replacement, replacementFound);
+      this.ignore = new boolean[patterns.getStripsCount()];
+    }
+
+    /**
+     * @param found matches of next line
+     * @param mask groups mask of matches
+     */
+    void setFound(boolean[] found, int mask) {
+      this.found = found;
+      this.mask = mask;
+    }
+
+    /**
+     * @return matches of line returned by strip or replace
+     */
+    boolean[] getFound() {
+      return found;
+    }
+
+    /**
+     * @param line replaced line
+     * @return replacement, following wraps see the replacement
+     */
+    String replace(String line) {
+      setFound(replacementFound, replacementMask);
+      return replacement;
+    }
+
+    /**
+     * @param line line with matches set by setFound
+     * @return line, replacement or null if stripped line is removed
+     */
+    String strip(String line) {
+      if (stripping == 0 && (mask & LinePatterns.STRIP) == 0) {
+        return line;
+      }
+      String current = line;
+      for (int i = 0; i < ignore.length && current != null; i++) {
+        if (!ignore[i] && patterns.isStripStart(found, i)) {
+          ignore[i] = true;
+          stripping++;
+        }
+        boolean stripped = ignore[i];
+        if (ignore[i] && patterns.isStripEnd(found, i)) {
+          ignore[i] = false;
+          stripping--;
+        }
+        if (stripped && current != replacement) {
+          current = replace(current);
+        }
+      }
+      return current;
+    }
+  }
+  
   public static void stripFromWraps(BufferedReader reader, 
                                     BufferedWriter writer, 
                                     String[] wraps,
@@ -0,0 +1,346 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Output written only if its content changed. Content being written is
+ * compared with the output, nothing is written as long as they are same.
+ * Once content differs, temporary file is created next to the output, the
+ * same start of the output is copied to it and the rest of content is
+ * written to it. Changed content replaces the output with atomic rename, so
+ * readers never see partially written output. Unchanged output is only
+ * read, and keeps its modification time.
+ *
+ * Output being a symbolic link has the file it links to replaced, and
+ * replacing file gets permissions and owner (if allowed) of the replaced
+ * one. Output with hard links is written in place instead, so all its
+ * links see the change, readers may see it partially written then.
+ *
+ * Usage: open(), write, commit() and abort() in finally block.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class OutputFile {
+
+    /**
+     * Prefix of temporary files written next to outputs.
+     */
+    public static final String TEMP_PREFIX = ".compilejs";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final AtomicLong counter = new AtomicLong();
+
+    private final File target;
+    private final Charset charset;
+    private File temp = null;
+    private Path real = null;
+    //output content, compared while new content is same
+    private InputStream existing = null;
+    private byte[] compared = null;
+    //new content bytes same as output start
+    private long same = 0;
+    private OutputStream stream = null;
+    private BufferedWriter writer = null;
+
+    /**
+     * @param path output path
+     * @param charset null for default
+     */
+    public OutputFile(String path, Charset charset) {
+        this.target = new File(path).getAbsoluteFile();
+        this.charset = charset == null ? Charset.defaultCharset() : charset;
+    }
+
+    /**
+     * Writes whole content, see open().
+     *
+     * @param path output path
+     * @param content
+     * @param charset null for default
+     * @return true if output was written, false if it had same content
+     * @throws IOException
+     */
+    public static boolean write(
+        String path,
+        CharSequence content,
+        Charset charset) throws IOException {
+        OutputFile output = new OutputFile(path, charset);
+        try {
+            output.open().append(content);
+            return output.commit();
+        } finally {
+            output.abort();
+        }
+    }
+
+    /**
+     * Opens writer of the new content.
+     *
+     * @return the writer, closed by commit() or abort()
+     * @throws IOException
+     */
+    public BufferedWriter open() throws IOException {
+        real = realPath(target.toPath());
+        if (Files.isRegularFile(real)) {
+            existing = new FileInputStream(real.toFile());
+            compared = new byte[BUFFER_SIZE];
+        }
+        writer = new BufferedWriter(
+            new OutputStreamWriter(new ComparingStream(), charset),
+            BUFFER_SIZE);
+        return writer;
+    }
+
+    /**
+     * Closes the writer and replaces the output if content changed.
+     *
+     * @return true if output was written, false if it had same content
+     * @throws IOException
+     */
+    public boolean commit() throws IOException {
+        writer.close();
+        if (stream == null) {
+            if (existing != null && existing.read() == -1) {
+                //same content and length
+                closeExisting();
+                return false;
+            }
+            openTemp();
+        }
+        stream.close();
+        stream = null;
+
+        if (isHardLinked(real)) {
+            OutputStream out = new FileOutputStream(real.toFile());
+            try {
+                Files.copy(temp.toPath(), out);
+            } finally {
+                out.close();
+            }
+            Files.delete(temp.toPath());
+        } else {
+            copyAttributes(real, temp.toPath());
+            try {
+                Files.move(temp.toPath(), real,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), real,
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        temp = null;
+        return true;
+    }
+
+    /**
+     * Discards new content, output is left as it was. Does nothing after
+     * commit().
+     */
+    public void abort() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                //being discarded
+            }
+        }
+        try {
+            closeExisting();
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        } catch (IOException ex) {
+            //being discarded
+        }
+        if (temp != null) {
+            temp.delete();
+            temp = null;
+        }
+    }
+
+    /**
+     * @param name file name
+     * @return true if name is of temporary file written by compilation
+     */
+    public static boolean isTemporary(String name) {
+        return name.startsWith(TEMP_PREFIX);
+    }
+
+    /**
+     * @return path of file the path links to, the path if it is not a link
+     *  or links to missing file
+     */
+    private static Path realPath(Path path) throws IOException {
+        if (Files.isSymbolicLink(path) && Files.exists(path)) {
+            return path.toRealPath();
+        }
+        return path;
+    }
+
+    private static boolean isHardLinked(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try {
+            return ((Integer) Files.getAttribute(path, "unix:nlink")) > 1;
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies permissions and, if allowed, owner and group of replaced file.
+     */
+    private static void copyAttributes(Path from, Path to)
+        throws IOException {
+        if (!Files.isRegularFile(from)) {
+            return;
+        }
+        PosixFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(from, PosixFileAttributes.class);
+        } catch (UnsupportedOperationException ex) {
+            if (!from.toFile().canWrite()) {
+                to.toFile().setWritable(false);
+            }
+            return;
+        }
+        Files.setPosixFilePermissions(to, attributes.permissions());
+        PosixFileAttributeView view =
+            Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        try {
+            view.setOwner(attributes.owner());
+        } catch (IOException ex) {
+            //owned by other user, only root can give it away
+        }
+        try {
+            view.setGroup(attributes.group());
+        } catch (IOException ex) {
+            //not member of the group
+        }
+    }
+
+    /**
+     * Compares bytes with output content, returns true if they are the
+     * next bytes of the output.
+     */
+    private boolean isSame(byte[] bytes, int offset, int length)
+        throws IOException {
+        if (existing == null) {
+            return false;
+        }
+        int checked = 0;
+        while (checked < length) {
+            int read = existing.read(
+                compared, 0, Math.min(compared.length, length - checked));
+            if (read == -1) {
+                return false;
+            }
+            for (int i = 0; i < read; i++) {
+                if (compared[i] != bytes[offset + checked + i]) {
+                    return false;
+                }
+            }
+            checked += read;
+        }
+        same += length;
+        return true;
+    }
+
+    /**
+     * Creates temporary file starting with the output start new content
+     * had same.
+     */
+    private void openTemp() throws IOException {
+        closeExisting();
+        //next to the file replaced, rename does not cross file systems
+        temp = new File(real.getParent().toFile(), TEMP_PREFIX
+            + counter.incrementAndGet() + "." + System.nanoTime()
+            + "." + target.getName() + TEMP_SUFFIX);
+        stream = new FileOutputStream(temp);
+        if (same > 0) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            InputStream in = new FileInputStream(real.toFile());
+            try {
+                long left = same;
+                while (left > 0) {
+                    int read = in.read(
+                        buf, 0, (int) Math.min(buf.length, left));
+                    if (read == -1) {
+                        throw new IOException(
+                            "Output changed while written: " + real);
+                    }
+                    stream.write(buf, 0, read);
+                    left -= read;
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private void closeExisting() throws IOException {
+        if (existing != null) {
+            existing.close();
+            existing = null;
+            compared = null;
+        }
+    }
+
+    /**
+     * Stream under the writer, writes to temporary file once content
+     * differs from the output.
+     */
+    private class ComparingStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+            throws IOException {
+            if (stream == null && !isSame(bytes, offset, length)) {
+                openTemp();
+            }
+            if (stream != null) {
+                stream.write(bytes, offset, length);
+            }
+        }
+    }
+}
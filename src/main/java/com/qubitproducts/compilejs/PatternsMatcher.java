@@ -0,0 +1,315 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Aho-Corasick automaton matching many strings in single scan of a text.
+ * Each pattern belongs to a group (0-31), so one automaton can answer
+ * questions about different patterns sets, like "does the line contain
+ * any of line ignores" or "which wraps does the line contain".
+ *
+ * Automaton is compiled to a transitions table over classes of characters
+ * used by patterns. It is immutable and thread safe. Null and empty
+ * patterns never match.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class PatternsMatcher {
+
+    private static final int[] NONE = new int[0];
+
+    private final int[] ascii = new int[128];
+    //ascii characters leaving the root state
+    private final boolean[] starting = new boolean[128];
+    private final char[] others;
+    private final int[] othersClasses;
+    private final int classes;
+
+    //transitions, state * classes + class
+    private final int[] next;
+    //trie depth of state
+    private final int[] depth;
+    //patterns ending at state (also shorter, suffix ones), ascending
+    private final int[][] outputs;
+    //groups of patterns ending at state
+    private final int[] masks;
+    //groups of patterns equal to the whole state path
+    private final int[] ownMasks;
+
+    /**
+     * @param patterns
+     * @param groups group of each pattern, null for all in group 0
+     */
+    public PatternsMatcher(String[] patterns, int[] groups) {
+        //characters classes, 0 is any other character
+        TreeSet<Character> chars = new TreeSet<Character>();
+        for (String pattern : patterns) {
+            if (pattern != null) {
+                for (int i = 0; i < pattern.length(); i++) {
+                    chars.add(pattern.charAt(i));
+                }
+            }
+        }
+        List<Character> nonAscii = new ArrayList<Character>();
+        int count = 1;
+        for (char ch : chars) {
+            if (ch < 128) {
+                ascii[ch] = count++;
+            } else {
+                nonAscii.add(ch);
+            }
+        }
+        others = new char[nonAscii.size()];
+        othersClasses = new int[nonAscii.size()];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = nonAscii.get(i);
+            othersClasses[i] = count++;
+        }
+        classes = count;
+
+        //trie
+        List<Map<Integer, Integer>> children =
+            new ArrayList<Map<Integer, Integer>>();
+        List<Integer> depths = new ArrayList<Integer>();
+        List<List<Integer>> own = new ArrayList<List<Integer>>();
+        children.add(new HashMap<Integer, Integer>());
+        depths.add(0);
+        own.add(new ArrayList<Integer>());
+        for (int p = 0; p < patterns.length; p++) {
+            String pattern = patterns[p];
+            if (pattern == null || pattern.length() == 0) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int cls = classOf(pattern.charAt(i));
+                Integer child = children.get(state).get(cls);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new HashMap<Integer, Integer>());
+                    depths.add(i + 1);
+                    own.add(new ArrayList<Integer>());
+                    children.get(state).put(cls, child);
+                }
+                state = child;
+            }
+            own.get(state).add(p);
+        }
+
+        int states = children.size();
+        next = new int[states * classes];
+        depth = new int[states];
+        outputs = new int[states][];
+        masks = new int[states];
+        ownMasks = new int[states];
+        int[] fail = new int[states];
+
+        //breadth first, so failure state is always complete before
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int state = queue[head++];
+            depth[state] = depths.get(state);
+
+            TreeSet<Integer> found = new TreeSet<Integer>(own.get(state));
+            for (int p : own.get(state)) {
+                ownMasks[state] |= 1 << group(groups, p);
+            }
+            masks[state] = ownMasks[state];
+            if (state != 0) {
+                for (int p : outputs[fail[state]]) {
+                    found.add(p);
+                }
+                masks[state] |= masks[fail[state]];
+            }
+            outputs[state] = toArray(found);
+
+            Map<Integer, Integer> stateChildren = children.get(state);
+            for (int cls = 0; cls < classes; cls++) {
+                Integer child = stateChildren.get(cls);
+                if (child != null) {
+                    fail[child] = state == 0
+                        ? 0 : next[fail[state] * classes + cls];
+                    next[state * classes + cls] = child;
+                    queue[tail++] = child;
+                } else {
+                    next[state * classes + cls] =
+                        state == 0 ? 0 : next[fail[state] * classes + cls];
+                }
+            }
+        }
+
+        for (char ch = 0; ch < 128; ch++) {
+            starting[ch] = next[ascii[ch]] != 0;
+        }
+    }
+
+    /**
+     * @param patterns all in group 0
+     */
+    public PatternsMatcher(String[] patterns) {
+        this(patterns, null);
+    }
+
+    /**
+     * @param text
+     * @param groups groups mask (bit per group)
+     * @return true if text contains any pattern of given groups
+     */
+    public boolean contains(CharSequence text, int groups) {
+        int[] next = this.next;
+        int[] masks = this.masks;
+        boolean[] starting = this.starting;
+        int classes = this.classes;
+        int state = 0;
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            if (state == 0 && ch < 128 && !starting[ch]) {
+                continue;
+            }
+            state = next[state * classes + classOf(ch)];
+            if ((masks[state] & groups) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param text
+     * @param groups groups mask (bit per group)
+     * @return true if text starts with any pattern of given groups
+     */
+    public boolean startsWith(CharSequence text, int groups) {
+        int state = 0;
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            state = next[state * classes + classOf(text.charAt(i))];
+            if (depth[state] != i + 1) {
+                return false;
+            }
+            if ((ownMasks[state] & groups) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds first (by index) of patterns in range that text contains.
+     *
+     * @param text
+     * @param from first pattern index
+     * @param to last pattern index, exclusive
+     * @return pattern index or -1
+     */
+    public int first(CharSequence text, int from, int to) {
+        int[] next = this.next;
+        int[] masks = this.masks;
+        boolean[] starting = this.starting;
+        int classes = this.classes;
+        int first = to;
+        int state = 0;
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            if (state == 0 && ch < 128 && !starting[ch]) {
+                continue;
+            }
+            state = next[state * classes + classOf(ch)];
+            if (masks[state] == 0) {
+                continue;
+            }
+            for (int p : outputs[state]) {
+                if (p >= first) {
+                    break;
+                }
+                if (p >= from) {
+                    first = p;
+                    break;
+                }
+            }
+        }
+        return first == to ? -1 : first;
+    }
+
+    /**
+     * Marks all patterns that text contains.
+     *
+     * @param text
+     * @param found array of patterns size, cleared first
+     * @return groups mask of found patterns
+     */
+    public int match(CharSequence text, boolean[] found) {
+        int[] next = this.next;
+        int[] masks = this.masks;
+        boolean[] starting = this.starting;
+        int classes = this.classes;
+        int groups = 0;
+        int state = 0;
+        int len = text.length();
+        Arrays.fill(found, false);
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            if (state == 0 && ch < 128 && !starting[ch]) {
+                continue;
+            }
+            state = next[state * classes + classOf(ch)];
+            if (masks[state] != 0) {
+                groups |= masks[state];
+                for (int p : outputs[state]) {
+                    found[p] = true;
+                }
+            }
+        }
+        return groups;
+    }
+
+    private int classOf(char ch) {
+        if (ch < 128) {
+            return ascii[ch];
+        }
+        int idx = Arrays.binarySearch(others, ch);
+        return idx < 0 ? 0 : othersClasses[idx];
+    }
+
+    private static int group(int[] groups, int pattern) {
+        return groups == null ? 0 : groups[pattern];
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        if (set.isEmpty()) {
+            return NONE;
+        }
+        int[] array = new int[set.size()];
+        int i = 0;
+        for (int value : set) {
+            array[i++] = value;
+        }
+        return array;
+    }
+}
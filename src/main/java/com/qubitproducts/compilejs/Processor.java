@@ -22,6 +22,9 @@ package com.qubitproducts.compilejs;
 import java.util.List;
 
 /**
+ * Processor of all chunks of a file at once, each chunk is
+ * Object[]{String type, StringBuilder content}. See ChunkProcessor for
+ * processors streaming typed chunks.
  *
  * @author peter.fronc@qubit.com
  */
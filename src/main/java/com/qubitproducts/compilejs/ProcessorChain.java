@@ -0,0 +1,243 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs file chunks through chunk processors, each processor output is
+ * streamed to the next one. Chunks passed unchanged by all processors
+ * are not copied.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class ProcessorChain {
+
+    private ProcessorChain() {
+    }
+
+    /**
+     * @param processors processors, in order
+     * @param chunks file chunks
+     * @param extension processed file extension
+     * @return processed chunks
+     * @throws IOException
+     */
+    public static List<Chunk> process(
+        List<? extends ChunkProcessor> processors,
+        List<Chunk> chunks,
+        String extension) throws IOException {
+        Collector collector = new Collector();
+        ChunkSink sink = collector;
+        for (int i = processors.size() - 1; i >= 0; i--) {
+            sink = processors.get(i).open(extension, sink);
+        }
+        for (Chunk chunk : chunks) {
+            CharSequence content = chunk.getContent();
+            sink.startChunk(chunk);
+            sink.append(content, 0, content.length());
+            sink.endChunk();
+        }
+        sink.close();
+        return collector.chunks;
+    }
+
+    /**
+     * Runs processor over chunks list in place, for Processor API.
+     *
+     * @param processor
+     * @param chunks Array of Object[String, StringBuilder]
+     * @param extension processed file extension
+     * @throws IOException
+     */
+    public static void process(
+        ChunkProcessor processor,
+        List<Object[]> chunks,
+        String extension) throws IOException {
+        List<Chunk> result = process(Collections.singletonList(processor),
+            toChunks(chunks), extension);
+        chunks.clear();
+        chunks.addAll(toArrays(result));
+    }
+
+    /**
+     * Adapter for Processor implementations: chunks of file are collected
+     * and passed to the processor at once. Chunks it returns have no source.
+     *
+     * @param processor
+     * @return chunk processor
+     */
+    public static ChunkProcessor adapt(final Processor processor) {
+        return new ChunkProcessor() {
+            @Override
+            public ChunkSink open(String extension, ChunkSink out) {
+                return new Adapter(processor, extension, out);
+            }
+        };
+    }
+
+    private static List<Chunk> toChunks(List<Object[]> arrays) {
+        List<Chunk> chunks = new ArrayList<Chunk>(arrays.size());
+        for (Object[] array : arrays) {
+            chunks.add(new Chunk((String) array[0], (StringBuilder) array[1]));
+        }
+        return chunks;
+    }
+
+    private static List<Object[]> toArrays(List<Chunk> chunks) {
+        List<Object[]> arrays = new ArrayList<Object[]>(chunks.size());
+        for (Chunk chunk : chunks) {
+            arrays.add(new Object[]{chunk.getType(), chunk.getBuilder()});
+        }
+        return arrays;
+    }
+
+    /**
+     * Builds chunks list, chunks which whole content is appended at once
+     * are kept.
+     */
+    private static class Collector implements ChunkSink {
+
+        final List<Chunk> chunks = new ArrayList<Chunk>();
+        private Chunk chunk = null;
+        private StringBuilder builder = null;
+        private boolean same = false;
+
+        @Override
+        public void startChunk(Chunk chunk) {
+            this.chunk = chunk;
+            builder = null;
+            same = false;
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            if (builder == null && !same
+                && text == chunk.getContent()
+                && start == 0 && end == text.length()) {
+                same = true;
+                return this;
+            }
+            builder().append(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) {
+            if (text == null) {
+                text = "null";
+            }
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public Appendable append(char ch) {
+            builder().append(ch);
+            return this;
+        }
+
+        private StringBuilder builder() {
+            if (same) {
+                builder = new StringBuilder(chunk.getContent());
+                same = false;
+            } else if (builder == null) {
+                builder = new StringBuilder();
+            }
+            return builder;
+        }
+
+        @Override
+        public void endChunk() {
+            if (same) {
+                chunks.add(chunk);
+            } else {
+                chunks.add(chunk.derive(
+                    builder == null ? new StringBuilder() : builder));
+            }
+            chunk = null;
+            builder = null;
+            same = false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Collects chunks for Processor and writes its results on close.
+     */
+    private static class Adapter implements ChunkSink {
+
+        private final Processor processor;
+        private final String extension;
+        private final ChunkSink out;
+        private final List<Object[]> chunks = new ArrayList<Object[]>();
+        private StringBuilder builder = null;
+
+        Adapter(Processor processor, String extension, ChunkSink out) {
+            this.processor = processor;
+            this.extension = extension;
+            this.out = out;
+        }
+
+        @Override
+        public void startChunk(Chunk chunk) {
+            builder = new StringBuilder();
+            chunks.add(new Object[]{chunk.getType(), builder});
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            builder.append(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) {
+            builder.append(text);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char ch) {
+            builder.append(ch);
+            return this;
+        }
+
+        @Override
+        public void endChunk() {
+            builder = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            processor.process(chunks, extension);
+            for (Chunk chunk : toChunks(chunks)) {
+                CharSequence content = chunk.getContent();
+                out.startChunk(chunk);
+                out.append(content, 0, content.length());
+                out.endChunk();
+            }
+            chunks.clear();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Listed files selection rules compiled once: excluded names
+ * (--add-excluded-files), included extensions (-i) as a trie of reversed
+ * suffixes, names patterns (--exclude-file-patterns) and canonical paths
+ * patterns (--exclude-file-path-patterns). Canonical paths are resolved
+ * only if there are path patterns.
+ *
+ * Filter is immutable, it can be kept between compilations, see
+ * CompilationCache.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class SourceFilter {
+
+    private static final String[] NONE = new String[0];
+    private static final String ANY = "*";
+
+    private final String[] mergeOnly;
+    private final String[] namesExcluded;
+    private final String[] namePatterns;
+    private final String[] pathPatterns;
+
+    private final Set<String> names;
+    private final boolean any;
+    private final Suffix suffixes = new Suffix();
+    private final Pattern[] compiledNamePatterns;
+    private final Pattern[] compiledPathPatterns;
+
+    /**
+     * Node of reversed suffixes trie.
+     */
+    private static class Suffix {
+
+        final Map<Character, Suffix> children =
+            new HashMap<Character, Suffix>();
+        boolean end = false;
+    }
+
+    /**
+     * @param mergeOnly included names endings, "*" for all
+     * @param namesExcluded excluded names
+     * @param namePatterns regular expressions of excluded names
+     * @param pathPatterns regular expressions of excluded canonical paths
+     */
+    public SourceFilter(
+        String[] mergeOnly,
+        String[] namesExcluded,
+        String[] namePatterns,
+        String[] pathPatterns) {
+        this.mergeOnly = copy(mergeOnly);
+        this.namesExcluded = copy(namesExcluded);
+        this.namePatterns = copy(namePatterns);
+        this.pathPatterns = copy(pathPatterns);
+
+        names = new HashSet<String>();
+        Collections.addAll(names, this.namesExcluded);
+
+        boolean all = false;
+        for (String suffix : this.mergeOnly) {
+            if (suffix.equals(ANY)) {
+                all = true;
+            }
+            Suffix node = suffixes;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                Character ch = suffix.charAt(i);
+                Suffix child = node.children.get(ch);
+                if (child == null) {
+                    child = new Suffix();
+                    node.children.put(ch, child);
+                }
+                node = child;
+            }
+            node.end = true;
+        }
+        any = all;
+
+        compiledNamePatterns = compile(this.namePatterns);
+        compiledPathPatterns = compile(this.pathPatterns);
+    }
+
+    /**
+     * @return true if filter was created with the same rules
+     */
+    public boolean isFor(
+        String[] mergeOnly,
+        String[] namesExcluded,
+        String[] namePatterns,
+        String[] pathPatterns) {
+        return Arrays.equals(this.mergeOnly, orNone(mergeOnly))
+            && Arrays.equals(this.namesExcluded, orNone(namesExcluded))
+            && Arrays.equals(this.namePatterns, orNone(namePatterns))
+            && Arrays.equals(this.pathPatterns, orNone(pathPatterns));
+    }
+
+    /**
+     * @param file
+     * @param canonicalPaths resolves paths for path patterns
+     * @return true if file should be included
+     */
+    public boolean isIncluded(FSFile file, CanonicalPaths canonicalPaths) {
+        String name = file.getName();
+        if (names.contains(name) || !(any || hasSuffix(name))) {
+            return false;
+        }
+        for (Pattern pattern : compiledNamePatterns) {
+            if (pattern.matcher(name).matches()) {
+                return false;
+            }
+        }
+        if (compiledPathPatterns.length > 0) {
+            try {
+                String canonical = canonicalPaths.getCanonicalPath(file);
+                for (Pattern pattern : compiledPathPatterns) {
+                    if (pattern.matcher(canonical).matches()) {
+                        return false;
+                    }
+                }
+            } catch (IOException e) {
+                //just try
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param name
+     * @return true if name ends with any of included endings
+     */
+    public boolean hasSuffix(String name) {
+        Suffix node = suffixes;
+        for (int i = name.length(); ; i--) {
+            if (node.end) {
+                return true;
+            }
+            if (i == 0) {
+                return false;
+            }
+            node = node.children.get(name.charAt(i - 1));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    private static Pattern[] compile(String[] regexes) {
+        Pattern[] patterns = new Pattern[regexes.length];
+        for (int i = 0; i < regexes.length; i++) {
+            patterns[i] = Pattern.compile(regexes[i]);
+        }
+        return patterns;
+    }
+
+    private static String[] copy(String[] strings) {
+        return strings == null ? NONE : strings.clone();
+    }
+
+    private static String[] orNone(String[] strings) {
+        return strings == null ? NONE : strings;
+    }
+}
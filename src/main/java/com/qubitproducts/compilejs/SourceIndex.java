@@ -0,0 +1,346 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of source bases directories. Each directory is listed once, when
+ * first path in it is resolved, and existence of dependency paths in every
+ * source base is answered from listings instead of checking each path in
+ * each base on disk. Directories are shared by all bases, so nested or
+ * repeated bases are listed once.
+ *
+ * Index is kept between compilations by CompilationCache. refresh() checks
+ * modification time of listed directories (file created or deleted changes
+ * it) and invalidate() drops listings of paths reported by the watcher.
+ *
+ * Index is thread safe.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class SourceIndex {
+
+    //directory modified this close to listing may change unnoticed
+    private static final long RACY = 2000;
+
+    private final Map<String, Dir> dirs = new ConcurrentHashMap<String, Dir>();
+
+    /**
+     * Directory listing.
+     */
+    static class Listing {
+
+        final Set<String> names;
+        final boolean directory;
+        final long lastModified;
+        final boolean racy;
+        volatile String[] sorted = null;
+        volatile Set<String> folded = null;
+
+        Listing(File file) {
+            long listedAt = System.currentTimeMillis();
+            lastModified = file.lastModified();
+            String[] list = file.list();
+            directory = list != null;
+            if (list == null) {
+                names = Collections.emptySet();
+            } else {
+                names = new HashSet<String>(list.length * 2);
+                Collections.addAll(names, list);
+            }
+            racy = listedAt - lastModified < RACY;
+        }
+
+        String[] getSorted() {
+            String[] result = sorted;
+            if (result == null) {
+                result = names.toArray(new String[names.size()]);
+                Arrays.sort(result);
+                sorted = result;
+            }
+            return result;
+        }
+
+        boolean containsIgnoreCase(String name) {
+            Set<String> result = folded;
+            if (result == null) {
+                result = new HashSet<String>(names.size() * 2);
+                for (String listed : names) {
+                    result.add(listed.toLowerCase(Locale.ROOT));
+                }
+                folded = result;
+            }
+            return result.contains(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Directory, null listing means not listed yet.
+     */
+    static class Dir {
+
+        final File file;
+        final Map<String, Dir> children = new ConcurrentHashMap<String, Dir>();
+        volatile Listing listing = null;
+
+        Dir(File file) {
+            this.file = file;
+        }
+
+        Listing getListing() {
+            Listing result = listing;
+            if (result == null) {
+                result = new Listing(file);
+                listing = result;
+            }
+            return result;
+        }
+
+        Set<String> getNames() {
+            return getListing().names;
+        }
+
+        String[] getSortedNames() {
+            return getListing().getSorted();
+        }
+
+        boolean exists() {
+            return getListing().lastModified != 0;
+        }
+
+        boolean isDirectory() {
+            return getListing().directory;
+        }
+    }
+
+    /**
+     * Checks if relative path is supported by the index: not absolute and
+     * without "." and ".." elements. Other paths must be checked on disk.
+     *
+     * @param path
+     * @return true if path can be resolved by the index
+     */
+    public static boolean isIndexable(String path) {
+        if (path == null || new File(path).isAbsolute()) {
+            return false;
+        }
+        int len = path.length();
+        int start = 0;
+        for (int i = 0; i <= len; i++) {
+            if (i == len || isSeparator(path.charAt(i))) {
+                int segment = i - start;
+                if ((segment == 1 && path.charAt(start) == '.')
+                    || (segment == 2 && path.charAt(start) == '.'
+                    && path.charAt(start + 1) == '.')) {
+                    return false;
+                }
+                start = i + 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if file or directory exists in base directory. Path differing
+     * from listed names in case only is checked on disk, so answer is same
+     * as of File.exists() on case insensitive file systems.
+     *
+     * @param base absolute base directory path
+     * @param path indexable path relative to base, see isIndexable()
+     * @return true if exists
+     */
+    public boolean exists(String base, String path) {
+        Dir dir = getDir(base);
+        int len = path.length();
+        int start = 0;
+        String name = null;
+        for (int i = 0; i <= len; i++) {
+            if (i == len || isSeparator(path.charAt(i))) {
+                if (i > start) {
+                    if (name != null) {
+                        if (!dir.getNames().contains(name)) {
+                            return existsIgnoringCase(dir, name, base, path);
+                        }
+                        dir = getChild(dir, name);
+                    }
+                    name = path.substring(start, i);
+                }
+                start = i + 1;
+            }
+        }
+        if (name == null) {
+            return dir.exists();
+        }
+        return dir.getNames().contains(name)
+            || existsIgnoringCase(dir, name, base, path);
+    }
+
+    private static boolean existsIgnoringCase(
+        Dir dir, String name, String base, String path) {
+        return dir.getListing().containsIgnoreCase(name)
+            && new File(base, path).exists();
+    }
+
+    /**
+     * Lists directory names, sorted.
+     *
+     * @param base absolute base directory path
+     * @param path indexable directory path relative to base
+     * @return names or empty array if directory does not exist
+     */
+    public String[] list(String base, String path) {
+        Dir dir = getDir(base);
+        int len = path.length();
+        int start = 0;
+        for (int i = 0; i <= len; i++) {
+            if (i == len || isSeparator(path.charAt(i))) {
+                if (i > start) {
+                    dir = getChild(dir, path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return dir.getSortedNames();
+    }
+
+    /**
+     * Finds files (not directories) matching the pattern. Paths are sorted
+     * by names in each directory, files of directory come before files of
+     * its subdirectories matched by "**".
+     *
+     * @param base absolute base directory path
+     * @param glob pattern of paths relative to base
+     * @return relative paths of matching files
+     */
+    public List<String> find(String base, Glob glob) {
+        Set<String> found = new LinkedHashSet<String>();
+        if (glob.size() > 0) {
+            find(getDir(base), null, glob, 0, found);
+        }
+        return new ArrayList<String>(found);
+    }
+
+    private void find(Dir dir, String path, Glob glob, int element,
+        Set<String> found) {
+        if (glob.isAnyDirs(element)) {
+            find(dir, path, glob, element + 1, found);
+            for (String name : dir.getSortedNames()) {
+                Dir child = getChild(dir, name);
+                if (child.isDirectory()) {
+                    find(child, join(path, name), glob, element, found);
+                }
+            }
+            return;
+        }
+        boolean last = element == glob.size() - 1;
+        for (String name : dir.getSortedNames()) {
+            if (glob.matches(element, name)) {
+                Dir child = getChild(dir, name);
+                if (last) {
+                    if (!child.isDirectory()) {
+                        found.add(join(path, name));
+                    }
+                } else if (child.isDirectory()) {
+                    find(child, join(path, name), glob, element + 1, found);
+                }
+            }
+        }
+    }
+
+    private static String join(String path, String name) {
+        return path == null ? name : path + File.separator + name;
+    }
+
+    /**
+     * Drops listings of directories changed since listed. Should be called
+     * before each compilation using the index kept.
+     */
+    public void refresh() {
+        for (Dir dir : dirs.values()) {
+            Listing listing = dir.listing;
+            if (listing != null && (listing.racy
+                || dir.file.lastModified() != listing.lastModified)) {
+                dir.listing = null;
+            }
+        }
+    }
+
+    /**
+     * Drops listings of given directories and directories containing given
+     * files. Null paths set drops all listings.
+     *
+     * @param paths normalized absolute paths
+     */
+    public void invalidate(Set<String> paths) {
+        if (paths == null) {
+            dirs.clear();
+            return;
+        }
+        for (String path : paths) {
+            File file = new File(path);
+            unlist(file.getPath());
+            if (file.getParent() != null) {
+                unlist(file.getParent());
+            }
+        }
+    }
+
+    private void unlist(String path) {
+        Dir dir = dirs.get(path);
+        if (dir != null) {
+            dir.listing = null;
+        }
+    }
+
+    private Dir getDir(String path) {
+        Dir dir = dirs.get(path);
+        if (dir == null) {
+            File file = new File(path).getAbsoluteFile();
+            dir = dirs.get(file.getPath());
+            if (dir == null) {
+                dir = new Dir(file);
+                dirs.put(file.getPath(), dir);
+            }
+            dirs.put(path, dir);
+        }
+        return dir;
+    }
+
+    private Dir getChild(Dir dir, String name) {
+        Dir child = dir.children.get(name);
+        if (child == null) {
+            child = getDir(new File(dir.file, name).getPath());
+            dir.children.put(name, child);
+        }
+        return child;
+    }
+
+    private static boolean isSeparator(char ch) {
+        return ch == '/' || ch == File.separatorChar;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.CFile;
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+/**
+ * Lists source trees (-s paths). Attributes of each entry are read once
+ * and listed files keep them, so checking later if they are files or their
+ * length does not touch the disk again. Directories which names match
+ * excluded patterns (--file-search-excluded) are not entered, patterns are
+ * compiled once.
+ *
+ * Subdirectories can be listed concurrently on fork/join pool. Order of
+ * files is the same as when listing in one thread: directory entries order,
+ * with files of subdirectory in place of the subdirectory.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class SourceLister {
+
+    private static final String[] NONE = new String[0];
+
+    private final String[] excludedDirs;
+    private final Pattern[] patterns;
+
+    /**
+     * @param excludedDirs regular expressions of excluded directories names,
+     *  may be null
+     */
+    public SourceLister(String[] excludedDirs) {
+        this.excludedDirs = excludedDirs == null ? NONE : excludedDirs.clone();
+        this.patterns = new Pattern[this.excludedDirs.length];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = Pattern.compile(this.excludedDirs[i]);
+        }
+    }
+
+    /**
+     * @param excludedDirs
+     * @return true if lister was created for the same excluded directories
+     */
+    public boolean isFor(String[] excludedDirs) {
+        return Arrays.equals(this.excludedDirs,
+            excludedDirs == null ? NONE : excludedDirs);
+    }
+
+    /**
+     * @param name directory name
+     * @return pattern excluding the name or null if not excluded
+     */
+    public String getExcluding(String name) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(name).matches()) {
+                return excludedDirs[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists all files in the tree. Root that is not a directory (or could not
+     * be listed) is returned as the only file, same applies to
+     * subdirectories.
+     *
+     * @param root tree root, mostly a directory
+     * @param pool pool to list subdirectories on, null lists in current
+     *  thread
+     * @param log logs excluded directories, may be null
+     * @return files or null if root itself is excluded
+     */
+    public List<FSFile> list(FSFile root, ForkJoinPool pool, Log log) {
+        String regex = getExcluding(root.getName());
+        if (regex != null) {
+            logExcluded(log, regex, root.getAbsolutePath());
+            return null;
+        }
+        ListTask task = new ListTask(
+            new File(root.getPath()), root, pool != null, log);
+        List<FSFile> results;
+        if (pool == null) {
+            results = new ArrayList<FSFile>();
+            task.list(results);
+        } else {
+            results = pool.invoke(task);
+        }
+        return results;
+    }
+
+    private static void logExcluded(Log log, String regex, String path) {
+        if (log != null && log.LOG) {
+            log.log("Excluded file by regex " + regex + ": " + path);
+        }
+    }
+
+    /**
+     * Lists one directory, subdirectories are forked if listing
+     * concurrently.
+     */
+    private class ListTask extends RecursiveTask<List<FSFile>> {
+
+        private static final long serialVersionUID = 1L;
+        private final File dir;
+        //listed instead of directory contents if cannot be listed
+        private final FSFile entry;
+        private final boolean fork;
+        private final Log log;
+
+        ListTask(File dir, FSFile entry, boolean fork, Log log) {
+            this.dir = dir;
+            this.entry = entry;
+            this.fork = fork;
+            this.log = log;
+        }
+
+        @Override
+        protected List<FSFile> compute() {
+            List<FSFile> results = new ArrayList<FSFile>();
+            list(results);
+            return results;
+        }
+
+        void list(List<FSFile> results) {
+            //files and subdirectories tasks in entries order
+            List<Object> entries = new ArrayList<Object>();
+            try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(dir.toPath())) {
+                for (Path path : stream) {
+                    File file = new File(dir, path.getFileName().toString());
+                    BasicFileAttributes attributes = null;
+                    try {
+                        attributes = Files.readAttributes(
+                            path, BasicFileAttributes.class);
+                    } catch (IOException ex) {
+                        //broken link etc., plain file as for listFiles()
+                    }
+                    if (attributes == null) {
+                        entries.add(new CFile(file));
+                    } else if (!attributes.isDirectory()) {
+                        entries.add(new ListedFile(file, attributes));
+                    } else {
+                        String regex = getExcluding(file.getName());
+                        if (regex != null) {
+                            logExcluded(log, regex, file.getAbsolutePath());
+                        } else {
+                            entries.add(new ListTask(file,
+                                new ListedFile(file, attributes), fork, log));
+                        }
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException ex) {
+                //not a directory or cannot be read
+                results.add(entry);
+                return;
+            }
+
+            if (fork) {
+                for (Object object : entries) {
+                    if (object instanceof ListTask) {
+                        ((ListTask) object).fork();
+                    }
+                }
+            }
+            for (Object object : entries) {
+                if (object instanceof ListTask) {
+                    ListTask task = (ListTask) object;
+                    if (fork) {
+                        results.addAll(task.join());
+                    } else {
+                        task.list(results);
+                    }
+                } else {
+                    results.add((FSFile) object);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listed file with attributes read while listing.
+     */
+    static class ListedFile extends CFile {
+
+        private final boolean directory;
+        private final boolean regularFile;
+        private final long length;
+
+        ListedFile(File file, BasicFileAttributes attributes) {
+            super(file);
+            this.directory = attributes.isDirectory();
+            this.regularFile = attributes.isRegularFile();
+            this.length = attributes.size();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public boolean isFile() {
+            return regularFile;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+    }
+}
@@ -34,6 +34,54 @@ public class Utils {
     private static boolean charIsNumeric(char ch) {
         return (ch >= '0' && ch <= '9');
     }
+    /**
+     * String.trim() equivalent for sequences, returns start index.
+     * @param seq
+     * @return index of first character after leading white spaces
+     */
+    static public int trimStart(CharSequence seq) {
+        int start = 0;
+        int len = seq.length();
+        while (start < len && seq.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+    
+    /**
+     * String.trim() equivalent for sequences, returns end index.
+     * @param seq
+     * @return index after last character before trailing white spaces
+     */
+    static public int trimEnd(CharSequence seq) {
+        int end = seq.length();
+        while (end > 0 && seq.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+    
+    /**
+     * String.startsWith(prefix, offset) equivalent for sequences.
+     * @param seq
+     * @param offset
+     * @param prefix
+     * @return true if seq has prefix at offset
+     */
+    static public boolean startsWith(
+            CharSequence seq, int offset, String prefix) {
+        int len = prefix.length();
+        if (offset < 0 || offset + len > seq.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (seq.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * 
      * @param string
@@ -20,7 +20,6 @@
 package com.qubitproducts.compilejs;
 
 import com.sun.nio.file.SensitivityWatchEventModifier;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 
@@ -37,11 +36,22 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import java.nio.file.WatchService;
 import java.nio.file.WatchEvent.Kind;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * File system watcher. All watched paths share one WatchService and one
+ * thread. Directories are registered once, new directories are registered
+ * as they are created and excluded paths are never registered.
  *
  * @author Peter Fronc <peter.fronc@qubitdigital.com>
  */
@@ -55,9 +65,28 @@ public class Watcher {
             null,null, null);
     }
     
+    public static final long DEFAULT_DEBOUNCE = 150;
+    private static final int MAX_DEBOUNCES = 10;
+
+    private static final Kind[] KINDS = new WatchEvent.Kind[]{
+        StandardWatchEventKinds.OVERFLOW,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY
+    };
+
     private Thread thread;
     private volatile boolean watching = false;
+    private long debounce = DEFAULT_DEBOUNCE;
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+    private final Set<Path> registered = new HashSet<Path>();
+    private final List<Path> excluded = new ArrayList<Path>();
 
+    /**
+     * Watches path until stopped.
+     * 
+     * @see #watchNow(java.util.List, com.qubitproducts.compilejs.Callback, com.qubitproducts.compilejs.Callback, java.util.List) 
+     */
     public void watchNow(String path, 
         Callback changeCallback,
         Callback eachFileCallback,
@@ -65,111 +94,211 @@ public class Watcher {
         throws
         IOException,
         InterruptedException {
+        watchNow(Arrays.asList(path),
+            changeCallback, eachFileCallback, excludes);
+    }
+
+    /**
+     * Watches paths until stopped. Events are collected and deduplicated
+     * during debounce time, then eachFileCallback is called with each
+     * changed Path and changeCallback once with Set of changed Paths.
+     * 
+     * @param paths directories or files to watch
+     * @param changeCallback
+     * @param eachFileCallback
+     * @param excludes paths (files or directories) to ignore changes of, 
+     *  excluded directories are not watched
+     * @throws IOException
+     * @throws InterruptedException 
+     */
+    public void watchNow(List<String> paths, 
+        Callback changeCallback,
+        Callback eachFileCallback,
+        List<String> excludes)
+        throws
+        IOException,
+        InterruptedException {
 
+        WatchService watcher = null;
         try {
             this.watching = true;
             
-            final Kind[] kinds = new WatchEvent.Kind[]{
-                StandardWatchEventKinds.OVERFLOW,
-                StandardWatchEventKinds.ENTRY_CREATE,
-                StandardWatchEventKinds.ENTRY_DELETE,
-                StandardWatchEventKinds.ENTRY_MODIFY
-            };
-
-            final Path myDir;
-            final WatchService watcher;
-            
-            if (Paths.get(path).toFile().isDirectory()) {
-                
-                myDir = Paths.get(path);
-                watcher = myDir.getFileSystem().newWatchService();
-                
-                myDir.register(watcher, kinds, 
-                    SensitivityWatchEventModifier.HIGH);
+            excluded.clear();
+            if (excludes != null) {
+                for (String exclude : excludes) {
+                    excluded.add(canonical(Paths.get(exclude)));
+                }
+            }
 
-                registerTree(myDir, watcher, kinds);
-            } else {
-                myDir = Paths.get(path).getParent();
-                watcher = myDir.getFileSystem().newWatchService();
-                myDir.register(watcher, kinds,
-                    SensitivityWatchEventModifier.HIGH);
+            keys.clear();
+            registered.clear();
+            for (String path : paths) {
+                Path root = Paths.get(path);
+                if (watcher == null) {
+                    watcher = root.getFileSystem().newWatchService();
+                }
+                if (root.toFile().isDirectory()) {
+                    registerTree(root, watcher);
+                } else {
+                    register(root.getParent(), watcher);
+                }
+                System.out.println("Watching attached to " + root);
             }
             
-            System.out.println("Watching attached to " + myDir);
+            if (watcher == null) {
+                return;
+            }
 
-            while (this.watching) {
+            while (this.watching && !keys.isEmpty()) {
                 
-                final WatchKey key = watcher.take();
-                //if (key == null) continue; //poll case
-                // key value can be null if no event was triggered
-                boolean called = false;
-                for (WatchEvent<?> event : key.pollEvents()) {
-                    final Kind<?> kind = event.kind();
-                    // Overflow event
-                    if (StandardWatchEventKinds.OVERFLOW == kind) {
-                        continue; // loop
-                    } else {
-                        Path tmpPath = (Path) key.watchable();
-                        tmpPath = tmpPath.resolve(((Path) event.context()));
-                        if (kind == ENTRY_CREATE) {
-                            System.out.println("Created " + tmpPath.toAbsolutePath());
-                            registerTree(tmpPath, watcher, kinds);
-                        } else if (kind == ENTRY_DELETE) {
-                            System.out.println("Deleted " + event.context());
-                        } else if (kind == ENTRY_MODIFY) {
-                            System.out.println("Modified " + event.context());
-                        }
-                        
-                        //check if not in excludes
-                        boolean inExcluded = false;
-                        if (excludes != null) {
-                            File tmp = tmpPath.toFile().getCanonicalFile();
-                            for (String exclude : excludes) {
-                                if (tmp.equals(new File(exclude)
-                                        .getCanonicalFile())) {
-                                    inExcluded = true;
-                                }
-                            }
-                        }
-                        
-                        //not excluded - process
-                        if (!inExcluded) {
-                            if (eachFileCallback != null) {
-                                Path dir = (Path) key.watchable();
-                                dir = dir.resolve(((Path) event.context()));
-                                eachFileCallback.call(dir);
-                            }
-                            called = true;
-                        }
+                WatchKey key = watcher.take();
+                
+                //collect events until nothing happens for debounce time,
+                // many events (saving in IDE, checkouts) end up in single
+                // change call
+                Set<Path> changed = new LinkedHashSet<Path>();
+                long deadline = System.currentTimeMillis()
+                    + debounce * MAX_DEBOUNCES;
+                while (key != null) {
+                    collectEvents(key, watcher, changed);
+                    if (!key.reset()) {
+                        //directory deleted
+                        registered.remove(keys.remove(key));
                     }
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) {
+                        break;
+                    }
+                    key = watcher.poll(Math.min(debounce, left),
+                        TimeUnit.MILLISECONDS);
                 }
                 
-                if (called) {
+                if (!changed.isEmpty()) {
+                    if (eachFileCallback != null) {
+                        for (Path changedPath : changed) {
+                            eachFileCallback.call(changedPath);
+                        }
+                    }
                     if (changeCallback != null) {
                         System.out.println("Unignored changes detected.");
-                        changeCallback.call(key);
+                        changeCallback.call(changed);
                     }
                 }
-                
-                if (!key.reset()) {
-                    break;
-                }
             }
         } catch (java.nio.file.NotDirectoryException ex) {
             System.out.println("Cannot watch plain file.");
         } finally {
             watching =  false;
+            if (watcher != null) {
+                watcher.close();
+            }
         }
 
     }
     
+    /**
+     * Adds paths changed in key events to the changed set. Excluded paths
+     * are skipped. Overflow adds watched directory itself as events could
+     * be lost.
+     */
+    private void collectEvents(
+        WatchKey key,
+        WatchService watcher,
+        Set<Path> changed)
+        throws IOException {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            dir = (Path) key.watchable();
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            final Kind<?> kind = event.kind();
+            Path tmpPath;
+            if (StandardWatchEventKinds.OVERFLOW == kind) {
+                System.out.println("Events lost at " + dir);
+                tmpPath = dir;
+            } else {
+                tmpPath = dir.resolve(((Path) event.context()));
+                if (kind == ENTRY_CREATE) {
+                    System.out.println("Created " + tmpPath.toAbsolutePath());
+                    if (Files.isDirectory(tmpPath)) {
+                        //only the new subtree
+                        registerTree(tmpPath, watcher);
+                    }
+                } else if (kind == ENTRY_DELETE) {
+                    System.out.println("Deleted " + event.context());
+                } else if (kind == ENTRY_MODIFY) {
+                    System.out.println("Modified " + event.context());
+                }
+            }
+
+            //not excluded - process, temporary files of outputs are
+            // written next to them
+            if (!isExcluded(tmpPath) && (tmpPath.getFileName() == null
+                || !OutputFile.isTemporary(
+                    tmpPath.getFileName().toString()))) {
+                changed.add(tmpPath);
+            }
+        }
+    }
+
+    /**
+     * @return the debounce time in milliseconds
+     */
+    public long getDebounce() {
+        return debounce;
+    }
+
+    /**
+     * Sets time with no events after which collected changes are reported.
+     * Changes are reported at latest after 10 times debounce time.
+     * @param debounce time in milliseconds, 0 reports changes immediately
+     */
+    public void setDebounce(long debounce) {
+        this.debounce = debounce;
+    }
+
     int maxErrorMsgs = 99;
     volatile int maxErrorCount = 0;
     
+    private boolean isExcluded(Path path) throws IOException {
+        if (excluded.isEmpty()) {
+            return false;
+        }
+        Path tmp = canonical(path);
+        for (Path exclude : excluded) {
+            if (tmp.startsWith(exclude)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path canonical(Path path) throws IOException {
+        return path.toFile().getCanonicalFile().toPath();
+    }
+
+    private void register(Path dir, WatchService watcher) {
+        if (!registered.add(dir)) {
+            return;
+        }
+        try {
+            WatchKey key = dir.register(watcher, KINDS,
+                SensitivityWatchEventModifier.HIGH);
+            keys.put(key, dir);
+        } catch (Exception ex) {
+            registered.remove(dir);
+            if (maxErrorCount++ < maxErrorMsgs)
+            System.out.println("Cannot register watch at file " + 
+                dir + "\n. Exception:" + ex.getMessage());
+            if (maxErrorCount == maxErrorMsgs) {
+                System.out.println("Stopping errors log...");
+            }
+        }
+    }
+    
     private void registerTree(
         Path myDir,
-        final WatchService watcher,
-        final Kind[] kinds)
+        final WatchService watcher)
         throws IOException {
 
         Files.walkFileTree(myDir, new SimpleFileVisitor<Path>() {
@@ -178,21 +307,21 @@ public class Watcher {
                 final Path dir,
                 BasicFileAttributes attrs)
                 throws IOException {
+                if (isExcluded(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
                 if (!Files.isHidden(dir)) {
-                    
-                    try{
-                        dir.register(watcher, kinds, SensitivityWatchEventModifier.HIGH);
-                    } catch (Exception ex) {
-                        if (maxErrorCount++ < maxErrorMsgs)
-                        System.out.println("Cannot register watch at file " + 
-                            dir + "\n. Exception:" + ex.getMessage());
-                        if (maxErrorCount == maxErrorMsgs) {
-                            System.out.println("Stopping errors log...");
-                        }
-                    }
+                    register(dir, watcher);
                 }
                 return FileVisitResult.CONTINUE;
             }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc)
+                throws IOException {
+                //removed meanwhile or not readable
+                return FileVisitResult.CONTINUE;
+            }
         });
     }
 
@@ -200,6 +329,19 @@ public class Watcher {
         final Callback changeCallback,
         final Callback eachFileCallback,
         final List<String> excludes) {
+        watch(Arrays.asList(path),
+            changeCallback, eachFileCallback, excludes);
+    }
+
+    /**
+     * Starts watching paths in new thread.
+     * 
+     * @see #watchNow(java.util.List, com.qubitproducts.compilejs.Callback, com.qubitproducts.compilejs.Callback, java.util.List) 
+     */
+    public void watch(final List<String> paths, 
+        final Callback changeCallback,
+        final Callback eachFileCallback,
+        final List<String> excludes) {
         
         if (this.thread != null) {
             System.out.println("Already watching.");
@@ -210,7 +352,7 @@ public class Watcher {
             public void run() {
                 try {
                     Watcher.this
-                        .watchNow(path, changeCallback, eachFileCallback, excludes);
+                        .watchNow(paths, changeCallback, eachFileCallback, excludes);
                 } catch (IOException ex) {
                     Logger.getLogger(Watcher.class.getName())
                             .log(Level.SEVERE, null, ex);
@@ -506,6 +506,15 @@ public class CFile implements FSFile {
         return lr;
     }
 
+    @Override
+    public LineReader getPooledLineReader(Map<String, List<String>> cache)
+        throws IOException {
+        if (cache != null && cache.containsKey(getAbsolutePath())) {
+            return new LineReader(getPlainFile(), cache);
+        }
+        return new PooledLineReader(getPlainFile());
+    }
+
     @Override
     public BufferedWriter getBufferedWriter() throws IOException {
         BufferedWriter writer = new BufferedWriter(
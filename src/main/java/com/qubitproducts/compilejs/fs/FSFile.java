@@ -144,6 +144,13 @@ public interface FSFile extends Cacheable {
   public void saveBytes(byte[] bytes) throws IOException;
   
   public LineReader getLineReader(Map<String, List<String>> cache) throws IOException;
+
+  /**
+   * Line reader for scanning. Lines are decoded lazily and not stored in
+   * the cache, cached lines are used if present.
+   */
+  public LineReader getPooledLineReader(Map<String, List<String>> cache)
+      throws IOException;
   
   public BufferedWriter getBufferedWriter() throws IOException;
 
@@ -46,9 +46,14 @@ public class LineReader {
     }
 
     private boolean cached = false;
+    private long lastModified;
+    private long length;
+
+    protected LineReader() {
+    }
 
     public LineReader(List<String> strings) {
-        setupForArray(lines);
+        setupForArray(strings);
     }
 
     public LineReader(File file, Map<String, List<String>> pcache)
@@ -62,6 +67,9 @@ public class LineReader {
         if (cachedLines != null) {
             setupForArray(cachedLines);
         } else {
+            //stamp before reading, change during reading is seen later
+            lastModified = file.lastModified();
+            length = file.length();
             fileReader = new BufferedReader(new FileReader(file));
             this.file = file;
             this.cache = pcache;
@@ -82,7 +90,10 @@ public class LineReader {
                     lines.add(line);
                 } else {
                     //end of stream
-                    if (this.cache != null) {
+                    if (cache instanceof LinesCache) {
+                        ((LinesCache) cache).put(file.getAbsolutePath(),
+                            lines, lastModified, length);
+                    } else {
                         cache.put(file.getAbsolutePath(), lines);
                     }
                 }
@@ -91,6 +102,17 @@ public class LineReader {
         }
     }
 
+    /**
+     * Reads next line as characters sequence. Sequence may be a view valid
+     * only until next read, call toString() to keep it.
+     *
+     * @return next line or null if end of stream reached
+     * @throws IOException
+     */
+    public CharSequence readLineSequence() throws IOException {
+        return readLine();
+    }
+
     public void close() throws IOException {
         if (fileReader != null) {
             fileReader.close();
@@ -0,0 +1,296 @@
+/*
+ *  Copyright @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ *
+ *  @author Peter (Piotr) Fronc
+ */
+package com.qubitproducts.compilejs.fs;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Line reader cache (file absolute path to its lines) with memory budget.
+ * Least recently used files are evicted when estimated size of cached lines
+ * exceeds the budget. Entries are stamped with file modification time and
+ * size taken before the file was read, entry of file that changed since is
+ * dropped when accessed. Checking stamps can be turned off when cache lives
+ * for single compilation, or for files under watched paths, changes of which
+ * are reported by removing entries (watch mode).
+ *
+ * Cache is thread safe. entrySet() returns a snapshot.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class LinesCache extends AbstractMap<String, List<String>> {
+
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    //String object, its array and list reference
+    private static final int LINE_OVERHEAD = 56;
+
+    private final long budget;
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private volatile boolean validating = true;
+    private String[] watched = new String[0];
+    private String[] excluded = new String[0];
+
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<String, Entry>(256, 0.75f, true);
+
+    static class Entry {
+        List<String> lines;
+        long bytes;
+        long lastModified;
+        long length;
+    }
+
+    /**
+     * @param budget maximum estimated size of cached lines in bytes
+     */
+    public LinesCache(long budget) {
+        this.budget = budget;
+    }
+
+    public LinesCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    @Override
+    public synchronized List<String> get(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null && isChecked((String) key)
+            && !isValid((String) key, entry)) {
+            drop((String) key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.lines;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null && isChecked((String) key)
+            && !isValid((String) key, entry)) {
+            drop((String) key);
+            entry = null;
+        }
+        return entry != null;
+    }
+
+    /**
+     * Puts lines stamped with current file state. Lines read before the
+     * file changed are stamped with new state, use
+     * {@link #put(String, List, long, long)} with state taken before reading.
+     */
+    @Override
+    public List<String> put(String key, List<String> lines) {
+        File file = new File(key);
+        return put(key, lines, file.lastModified(), file.length());
+    }
+
+    /**
+     * @param key file absolute path
+     * @param lines file lines
+     * @param lastModified file modification time taken before reading lines
+     * @param length file length taken before reading lines
+     * @return previous lines or null
+     */
+    public synchronized List<String> put(
+        String key, List<String> lines, long lastModified, long length) {
+        Entry old = drop(key);
+
+        long bytes = 0;
+        for (String line : lines) {
+            bytes += LINE_OVERHEAD + 2 * line.length();
+        }
+        if (bytes <= budget) {
+            Entry entry = new Entry();
+            entry.lines = lines;
+            entry.bytes = bytes;
+            entry.lastModified = lastModified;
+            entry.length = length;
+            entries.put(key, entry);
+            size += bytes;
+
+            Iterator<Map.Entry<String, Entry>> it =
+                entries.entrySet().iterator();
+            while (size > budget && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                size -= eldest.bytes;
+                evictions++;
+            }
+        }
+
+        return old == null ? null : old.lines;
+    }
+
+    @Override
+    public synchronized List<String> remove(Object key) {
+        Entry old = drop((String) key);
+        return old == null ? null : old.lines;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<String, List<String>>> entrySet() {
+        Set<Map.Entry<String, List<String>>> set =
+            new LinkedHashSet<Map.Entry<String, List<String>>>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            set.add(new SimpleImmutableEntry<String, List<String>>(
+                entry.getKey(), entry.getValue().lines));
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * @return true if entries are checked against files when accessed
+     */
+    public boolean isValidating() {
+        return validating;
+    }
+
+    /**
+     * @param validating false if entries of changed files are removed by
+     *  owner, entries are not checked against files then
+     */
+    public void setValidating(boolean validating) {
+        this.validating = validating;
+    }
+
+    /**
+     * Entries of files under watched paths, and not under excluded ones, are
+     * not checked against files. Watcher reports their changes by removing
+     * entries. Other files are still checked.
+     *
+     * @param watched absolute paths of watched files and directories
+     * @param excluded absolute paths excluded from watching
+     */
+    public synchronized void setWatched(
+        Collection<String> watched, Collection<String> excluded) {
+        this.watched = watched.toArray(new String[watched.size()]);
+        this.excluded = excluded.toArray(new String[excluded.size()]);
+    }
+
+    private boolean isChecked(String path) {
+        if (!validating) {
+            return false;
+        }
+        for (String root : watched) {
+            if (isUnder(path, root)) {
+                for (String exclude : excluded) {
+                    if (isUnder(path, exclude)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUnder(String path, String root) {
+        return path.startsWith(root)
+            && (path.length() == root.length()
+                || path.charAt(root.length()) == File.separatorChar
+                || root.endsWith(File.separator));
+    }
+
+    /**
+     * @return the estimated size of cached lines in bytes
+     */
+    public synchronized long getBytes() {
+        return size;
+    }
+
+    /**
+     * @return the budget in bytes
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the hits count since creation
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the misses count (including changed files) since creation
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the count of entries evicted to fit the budget since creation
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits: " + hits
+            + ", misses: " + misses
+            + ", evictions: " + evictions
+            + ", files: " + entries.size()
+            + ", size: " + (size / 1024) + "KB"
+            + " of " + (budget / 1024) + "KB";
+    }
+
+    private Entry drop(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            size -= old.bytes;
+        }
+        return old;
+    }
+
+    private static boolean isValid(String path, Entry entry) {
+        File file = new File(path);
+        return file.lastModified() == entry.lastModified
+            && file.length() == entry.length;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *  Copyright @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ *
+ *  @author Peter (Piotr) Fronc
+ */
+package com.qubitproducts.compilejs.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.CRC32;
+
+/**
+ * Line reader decoding file lazily, reading it chunk by chunk to a fixed
+ * size buffer. Byte and char buffers are pooled per thread, so reading a file
+ * allocates no buffers whatever its size. Lines are returned by
+ * readLineSequence() as views on decoding buffer, so no objects are created
+ * per line unless readLine() is used. Lines are split and decoded same way
+ * as BufferedReader over FileReader does (platform charset, malformed input
+ * replaced).
+ *
+ * Reader does not store lines in lines cache. Reading stops with the last
+ * line read, rest of the file is read only by checksum(). File is closed
+ * when its end is reached or by close().
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class PooledLineReader extends LineReader {
+
+    /**
+     * Size of bytes buffer file is read to.
+     */
+    public static final int BYTES_CHUNK = 64 * 1024;
+    private static final int CHARS_CHUNK = 8192;
+
+    private static final ThreadLocal<ByteBuffer> BYTES_POOL =
+        new ThreadLocal<ByteBuffer>();
+    private static final ThreadLocal<char[]> CHARS_POOL =
+        new ThreadLocal<char[]>();
+
+    private FileInputStream in;
+    private FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+    private char[] chars;
+    private CharBuffer out;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private boolean skipLF = false;
+    private final LineView view = new LineView();
+
+    public PooledLineReader(File file) throws IOException {
+        decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        in = new FileInputStream(file);
+        channel = in.getChannel();
+
+        bytes = BYTES_POOL.get();
+        if (bytes != null) {
+            BYTES_POOL.set(null);
+            bytes.clear();
+        } else {
+            bytes = ByteBuffer.allocate(BYTES_CHUNK);
+        }
+        bytes.flip();
+
+        chars = CHARS_POOL.get();
+        if (chars != null) {
+            CHARS_POOL.set(null);
+        } else {
+            chars = new char[CHARS_CHUNK];
+        }
+        out = CharBuffer.wrap(chars);
+    }
+
+    /**
+     * Reads rest of the file, no lines can be read after.
+     *
+     * @return CRC32 of file content, must be called before close()
+     * @throws IOException
+     */
+    public long checksum() throws IOException {
+        while (channel != null) {
+            bytes.clear();
+            read();
+        }
+        eof = true;
+        pos = limit;
+        return crc.getValue();
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        CharSequence line = readLineSequence();
+        return line == null ? null : line.toString();
+    }
+
+    /**
+     * Reads next line. Returned sequence is valid until next read.
+     *
+     * @return line view or null if end of file is reached
+     * @throws IOException
+     */
+    @Override
+    public CharSequence readLineSequence() throws IOException {
+        if (chars == null) {
+            return null;
+        }
+        int i = pos;
+        while (true) {
+            if (skipLF && pos < limit) {
+                if (chars[pos] == '\n') {
+                    pos++;
+                    i = pos;
+                }
+                skipLF = false;
+            }
+
+            for (; i < limit; i++) {
+                char ch = chars[i];
+                if (ch == '\n' || ch == '\r') {
+                    view.set(chars, pos, i - pos);
+                    pos = i + 1;
+                    skipLF = (ch == '\r');
+                    return view;
+                }
+            }
+
+            if (eof) {
+                if (pos < limit) {
+                    view.set(chars, pos, limit - pos);
+                    pos = limit;
+                    return view;
+                }
+                return null;
+            }
+
+            i -= pos;
+            fill();
+        }
+    }
+
+    /**
+     * Moves unread characters to buffer start and decodes more.
+     */
+    private void fill() throws IOException {
+        int left = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(chars, pos, chars, 0, left);
+        } else if (left >= chars.length - 1) {
+            //line longer than buffer (keep room for surrogates pair)
+            char[] bigger = new char[chars.length * 2];
+            System.arraycopy(chars, 0, bigger, 0, left);
+            chars = bigger;
+            out = CharBuffer.wrap(chars);
+        }
+        pos = 0;
+        limit = left;
+
+        out.limit(chars.length);
+        out.position(limit);
+        while (true) {
+            boolean endOfInput = channel == null;
+            CoderResult result = decoder.decode(bytes, out, endOfInput);
+            if (result.isOverflow()) {
+                break;
+            }
+            if (endOfInput) {
+                decoder.flush(out);
+                eof = true;
+                break;
+            }
+            if (out.position() > limit) {
+                break;
+            }
+            //bytes left are start of a character
+            bytes.compact();
+            read();
+        }
+        limit = out.position();
+    }
+
+    /**
+     * Reads more bytes after ones left in the buffer, closes the file when
+     * its end is reached. Buffer is flipped for reading after.
+     */
+    private void read() throws IOException {
+        int start = bytes.position();
+        int read = channel.read(bytes);
+        if (read > 0) {
+            crc.update(bytes.array(), bytes.arrayOffset() + start, read);
+        } else if (read == -1) {
+            closeFile();
+        }
+        bytes.flip();
+    }
+
+    private void closeFile() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (chars == null) {
+            return;
+        }
+        closeFile();
+        BYTES_POOL.set(bytes);
+        CHARS_POOL.set(chars);
+        bytes = null;
+        chars = null;
+        out = null;
+    }
+
+    /**
+     * Reusable line view over decoding buffer.
+     */
+    static class LineView implements CharSequence {
+
+        private char[] array;
+        private int offset;
+        private int length;
+
+        void set(char[] array, int offset, int length) {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return array[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(array, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(array, offset, length);
+        }
+    }
+}
@@ -20,23 +20,33 @@
 
 package com.qubitproducts.compilejs.processors;
 
+import com.qubitproducts.compilejs.Chunk;
+import com.qubitproducts.compilejs.ChunkProcessor;
+import com.qubitproducts.compilejs.ChunkSink;
+import com.qubitproducts.compilejs.InjectionCache;
+import com.qubitproducts.compilejs.InjectionCache.Injection;
+import com.qubitproducts.compilejs.LineFilter;
 import com.qubitproducts.compilejs.Log;
 import com.qubitproducts.compilejs.fs.LineReader;
 import com.qubitproducts.compilejs.MainProcessor;
 import com.qubitproducts.compilejs.Processor;
+import com.qubitproducts.compilejs.ProcessorChain;
+import com.qubitproducts.compilejs.fs.FSFile;
 import static com.qubitproducts.compilejs.Utils.translateClasspathToPath;
-import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
+import java.util.Collections;
 import java.util.List;
 
 
 /**
+ * Replaces "//:inject classpath" directive lines with the injected file
+ * content. Chunks are retyped to "js" and joined by lines, chunks with no
+ * directives are passed without splitting them to lines. Resolved
+ * injections are kept in MainProcessor.getInjectionCache().
  *
  * @author peter.fronc@qubit.com
  */
-public class InjectionProcessor implements Processor {
+public class InjectionProcessor implements Processor, ChunkProcessor {
     String prefix = "";
     String suffix = "";
     String INJECT_STR = "//:inject";
@@ -63,97 +73,265 @@ public class InjectionProcessor implements Processor {
     }
     
     public void process(List<Object[]> chunks, String extension) {
-        for (Object[] chunk : chunks) {
-            String key = (String) chunk[0];
-//            String skey = chunkToExtension(key);
-//            if (skey != null && skey.equals(JS_TEMPLATE_NAME)) {
-            try {
-                BufferedReader reader
-                    = new BufferedReader(
-                        new StringReader(((StringBuilder) chunk[1]).toString()));
-                String line = reader.readLine();
-                StringBuilder builder = new StringBuilder(this.prefix);
-                while (line != null) {
-                    boolean skip = false;
-                    if (line.contains(INJECT_STR)) {
-                        int injectStart = line.indexOf(INJECT_STR);
-                        String formula = line.substring(injectStart);
-                        String[] parts = formula.split(" ");
-                        if (parts.length > 1) {
-                            
-                            //pick the path
-                            int j = 1;
-                            
-                            String path = 
-                                translateClasspathToPath(parts[j]) 
-                                  + ".js";
-                            
-                            while(path == null || path.trim().equals("")) {
-                                path = parts[++j];
-                            }
-                            
-                            //check the path
-                            File f= new File(path);
-                            boolean exists = false;
-                            if (mprocessor != null) {
-                                String cwd = mprocessor.getCwd();
-                                String[] srcBase = mprocessor.getSourceBase();
-                                for (String str : srcBase) {
-                                    File tmp = new File(cwd, str);
-                                    tmp = new File(tmp, path);
-                                    if (tmp.exists()) {
-                                        f = tmp;
-                                        exists = true;
-                                        break;
-                                    }
-                                }
-                            }
-                            //process file if exists
-                            if (exists || f.exists()) {
-                                skip = true;
-                                if (!this.isReplacingLine()) {
-                                    String pre = line.substring(0, injectStart);
-                                    builder.append("\n");
-                                    builder.append(pre);
-                                }
-                                
-                                LineReader lr = 
-                                    new LineReader(f, mprocessor.getLineReaderCache());
-                                String l = null;
-                                while((l = lr.readLine()) != null) {
-                                    builder.append(l);
-                                    builder.append("\n");
-                                }
-                                
-                                if (!this.isReplacingLine()) {
-                                //bring suffixed stuff...
-                                    for (int i = j + 1; i < parts.length; i++) {
-                                        builder.append(" ");
-                                        builder.append(parts[i]);
-                                    }
-                                }
-                            }
-                        }
+        try {
+            ProcessorChain.process(this, chunks, extension);
+        } catch (IOException ex) {
+            log.log("IO Problem: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public ChunkSink open(String extension, final ChunkSink out) {
+        final LineFilter lines = new LineFilter(out) {
+            private boolean first;
+
+            @Override
+            protected boolean startLines(Chunk chunk) throws IOException {
+                out.startChunk(chunk.derive("js", ""));
+                out.append(prefix);
+                first = true;
+                return true;
+            }
+
+            @Override
+            protected void line(CharSequence text, int start, int end)
+                throws IOException {
+                if (first) {
+                    first = false;
+                } else {
+                    out.append("\n");
+                }
+                if (indexOf(text, start, end, INJECT_STR) == -1
+                    || !inject(text.subSequence(start, end).toString(), out)) {
+                    //same
+                    out.append(text, start, end);
+                }
+            }
+
+            @Override
+            protected void endLines() throws IOException {
+                out.append(suffix);
+                out.endChunk();
+            }
+        };
+
+        //chunk content appended at once is checked first, if there is
+        // nothing to inject it is passed as joined lines would be
+        return new ChunkSink() {
+            private Chunk chunk = null;
+            private CharSequence plain = null;
+            private boolean splitting = false;
+
+            @Override
+            public void startChunk(Chunk chunk) throws IOException {
+                this.chunk = chunk;
+                plain = null;
+                splitting = false;
+            }
+
+            @Override
+            public Appendable append(CharSequence text, int start, int end)
+                throws IOException {
+                if (!splitting) {
+                    if (plain == null && start == 0 && end == text.length()
+                        && text == chunk.getContent() && isPlain(text)) {
+                        plain = text;
+                        return this;
                     }
-                    
-                    if (!skip) {
-                        //same
-                        builder.append(line);
+                    splitting = true;
+                    lines.startChunk(chunk);
+                    if (plain != null) {
+                        lines.append(plain, 0, plain.length());
+                        plain = null;
                     }
-                    
-                    line = reader.readLine();
-                    if (line != null){
-                        builder.append("\n");
+                }
+                lines.append(text, start, end);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence text) throws IOException {
+                if (text == null) {
+                    text = "null";
+                }
+                return append(text, 0, text.length());
+            }
+
+            @Override
+            public Appendable append(char ch) throws IOException {
+                return append(String.valueOf(ch), 0, 1);
+            }
+
+            @Override
+            public void endChunk() throws IOException {
+                if (plain != null) {
+                    pass(chunk, plain, out);
+                } else {
+                    if (!splitting) {
+                        lines.startChunk(chunk);
                     }
+                    lines.endChunk();
+                }
+                chunk = null;
+                plain = null;
+                splitting = false;
+            }
+
+            @Override
+            public void close() throws IOException {
+                lines.close();
+            }
+        };
+    }
+
+    /**
+     * @return true if joining content lines would only drop its last line
+     *  ending: there are no directives nor "\r" line endings in it and no
+     *  prefix or suffix is added
+     */
+    private boolean isPlain(CharSequence content) {
+        if (!prefix.isEmpty() || !suffix.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\r') {
+                return false;
+            }
+        }
+        return indexOf(content, 0, content.length(), INJECT_STR) == -1;
+    }
+
+    /**
+     * Writes chunk as its lines joined with "\n", see isPlain().
+     */
+    private static void pass(Chunk chunk, CharSequence content, ChunkSink out)
+        throws IOException {
+        int length = content.length();
+        if (length > 0 && content.charAt(length - 1) == '\n') {
+            content = content.subSequence(0, length - 1);
+        }
+        out.startChunk(chunk.derive("js", content));
+        out.append(content, 0, content.length());
+        out.endChunk();
+    }
+
+    /**
+     * Writes injected file in place of the line.
+     * @param line line containing injection directive
+     * @param out
+     * @return true if line was replaced
+     * @throws IOException 
+     */
+    private boolean inject(String line, Appendable out) throws IOException {
+        int injectStart = line.indexOf(INJECT_STR);
+        //classpath is the word after directive word
+        int start = line.indexOf(' ', injectStart);
+        if (start == -1) {
+            return false;
+        }
+        start++;
+        int end = line.indexOf(' ', start);
+        if (end == -1) {
+            end = line.length();
+        }
+        String classpath = line.substring(start, end);
+
+        Injection injection = getInjection(classpath);
+        if (injection == null) {
+            return false;
+        }
+        List<FSFile> sources = injection.getSources();
+        long[] stamps = injection.getStamps();
+        for (int i = 0; i < sources.size(); i++) {
+            mprocessor.addFileSource(
+                sources.get(i), stamps[i * 2], stamps[i * 2 + 1]);
+        }
+
+        if (!this.isReplacingLine()) {
+            out.append("\n");
+            out.append(line, 0, injectStart);
+        }
+        out.append(injection.getContent());
+        if (!this.isReplacingLine()) {
+            //bring suffixed stuff...
+            int suffixEnd = line.length();
+            while (suffixEnd > end && line.charAt(suffixEnd - 1) == ' ') {
+                suffixEnd--;
+            }
+            out.append(line, end, suffixEnd);
+        }
+        return true;
+    }
+
+    /**
+     * Finds injected file and reads it.
+     * @param classpath injection classpath, ".js" is appended to its path
+     * @return injection, null if file does not exist
+     * @throws IOException 
+     */
+    private Injection getInjection(String classpath) throws IOException {
+        if (mprocessor == null) {
+            return null;
+        }
+        InjectionCache cache = mprocessor.getInjectionCache();
+        Injection injection = cache.get(classpath, mprocessor);
+        if (injection != null) {
+            return injection;
+        }
+
+        String path = translateClasspathToPath(classpath) + ".js";
+        FSFile file = mprocessor.findSourceFile(path);
+        if (file == null) {
+            return null;
+        }
+
+        long[] stamps = new long[]{file.lastModified(), file.length()};
+        StringBuilder content = new StringBuilder();
+        boolean read = false;
+        LineReader lr = null;
+        try {
+            lr = file.getLineReader(mprocessor.getLineReaderCache());
+            String l;
+            while ((l = lr.readLine()) != null) {
+                content.append(l);
+                content.append("\n");
+            }
+            read = true;
+        } catch (IOException ex) {
+            //lines read so far are injected, as before
+            log.log("IO Problem: " + ex.getMessage());
+        } finally {
+            if (lr != null) {
+                lr.close();
+            }
+        }
+
+        injection = new Injection(content.toString(),
+            Collections.singletonList(path), Collections.singletonList(file),
+            stamps);
+        if (read) {
+            cache.put(classpath, injection);
+        }
+        return injection;
+    }
+
+    private static int indexOf(
+            CharSequence text, int start, int end, String str) {
+        int last = end - str.length();
+        char first = str.charAt(0);
+        for (int i = start; i <= last; i++) {
+            if (text.charAt(i) == first) {
+                int k = 1;
+                while (k < str.length()
+                    && text.charAt(i + k) == str.charAt(k)) {
+                    k++;
+                }
+                if (k == str.length()) {
+                    return i;
                 }
-                builder.append(this.suffix);
-                chunk[0] = "js";
-                chunk[1] = builder;
-            } catch (IOException ex) {
-                log.log("IO Problem: " + ex.getMessage());
             }
-//            }
         }
+        return -1;
     }
 
     /**
@@ -170,4 +348,3 @@ public class InjectionProcessor implements Processor {
         this.replacingLine = replaceLine;
     }
 }
-
@@ -20,19 +20,22 @@
 
 package com.qubitproducts.compilejs.processors;
 
+import com.qubitproducts.compilejs.Chunk;
+import com.qubitproducts.compilejs.ChunkProcessor;
+import com.qubitproducts.compilejs.ChunkSink;
+import com.qubitproducts.compilejs.JSEscaper;
+import com.qubitproducts.compilejs.LineFilter;
 import com.qubitproducts.compilejs.Log;
 import com.qubitproducts.compilejs.Processor;
-import static com.qubitproducts.compilejs.MainProcessorHelper.chunkToExtension;
-import java.io.BufferedReader;
+import com.qubitproducts.compilejs.ProcessorChain;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.List;
 
 /**
  *
  * @author peter.fronc@qubit.com
  */
-public class JSStringProcessor implements Processor {
+public class JSStringProcessor implements Processor, ChunkProcessor {
 
     public static String JS_TEMPLATE_NAME = "js.string";
     
@@ -42,7 +45,6 @@ public class JSStringProcessor implements Processor {
     String suffix;
     String separator;
     
-    private final static int JS_UNICODE_LENGTH = 4;
     private Log log;
         
     public JSStringProcessor(
@@ -59,64 +61,71 @@ public class JSStringProcessor implements Processor {
     
     @Override
     public void process(List<Object[]> chunks, String extension) {
+        try {
+            ProcessorChain.process(this, chunks, extension);
+        } catch (IOException ex) {
+            if (log != null) {
+                log.log("IO Problem: " + ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public ChunkSink open(String extension, ChunkSink out) {
         if (extension == null || !extension.equals("js")) {
-            return;
+            return out;
         }
-        for (Object[] chunk : chunks) {
-            String key = (String) chunk[0];
-            String skey = chunkToExtension(key);
-            if (skey != null && skey.equals(this.jsTemplateName)) {
-                try {
-                    BufferedReader reader =
-                        new BufferedReader(
-                            new StringReader(((StringBuilder)chunk[1]).toString()));
-                    String line = reader.readLine();
-                    StringBuilder builder = new StringBuilder(this.prefix);
-                    while(line != null) {
-                        line = prepareLine(line);
-                        builder.append(line);
-                        line = reader.readLine();
-                        if (line != null){
-                            builder.append(this.separator);
-                        }
-                    }
-                    builder.append(this.suffix);
-                    chunk[0] = "js";
-                    chunk[1] = builder;
-                } catch (IOException ex) {
-                    log.log("IO Problem: " + ex.getMessage());
+        return new LineFilter(out) {
+            private boolean first;
+
+            @Override
+            protected boolean startLines(Chunk chunk) throws IOException {
+                if (!jsTemplateName.equals(chunk.getExtension())) {
+                    return false;
                 }
+                out.startChunk(chunk.derive("js", ""));
+                out.append(prefix);
+                first = true;
+                return true;
             }
-        }
-    }
 
-    public static String prepareLine(String line) {
-        line = line.replace("\\", "\\\\");
-        line = line.replace("\"", "\\\"");
-        
-        StringBuilder buf = new StringBuilder();
-        
-        for (int i = 0; i < line.length(); i++) {
-            char ch = line.charAt(i);
-            if (    (ch < 32 && ch != '\t') || // from space below apart from tab
-                    (ch > 512 && !Character.isLetterOrDigit(ch))) { //non printables
-                
-                String str = Integer.toHexString((int)ch);
-                int strlen = str.length();
-                
-                if (strlen <= JS_UNICODE_LENGTH) {
-                    while (str.length() < JS_UNICODE_LENGTH) {
-                        str = "0" + str;
-                    }
-                    buf.append("\\u");
-                    buf.append(str);
+            @Override
+            protected void line(CharSequence text, int start, int end)
+                throws IOException {
+                if (first) {
+                    first = false;
+                } else {
+                    out.append(separator);
                 }
-            } else {
-                buf.append(ch);
+                prepareLine(text, start, end, out);
             }
-        }
-        
-        return buf.toString();
+
+            @Override
+            protected void endLines() throws IOException {
+                out.append(suffix);
+                out.endChunk();
+            }
+        };
+    }
+
+    public static String prepareLine(String line) {
+        return JSEscaper.STRING.escape(line);
+    }
+
+    /**
+     * Escapes line to javascript string contents.
+     * @param line
+     * @param start
+     * @param end
+     * @param out where escaped line is appended
+     * @throws IOException 
+     */
+    public static void prepareLine(
+            CharSequence line,
+            int start,
+            int end,
+            Appendable out) throws IOException {
+        JSEscaper.STRING.escape(line, start, end, out);
     }
 
 }
@@ -20,16 +20,23 @@
 
 package com.qubitproducts.compilejs.processors;
 
+import com.qubitproducts.compilejs.Chunk;
+import com.qubitproducts.compilejs.ChunkProcessor;
+import com.qubitproducts.compilejs.ChunkSink;
+import com.qubitproducts.compilejs.LineFilter;
 import com.qubitproducts.compilejs.Processor;
+import java.io.IOException;
 import java.util.List;
 
 /**
  *
  * @author peter.fronc@qubit.com
  */
-public class JSWrapperProcessor implements Processor {
+public class JSWrapperProcessor implements Processor, ChunkProcessor {
+
+    private static final String PREFIX = "(function () {\n";
+    private static final String SUFFIX = "\n}());\n";
 
-    
     public JSWrapperProcessor() {
     }
     
@@ -37,7 +44,40 @@ public class JSWrapperProcessor implements Processor {
         if (extension == null || !extension.equals("js")) {
             return;
         }
-        chunks.add(0, new Object[]{"js", new StringBuilder("(function () {\n")});
-        chunks.add(new Object[]{"js", new StringBuilder("\n}());\n")});
+        chunks.add(0, new Object[]{"js", new StringBuilder(PREFIX)});
+        chunks.add(new Object[]{"js", new StringBuilder(SUFFIX)});
+    }
+
+    @Override
+    public ChunkSink open(String extension, ChunkSink out)
+        throws IOException {
+        if (extension == null || !extension.equals("js")) {
+            return out;
+        }
+        out.startChunk(new Chunk("js", PREFIX));
+        out.append(PREFIX);
+        out.endChunk();
+        return new LineFilter(out) {
+            @Override
+            protected boolean startLines(Chunk chunk) {
+                return false;
+            }
+
+            @Override
+            protected void line(CharSequence text, int start, int end) {
+            }
+
+            @Override
+            protected void endLines() {
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.startChunk(new Chunk("js", SUFFIX));
+                out.append(SUFFIX);
+                out.endChunk();
+                super.close();
+            }
+        };
     }
 }
@@ -0,0 +1,95 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.CFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class CanonicalPathsTest {
+
+    private File root;
+
+    public CanonicalPathsTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs-paths").toFile()
+            .getCanonicalFile();
+        new File(root, "src/a").mkdirs();
+        new File(root, "src/ab").mkdirs();
+        new File(root, "lib").mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of getCanonicalPath method, of class CanonicalPaths.
+     */
+    @Test
+    public void testGetCanonicalPath() throws IOException {
+        System.out.println("getCanonicalPath");
+        CanonicalPaths paths = new CanonicalPaths();
+        String path = root.getPath() + File.separator + "src";
+        String canonical = paths.getCanonicalPath(
+            new CFile(root.getPath(), "src/a/../X.js"));
+        assertEquals(path + File.separator + "X.js", canonical);
+        assertSame(canonical, paths.getCanonicalPath(
+            new CFile(root.getPath(), "lib/../src/X.js")));
+        assertSame(canonical, paths.getCanonicalPath(new CFile(canonical)));
+
+        paths.invalidate(Collections.singleton(path));
+        assertNotSame(canonical, paths.getCanonicalPath(new CFile(canonical)));
+    }
+
+    /**
+     * Test of find method, of class CanonicalPaths.BasePrefixes.
+     */
+    @Test
+    public void testFind() throws IOException {
+        System.out.println("find");
+        CanonicalPaths.BasePrefixes prefixes = new CanonicalPaths()
+            .getBasePrefixes(root.getPath(),
+                new String[]{"src/ab", "lib/../src", "src/a", "lib"});
+        String src = root.getPath() + File.separator + "src" + File.separator;
+
+        assertEquals(1, prefixes.find(src + "a" + File.separator + "X.js"));
+        assertEquals(0, prefixes.find(src + "ab" + File.separator + "X.js"));
+        assertEquals(1, prefixes.find(src + "abc" + File.separator + "X.js"));
+        assertEquals(-1, prefixes.find(root.getPath() + File.separator + "X"));
+        assertEquals(-1, prefixes.find(src.substring(0, src.length() - 1)));
+        assertEquals(src, prefixes.getPrefix(1));
+        assertEquals("lib/../src", prefixes.getBase(1));
+        assertTrue(prefixes.isFor(root.getPath(),
+            new String[]{"src/ab", "lib/../src", "src/a", "lib"}));
+        assertFalse(prefixes.isFor(root.getPath(), new String[]{"src"}));
+    }
+}
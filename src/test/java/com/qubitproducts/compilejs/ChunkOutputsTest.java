@@ -0,0 +1,155 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class ChunkOutputsTest {
+
+    public ChunkOutputsTest() {
+    }
+
+    /**
+     * Test of writeAsJSLines method, of class ChunkOutputs.
+     */
+    @Test
+    public void testWriteAsJSLines() throws IOException {
+        System.out.println("writeAsJSLines");
+        String[] texts = new String[]{
+            "",
+            "\n",
+            "\n\n",
+            "a",
+            "a\n",
+            "\na\n\n",
+            "a\n\nb\\c \"d\"\n\n\n",
+            "<div class=\"x\">\r\n</div>"
+        };
+        for (String text : texts) {
+            assertEquals(expected(text, false), jsLines(text, false));
+            assertEquals(expected(text, true), jsLines(text, true));
+        }
+    }
+
+    /**
+     * Test of append and write methods, of class ChunkOutputs.
+     */
+    @Test
+    public void testAppendAndWrite() throws IOException {
+        System.out.println("appendAndWrite");
+        ChunkOutputs outputs = new ChunkOutputs();
+        try {
+            List<Chunk> chunks = new ArrayList<Chunk>();
+            chunks.add(new Chunk("", "var a;"));
+            chunks.add(new Chunk("/*~css*/", "p {}"));
+            chunks.add(new Chunk("", "var b;"));
+            outputs.append(chunks);
+
+            List<Object> js = outputs.get("");
+            List<Object> css = outputs.get("css");
+            assertNotNull(js);
+            assertNotNull(css);
+
+            List<Object> content = new ArrayList<Object>();
+            content.add("[");
+            content.addAll(js);
+            content.addAll(outputs.toJSLines(css, false));
+            content.add("]");
+
+            StringWriter out = new StringWriter();
+            outputs.write(content, out);
+            assertEquals("[var a;\nvar b;\n\t\"p {}\\n\"\n]", out.toString());
+            assertFalse(outputs.isEmpty(content));
+        } finally {
+            outputs.close();
+        }
+        assertTrue(outputs.isEmpty());
+    }
+
+    /**
+     * Test of append(ChunkOutputs) method, of class ChunkOutputs.
+     */
+    @Test
+    public void testAppendOutputs() throws IOException {
+        System.out.println("appendOutputs");
+        ChunkOutputs outputs = new ChunkOutputs();
+        ChunkOutputs other = new ChunkOutputs();
+        try {
+            List<Chunk> chunks = new ArrayList<Chunk>();
+            chunks.add(new Chunk("", "var a;"));
+            chunks.add(new Chunk("/*~css*/", "p {}"));
+            outputs.append(chunks);
+
+            chunks = new ArrayList<Chunk>();
+            chunks.add(new Chunk("/*~css*/", "a {}"));
+            chunks.add(new Chunk("/*~htm*/", "<b>"));
+            chunks.add(new Chunk("", "var b;"));
+            other.append(chunks);
+
+            outputs.append(other);
+            assertTrue(other.isEmpty());
+
+            //appended after merged ones
+            chunks = new ArrayList<Chunk>();
+            chunks.add(new Chunk("", "var c;"));
+            outputs.append(chunks);
+
+            StringWriter out = new StringWriter();
+            outputs.write(outputs.get(""), out);
+            assertEquals("var a;\nvar b;\nvar c;\n", out.toString());
+
+            out = new StringWriter();
+            outputs.write(outputs.get("htm"), out);
+            assertEquals("<b>\n", out.toString());
+
+            //lines conversion goes through all merged spools
+            out = new StringWriter();
+            outputs.write(outputs.toJSLines(outputs.get("css"), false), out);
+            assertEquals(jsLines("p {}\na {}\n", false), out.toString());
+        } finally {
+            outputs.close();
+            other.close();
+        }
+        assertTrue(outputs.isEmpty());
+    }
+
+    private String jsLines(String text, boolean singleLine)
+        throws IOException {
+        StringWriter out = new StringWriter();
+        ChunkOutputs.writeAsJSLines(new StringReader(text), out, singleLine);
+        return out.toString();
+    }
+
+    private String expected(String text, boolean singleLine) {
+        if (singleLine) {
+            text = text.replace("\n", "");
+        }
+        String js = CompileJS.turnHTMLToJS(text)[0].toString();
+        return js.substring(CompileJS.htpl1.length(),
+            js.length() - CompileJS.htpl2.length());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.CFile;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class CompilationCacheTest {
+
+    private CFile source;
+
+    public CompilationCacheTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        source = CFile.createTempFile("compilejs", ".js");
+        source.saveString("var x;\n");
+    }
+
+    @After
+    public void tearDown() {
+        source.delete();
+    }
+
+    /**
+     * Test of putChunks method, of class CompilationCache, with sources
+     * stamped before reading.
+     */
+    @Test
+    public void testPutChunksStamped() throws IOException {
+        System.out.println("putChunksStamped");
+        CompilationCache cache = new CompilationCache();
+        List<Chunk> chunks = new ArrayList<Chunk>();
+
+        CompilationCache.Sources sources = new CompilationCache.Sources();
+        sources.add(source);
+        cache.putChunks(source, "js", sources, chunks);
+        assertSame(chunks, cache.getChunks(source, "js"));
+
+        //changed while being read
+        sources = new CompilationCache.Sources();
+        sources.add(source);
+        long lastModified = source.lastModified();
+        source.saveString("var changed;\n");
+        source.setLastModified(lastModified + 10000);
+        cache.putChunks(source, "js", sources, chunks);
+        assertNull(cache.getChunks(source, "js"));
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.LinesCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class CompileJSTest {
+
+    private File root;
+
+    public CompileJSTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of compile method, of class CompileJS, with generated project
+     * checked against its manifest.
+     */
+    @Test
+    public void testCompileGeneratedProject() throws Exception {
+        System.out.println("compileGeneratedProject");
+        ProjectGenerator generator = new ProjectGenerator(3);
+        generator.setFiles(300);
+        generator.setBases(3);
+        generator.setDepth(3);
+        generator.setDensity(20);
+        generator.setWildcards(20);
+        generator.setCss(30);
+        generator.setInjects(20);
+        generator.setCycles(10);
+        generator.setExcluded(5);
+        generator.generate(root);
+
+        //manifest: path to outputs and dependencies
+        Map<String, String[]> files = new LinkedHashMap<String, String[]>();
+        List<String> args = new ArrayList<String>();
+        for (String line : read(ProjectGenerator.MANIFEST).split("\n")) {
+            String[] parts = line.split(" ");
+            if (parts[0].equals("args")) {
+                args.addAll(Arrays.asList(parts).subList(1, parts.length));
+            } else if (parts[0].equals("file")) {
+                files.put(parts[1], new String[]{parts[2], parts[3]});
+            }
+        }
+        args.add("--cwd");
+        args.add(root.getAbsolutePath());
+
+        new CompileJS().compile(args.toArray(new String[0]));
+
+        String js = read("out/all.js");
+        //injections put all chunks into js output
+        String css = js;
+        String htm = js;
+        assertFalse(js.contains("debug("));
+        assertFalse(js.contains("/*D*/"));
+        assertFalse(js.contains("//:inject"));
+
+        Map<String, Set<String>> graph = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, String[]> entry : files.entrySet()) {
+            Set<String> dependencies = new HashSet<String>();
+            if (!entry.getValue()[1].equals("-")) {
+                dependencies.addAll(
+                    Arrays.asList(entry.getValue()[1].split(",")));
+            }
+            graph.put(entry.getKey(), dependencies);
+        }
+
+        for (Map.Entry<String, String[]> entry : files.entrySet()) {
+            String path = entry.getKey();
+            String outputs = entry.getValue()[0];
+            String index = path.replaceAll(".*(File|Data)(\\d+)\\..*", "$2");
+
+            if (path.endsWith(".css")) {
+                assertTrue(path, css.contains(".file" + index + " {"));
+                continue;
+            }
+
+            String marker = "var file" + index + " = ";
+            if (outputs.equals("excluded")) {
+                assertFalse(path, js.contains(marker));
+                continue;
+            }
+            assertTrue(path, js.contains(marker));
+            assertEquals(path, outputs.contains("css"),
+                css.contains(".c" + index + "_"));
+            assertEquals(path, outputs.contains("htm"),
+                htm.contains("\"c" + index + "_"));
+
+            for (String dependency : graph.get(path)) {
+                String dependencyIndex =
+                    dependency.replaceAll(".*(File|Data)(\\d+)\\..*", "$2");
+                if (dependency.contains("/" + ProjectGenerator.DATA + "/")) {
+                    //injected
+                    assertTrue(path, js.contains(
+                        "{\"data\": " + dependencyIndex + "}"));
+                    continue;
+                }
+                String dependencyMarker = "var file" + dependencyIndex + " = ";
+                if (!js.contains(dependencyMarker)
+                    || reaches(graph, dependency, path)) {
+                    continue;
+                }
+                //dependency precedes file, unless they are in a cycle
+                assertTrue(path + " after " + dependency,
+                    js.indexOf(dependencyMarker) < js.indexOf(marker));
+            }
+        }
+    }
+
+    /**
+     * Test of compile method, of class CompileJS, outputs do not depend on
+     * threads number.
+     */
+    @Test
+    public void testCompileThreads() throws Exception {
+        System.out.println("compileThreads");
+        ProjectGenerator generator = new ProjectGenerator(5);
+        generator.setFiles(200);
+        generator.setBases(2);
+        generator.setDensity(20);
+        generator.setCss(30);
+        generator.setInjects(20);
+        generator.generate(root);
+
+        List<String> args = new ArrayList<String>();
+        for (String line : read(ProjectGenerator.MANIFEST).split("\n")) {
+            String[] parts = line.split(" ");
+            if (parts[0].equals("args")) {
+                args.addAll(Arrays.asList(parts).subList(1, parts.length));
+            }
+        }
+        args.add("--cwd");
+        args.add(root.getAbsolutePath());
+
+        new CompileJS().compile(args.toArray(new String[0]));
+        String[] outputs = new File(root, "out").list();
+        assertTrue(outputs.length > 0);
+        String[] expected = new String[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = "out/" + outputs[i];
+            expected[i] = read(outputs[i]);
+            assertTrue(new File(root, outputs[i]).delete());
+        }
+
+        args.add("--threads");
+        args.add("4");
+        new CompileJS().compile(args.toArray(new String[0]));
+        for (int i = 0; i < outputs.length; i++) {
+            assertEquals(outputs[i], expected[i], read(outputs[i]));
+        }
+    }
+
+    /**
+     * Test of compile method, of class CompileJS, with compilation cache
+     * kept between compilations: after each change output is same as of
+     * fresh compilation and unchanged output is not written again.
+     */
+    @Test
+    public void testCompileIncremental() throws Exception {
+        System.out.println("compileIncremental");
+        write("src/a/app/Main.js", "//:import app.Lib\n//:import app.View\n"
+            + "//:css app.Style\n"
+            + "var data = //:inject app.Data ;\nvar main = 1;\n");
+        write("src/a/app/Lib.js", "var lib = 1;\n");
+        write("src/a/app/View.js", "var view = 1;\n"
+            + "/*htm*\n<p>view</p>\n*~htm*/\n"
+            + "/*css*\n.view { color: red; }\n*~css*/\n");
+        write("src/a/app/Style.css", ".style { color: red; }\n");
+        write("src/a/app/Data.js", "{\"data\": 1}\n");
+
+        CompileJS compiler = new CompileJS();
+        compiler.setLineReaderCache(new LinesCache());
+        compiler.setCompilationCache(new CompilationCache());
+        compileIncremental(compiler);
+
+        //edited source
+        write("src/a/app/Lib.js", "var lib = 2;\n");
+        compileIncremental(compiler, "src/a/app/Lib.js");
+
+        //edited injected file
+        write("src/a/app/Data.js", "{\"data\": 22}\n");
+        String js = null;
+        for (String output : compileIncremental(compiler,
+                                                "src/a/app/Data.js")) {
+            if (output.endsWith(".js")) {
+                js = new String(
+                    Files.readAllBytes(new File(output).toPath()), UTF_8);
+            }
+        }
+        assertTrue(js, js.contains("22") && js.contains("var lib = 2;"));
+
+        //edited wrapped htm and css chunks
+        write("src/a/app/View.js", "var view = 1;\n"
+            + "/*htm*\n<p>view 2</p>\n*~htm*/\n"
+            + "/*css*\n.view { color: blue; }\n*~css*/\n");
+        compileIncremental(compiler, "src/a/app/View.js");
+
+        //created files shadowing ones in next source base
+        write("src/b/app/Lib.js", "var lib = 3;\n");
+        write("src/b/app/Data.js", "{\"data\": 3}\n");
+        compileIncremental(compiler,
+            "src/b", "src/b/app", "src/b/app/Lib.js", "src/b/app/Data.js");
+
+        //deleted shadowing files
+        delete("src/b/app/Lib.js");
+        delete("src/b/app/Data.js");
+        compileIncremental(compiler,
+            "src/b/app/Lib.js", "src/b/app/Data.js");
+
+        //created file imported by edited one
+        write("src/a/app/New.js", "var created = 1;\n");
+        write("src/a/app/Main.js", "//:import app.Lib\n//:import app.View\n"
+            + "//:import app.New\n//:css app.Style\n"
+            + "var data = //:inject app.Data ;\nvar main = 1;\n");
+        compileIncremental(compiler, "src/a/app/New.js", "src/a/app/Main.js");
+
+        //deleted imported and wrapped file
+        delete("src/a/app/View.js");
+        compileIncremental(compiler, "src/a/app/View.js");
+
+        //nothing changed, outputs are not written
+        Map<String, Object> keys = new HashMap<String, Object>();
+        for (String output : compileIncremental(compiler)) {
+            keys.put(output, fileKey(output));
+        }
+        for (String output : compileIncremental(compiler)) {
+            assertEquals(output, keys.get(output), fileKey(output));
+        }
+    }
+
+    /**
+     * Test of compile method, of class CompileJS, with caches kept as in
+     * watch mode: change of a source outside watched paths, which watcher
+     * does not report, is picked up.
+     */
+    @Test
+    public void testCompileUnwatchedChange() throws Exception {
+        System.out.println("compileUnwatchedChange");
+        write("src/a/app/Main.js", "//:import app.Lib\nvar main = 1;\n");
+        write("src/b/app/Lib.js", "var lib = 1;\n");
+
+        LinesCache cache = new LinesCache();
+        cache.setWatched(
+            Arrays.asList(new File(root, "src/a").getAbsolutePath()),
+            new ArrayList<String>());
+        CompileJS compiler = new CompileJS();
+        compiler.setLineReaderCache(cache);
+        compiler.setCompilationCache(new CompilationCache());
+        compileIncremental(compiler);
+
+        //edited unwatched source, then watched one
+        write("src/b/app/Lib.js", "var lib = 22;\n");
+        write("src/a/app/Main.js", "//:import app.Lib\nvar main = 2;\n");
+        for (String output : compileIncremental(compiler,
+                                                "src/a/app/Main.js")) {
+            String content = new String(
+                Files.readAllBytes(new File(output).toPath()), UTF_8);
+            assertTrue(content, content.contains("var lib = 22;"));
+        }
+    }
+
+    private List<String> compileIncremental(
+        CompileJS compiler, String... changed) throws Exception {
+        Set<String> paths = new HashSet<String>();
+        for (String path : changed) {
+            paths.add(CompilationCache.normalize(
+                new File(root, path).getAbsolutePath()));
+        }
+        compiler.invalidate(paths);
+        List<String> outputs = compiler.compile(incrementalArgs("out/all"));
+        List<String> fresh = new CompileJS().compile(
+            incrementalArgs("fresh/all"));
+        assertFalse(fresh.isEmpty());
+        assertEquals(fresh.size(), outputs.size());
+        for (int i = 0; i < outputs.size(); i++) {
+            String output = outputs.get(i);
+            String freshOutput = fresh.get(i);
+            assertEquals(output,
+                new String(Files.readAllBytes(new File(freshOutput).toPath()),
+                    UTF_8),
+                new String(Files.readAllBytes(new File(output).toPath()),
+                    UTF_8));
+        }
+        return outputs;
+    }
+
+    private String[] incrementalArgs(String output) {
+        return new String[]{
+            "-s", "src/a/app/Main.js",
+            "--source-base", "src/b,src/a",
+            "-i", ".js,.css",
+            "--options", "injections",
+            "--create-output-dirs",
+            "-o", output,
+            "--cwd", root.getAbsolutePath()
+        };
+    }
+
+    private static Object fileKey(String path) throws IOException {
+        //same key means the file was not replaced
+        return Files.readAttributes(new File(path).toPath(),
+            BasicFileAttributes.class).fileKey();
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+    }
+
+    private void delete(String path) {
+        assertTrue(path, new File(root, path).delete());
+    }
+
+    private boolean reaches(Map<String, Set<String>> graph,
+        String from, String to) {
+        Set<String> visited = new HashSet<String>();
+        List<String> queue = new ArrayList<String>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            String current = queue.remove(queue.size() - 1);
+            if (current.equals(to)) {
+                return true;
+            }
+            if (visited.add(current) && graph.containsKey(current)) {
+                queue.addAll(graph.get(current));
+            }
+        }
+        return false;
+    }
+
+    private String read(String path) throws IOException {
+        return new String(
+            Files.readAllBytes(new File(root, path).toPath()), UTF_8);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.LinesCache;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class DaemonTest {
+
+    private File root;
+    private String home;
+
+    public DaemonTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs").toFile();
+        home = System.getProperty("user.home");
+        System.setProperty("user.home", root.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", home);
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of request method, of class Daemon.
+     */
+    @Test
+    public void testRequest() throws Exception {
+        System.out.println("request");
+        ProjectGenerator generator = new ProjectGenerator(1);
+        generator.setFiles(20);
+        generator.generate(root);
+        String[] args = generator.getArgs("out/all").toArray(new String[0]);
+
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+
+        PrintStream console = new PrintStream(new ByteArrayOutputStream());
+        assertEquals(-1, Daemon.request(port, root.getAbsolutePath(), args,
+            console));
+
+        final Daemon daemon = new Daemon(port, new LinesCache());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    daemon.run();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        });
+        thread.start();
+        File token = Daemon.getTokenFile(port);
+        for (int i = 0; i < 100 && !isListening(port); i++) {
+            Thread.sleep(50);
+        }
+
+        try {
+            assertEquals(
+                PosixFilePermissions.fromString("rw-------"),
+                Files.getPosixFilePermissions(token.toPath()));
+            byte[] valid = Files.readAllBytes(token.toPath());
+            Files.write(token.toPath(), "0123".getBytes(UTF_8));
+            assertEquals(1, Daemon.request(port, root.getAbsolutePath(), args,
+                console));
+            Files.write(token.toPath(), valid);
+
+            File output = new File(root, "out/all.js");
+            assertEquals(0, Daemon.request(port, root.getAbsolutePath(), args,
+                console));
+            assertTrue(output.length() > 0);
+
+            //output changed by others is written again
+            output.delete();
+            assertEquals(0, Daemon.request(port, root.getAbsolutePath(), args,
+                console));
+            assertTrue(output.length() > 0);
+
+            ByteArrayOutputStream messages = new ByteArrayOutputStream();
+            assertEquals(1, Daemon.request(port, root.getAbsolutePath(),
+                new String[]{"-s", "missing", "-o", "out/all"},
+                new PrintStream(messages)));
+            assertTrue(messages.toString().contains("missing"));
+        } finally {
+            Daemon.request(port, root.getAbsolutePath(),
+                new String[]{Daemon.STOP}, console);
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+        assertFalse(token.exists());
+    }
+
+    private static boolean isListening(int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(
+                new InetSocketAddress(InetAddress.getByName(null), port));
+            return true;
+        } catch (ConnectException ex) {
+            return false;
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.MainProcessor.Types;
+import com.qubitproducts.compilejs.fs.CFile;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class DependencyGraphCacheTest {
+
+    private CFile source;
+    private CFile location;
+
+    public DependencyGraphCacheTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        source = CFile.createTempFile("compilejs", ".js");
+        source.saveString("//:import a.b.C\nvar x;\n");
+        location = CFile.createTempFile("compilejs", ".deps");
+        location.delete();
+    }
+
+    @After
+    public void tearDown() {
+        source.delete();
+        location.delete();
+    }
+
+    /**
+     * Test of save and load methods, of class DependencyGraphCache.
+     */
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        System.out.println("saveAndLoad");
+        DependencyGraphCache cache = new DependencyGraphCache(location);
+        cache.load("sig");
+        assertNull(cache.get(source));
+
+        FileDependencies deps = new FileDependencies();
+        deps.addDirective("a/b/C.js", Types.IMPORT, "//:import a.b.C");
+        cache.put(source, deps);
+        cache.save();
+
+        DependencyGraphCache loaded = new DependencyGraphCache(location);
+        loaded.load("sig");
+        FileDependencies result = loaded.get(source);
+        assertNotNull(result);
+        assertFalse(result.isExcluded());
+        assertEquals(1, result.getDirectives().size());
+        assertEquals("a/b/C.js", result.getDirectives().get(0)[0]);
+        assertEquals(Types.IMPORT, result.getDirectives().get(0)[1]);
+
+        DependencyGraphCache other = new DependencyGraphCache(location);
+        other.load("other");
+        assertNull(other.get(source));
+    }
+
+    /**
+     * Test of get method, of class DependencyGraphCache.
+     */
+    @Test
+    public void testGetChanged() throws IOException {
+        System.out.println("getChanged");
+        DependencyGraphCache cache = new DependencyGraphCache(location);
+        cache.load("sig");
+        cache.put(source, new FileDependencies());
+
+        source.setLastModified(source.lastModified() - 10000);
+        assertNotNull(cache.get(source));
+
+        source.saveString("//:import a.b.D\nvar x;\n");
+        source.setLastModified(source.lastModified() - 20000);
+        assertNull(cache.get(source));
+    }
+
+    /**
+     * Test of put method, of class DependencyGraphCache, with checksum
+     * computed while scanning.
+     */
+    @Test
+    public void testPutScanned() throws IOException {
+        System.out.println("putScanned");
+        DependencyGraphCache cache = new DependencyGraphCache(location);
+        cache.load("sig");
+        MainProcessor processor = new MainProcessor();
+        processor.setDependencyGraphCache(cache);
+        FileDependencies scan = processor.getFileDependencies(source);
+        assertEquals(DependencyGraphCache.checksum(source),
+            scan.getChecksum());
+
+        //touched only, checksum matches
+        source.setLastModified(source.lastModified() - 10000);
+        assertSame(scan, cache.get(source));
+    }
+
+    /**
+     * Test of put method, of class DependencyGraphCache, with stamp taken
+     * before scanning.
+     */
+    @Test
+    public void testPutStamped() throws IOException {
+        System.out.println("putStamped");
+        DependencyGraphCache cache = new DependencyGraphCache(location);
+        cache.load("sig");
+        long lastModified = source.lastModified();
+        long length = source.length();
+        long checksum = DependencyGraphCache.checksum(source);
+
+        //changed while being scanned
+        source.saveString("//:import a.b.D\nvar x;\n");
+        source.setLastModified(lastModified + 10000);
+        cache.put(source, new FileDependencies(), lastModified, length,
+            checksum);
+        assertNull(cache.get(source));
+
+        //checksum read after change is not of scanned content
+        cache.put(source, new FileDependencies(), lastModified, length,
+            FileDependencies.NO_CHECKSUM);
+        assertNull(cache.get(source));
+    }
+}
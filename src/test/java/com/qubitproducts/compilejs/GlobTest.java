@@ -0,0 +1,65 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class GlobTest {
+
+    public GlobTest() {
+    }
+
+    /**
+     * Test of matches method, of class Glob.
+     */
+    @Test
+    public void testMatches() {
+        System.out.println("matches");
+        Glob glob = Glob.compile("a/b/*.js");
+        assertSame(glob, Glob.compile("a/b/*.js"));
+        assertTrue(glob.matches("a/b/C.js"));
+        assertTrue(glob.matches("a/b/.js"));
+        assertFalse(glob.matches("a/b/C.css"));
+        assertFalse(glob.matches("a/b/c/C.js"));
+        assertFalse(glob.matches("a/C.js"));
+
+        glob = Glob.compile("a/F*_*.js");
+        assertTrue(glob.matches("a/F1_2.js"));
+        assertTrue(glob.matches("a/F_.js"));
+        assertFalse(glob.matches("a/F1.js"));
+        assertFalse(glob.matches("a/F_js"));
+
+        //import a.** and a.**.*
+        for (String pattern : new String[]{"a/**.js", "a/**/*.js"}) {
+            glob = Glob.compile(pattern);
+            assertTrue(glob.matches("a/C.js"));
+            assertTrue(glob.matches("a/b/c/C.js"));
+            assertFalse(glob.matches("b/C.js"));
+            assertFalse(glob.matches("a/b/C.css"));
+        }
+
+        glob = Glob.compile("a/**/c/*");
+        assertTrue(glob.matches("a/c/C.js"));
+        assertTrue(glob.matches("a/b/b/c/C.js"));
+        assertFalse(glob.matches("a/b/c"));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class JSEscaperTest {
+
+    public JSEscaperTest() {
+    }
+
+    /**
+     * Test of escape method, of class JSEscaper.
+     */
+    @Test
+    public void testEscape() {
+        System.out.println("escape");
+        StringBuilder all = new StringBuilder();
+        for (int ch = 0; ch < 65536; ch++) {
+            all.append((char) ch);
+        }
+        String text = all.toString() + "a\\b\"c\u2028d\te\n";
+        assertEquals(quotes(text), JSEscaper.QUOTES.escape(text));
+        assertEquals(string(text), JSEscaper.STRING.escape(text));
+
+        StringBuilder builder = new StringBuilder("x");
+        JSEscaper.STRING.escape("a\"b\u0001c", 1, 5, builder);
+        assertEquals("x\\\"b\\u0001c", builder.toString());
+        assertEquals("", JSEscaper.STRING.escape(""));
+    }
+
+    /**
+     * Test of turnCSSToJS method, of class CompileJS.
+     */
+    @Test
+    public void testTurnCSSToJS() {
+        System.out.println("turnCSSToJS");
+        String[] texts = new String[]{
+            "",
+            "\n",
+            "\n\n",
+            "a",
+            "a\n",
+            "\na\n\n",
+            "a\n\nb\\c \"d\"\n\n\n",
+            "<div class=\"x\">\r\n</div>"
+        };
+        for (String text : texts) {
+            StringBuilder expected = new StringBuilder(CompileJS.tpl1);
+            String[] lines = text.split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                expected.append("\t\"").append(quotes(lines[i]))
+                    .append("\\n\"").append(i < lines.length - 1 ? ",\n" : "\n");
+            }
+            expected.append(CompileJS.tpl2);
+            assertEquals(expected.toString(),
+                CompileJS.turnCSSToJS(text)[0].toString());
+        }
+    }
+
+    private static String quotes(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String string(String text) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\\') {
+                builder.append("\\\\");
+            } else if (ch == '"') {
+                builder.append("\\\"");
+            } else if ((ch < 32 && ch != '\t')
+                || (ch > 512 && !Character.isLetterOrDigit(ch))) {
+                String hex = Integer.toHexString(ch);
+                while (hex.length() < 4) {
+                    hex = "0" + hex;
+                }
+                builder.append("\\u").append(hex);
+            } else {
+                builder.append(ch);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -86,19 +86,23 @@ public class MainProcessorHelperTest {
         String defaultChunkName = "*";
         boolean fromWrapChar = true;
         
-        List<Object[]> result = 
+        List<Chunk> result = 
             MainProcessorHelper
                 .getStringInChunks(lines, wraps, 
                     defaultChunkName, fromWrapChar);
         
         assertEquals(
             "12345678",
-            (StringBuilder)(result.get(0)[1]) + "");
+            result.get(0).toString());
+        assertEquals("xxx", result.get(0).getExtension());
+        assertEquals(1, result.get(0).getLine());
         
         assertEquals(
             "xyz\n" +
             "   /*xx*/12345678/*~xx*/",
-            (StringBuilder)(result.get(2)[1]) + "");
+            result.get(2).toString());
+        assertEquals("y", result.get(2).getExtension());
+        assertEquals(2, result.get(2).getLine());
     }
 
     /**
@@ -114,5 +118,83 @@ public class MainProcessorHelperTest {
         String result = MainProcessorHelper.replaceFirstChar(string, ch, with);
         assertEquals(expResult, result);
     }
+
+    /**
+     * Test of stripFromWraps method, of class MainProcessorHelper.
+     */
+    @Test
+    public void testStripFromWraps_LinePatterns() throws Exception {
+        System.out.println("stripFromWraps");
+        List<String> lines = new ArrayList<>();
+        lines.add("a");
+        lines.add("/*debug*/ b");
+        lines.add("c /*~log*/");
+        lines.add("d /*~debug*/");
+        lines.add("/*log*/ e");
+        lines.add("f");
+        lines.add("g /*~log*/");
+        lines.add("h");
+        String[] wraps = {"/*~debug*/", "/*~log*/", "x", null};
+        
+        for (String replacement : new String[]{null, "", "/*log*/"}) {
+            List<String> expected = MainProcessorHelper
+                .stripFromWraps(lines, wraps, replacement);
+            List<String> result = MainProcessorHelper
+                .stripFromWraps(lines,
+                    new LinePatterns(null, null, wraps, null),
+                    replacement);
+            assertEquals(expected, result);
+        }
+    }
+
+    /**
+     * Test of getStringInChunks method reading lines, of class
+     * MainProcessorHelper.
+     */
+    @Test
+    public void testGetStringInChunks_LineReader() throws Exception {
+        System.out.println("getStringInChunks");
+        List<String> lines = new ArrayList<>();
+        lines.add("a //= ignored");
+        lines.add("/*css*/");
+        lines.add("b /*debug*/");
+        lines.add("c /*~debug*/ //= ignored");
+        lines.add("d");
+        lines.add("/*~css*/");
+        lines.add("/*log*/ e //= ignored");
+        lines.add("f /*~log*/");
+        lines.add("g");
+        String[] ignores = {"//="};
+        String[] wraps = {"/*~debug*/", "/*~log*/"};
+        List<String> chunkWraps = new ArrayList<>();
+        chunkWraps.add("/*~css*/");
+        LinePatterns patterns =
+            new LinePatterns(ignores, null, wraps, chunkWraps);
+        
+        for (String replacement : new String[]{null, ""}) {
+            List<String> filtered = new ArrayList<>();
+            for (String line : lines) {
+                if (!line.contains(ignores[0])) {
+                    filtered.add(line);
+                } else if (replacement != null) {
+                    filtered.add(replacement);
+                }
+            }
+            List<Chunk> expected = MainProcessorHelper.getStringInChunks(
+                MainProcessorHelper.stripFromWraps(
+                    filtered, wraps, replacement), chunkWraps, "js");
+            List<Chunk> result = MainProcessorHelper.getStringInChunks(
+                new LineReader(lines), patterns, true, replacement, "js",
+                null);
+            
+            assertEquals(expected.size(), result.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getType(),
+                    result.get(i).getType());
+                assertEquals(expected.get(i).toString(),
+                    result.get(i).toString());
+            }
+        }
+    }
     
 }
@@ -0,0 +1,133 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.processors.JSWrapperProcessor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class MainProcessorTest {
+
+    private File root;
+
+    public MainProcessorTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of getFilesListFromPaths method, of class MainProcessor, files
+     * order does not depend on threads number.
+     */
+    @Test
+    public void testGetFilesListFromPathsThreads() throws IOException {
+        System.out.println("getFilesListFromPathsThreads");
+        ProjectGenerator generator = new ProjectGenerator(11);
+        generator.setFiles(300);
+        generator.setBases(3);
+        generator.setDepth(3);
+        generator.setDensity(20);
+        generator.setWildcards(20);
+        generator.setCss(30);
+        generator.setCycles(10);
+        generator.setExcluded(5);
+        generator.generate(root);
+
+        List<String> sources = new ArrayList<String>();
+        for (String source : generator.getSources()) {
+            sources.add(new File(root, source).getAbsolutePath());
+        }
+        String output = new File(root, "out/all").getAbsolutePath();
+
+        Map<String, String> expected = createProcessor(generator, 1)
+            .getFilesListFromPaths(sources, false, false, output);
+        assertFalse(expected.isEmpty());
+        for (int threads : new int[]{2, 4}) {
+            Map<String, String> result = createProcessor(generator, threads)
+                .getFilesListFromPaths(sources, false, false, output);
+            assertEquals(new ArrayList<String>(expected.keySet()),
+                new ArrayList<String>(result.keySet()));
+            assertEquals(expected, result);
+        }
+    }
+
+    /**
+     * Test of getChunkProcessors method, of class MainProcessor.
+     */
+    @Test
+    public void testGetChunkProcessors() {
+        System.out.println("getChunkProcessors");
+        MainProcessor processor = new MainProcessor();
+        Processor wrapper = new JSWrapperProcessor();
+        Processor plain = new Processor() {
+            @Override
+            public void process(List<Object[]> chunks, String extension) {
+            }
+        };
+        ChunkProcessor last = ProcessorChain.adapt(plain);
+        processor.addChunkProcessor(last);
+        processor.addProcessor(plain);
+        processor.addProcessor(wrapper);
+
+        List<ChunkProcessor> chain = processor.getChunkProcessors();
+        assertEquals(3, chain.size());
+        assertSame(wrapper, chain.get(1));
+        assertSame(last, chain.get(2));
+
+        //chain follows processors list changes
+        processor.getProcessors().remove(plain);
+        chain = processor.getChunkProcessors();
+        assertEquals(2, chain.size());
+        assertSame(wrapper, chain.get(0));
+        processor.getProcessors().clear();
+        assertEquals(Arrays.asList(last), processor.getChunkProcessors());
+    }
+
+    private MainProcessor createProcessor(
+        ProjectGenerator generator, int threads) {
+        MainProcessor processor = new MainProcessor();
+        processor.setCwd(root.getAbsolutePath());
+        processor.setSourceBase(
+            generator.getSources().toArray(new String[0]));
+        processor.setExcludedFilesFromListing(
+            new String[]{ProjectGenerator.DATA});
+        processor.setFromToIgnore(ProjectGenerator.WRAPS_TO_STRIP);
+        processor.setThreads(threads);
+        return processor;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class OutputFileTest {
+
+    private File root;
+
+    public OutputFileTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs-output").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of write method, of class OutputFile.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        System.out.println("write");
+        File file = new File(root, "out.js");
+        String path = file.getPath();
+
+        assertTrue(OutputFile.write(path, "a();\n", UTF_8));
+        file.setLastModified(1000);
+        assertFalse(OutputFile.write(path, "a();\n", UTF_8));
+        assertEquals(1000, file.lastModified());
+        assertTrue(OutputFile.write(path, "b();\n", UTF_8));
+        assertEquals("b();\n", new String(Files.readAllBytes(file.toPath()),
+            UTF_8));
+        assertTrue(OutputFile.write(path, "b();\nc();\n", UTF_8));
+        assertTrue(OutputFile.write(path, "b();\n", UTF_8));
+        assertEquals("b();\n", new String(Files.readAllBytes(file.toPath()),
+            UTF_8));
+
+        OutputFile output = new OutputFile(path, UTF_8);
+        try {
+            output.open().append("d();\n");
+        } finally {
+            output.abort();
+        }
+        assertEquals("b();\n", new String(Files.readAllBytes(file.toPath()),
+            UTF_8));
+        assertArrayEquals(new String[]{"out.js"}, root.list());
+    }
+
+    /**
+     * Test of commit method, of class OutputFile, with content bigger than
+     * buffers changed after its start.
+     */
+    @Test
+    public void testCommitLarge() throws IOException {
+        System.out.println("commitLarge");
+        File file = new File(root, "out.js");
+        String path = file.getPath();
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 300 * 1024) {
+            content.append("var x = 'zażółć';\n");
+        }
+        assertTrue(OutputFile.write(path, content, UTF_8));
+        assertFalse(OutputFile.write(path, content, UTF_8));
+
+        content.setCharAt(200 * 1024, 'y');
+        assertTrue(OutputFile.write(path, content, UTF_8));
+        assertEquals(content.toString(),
+            new String(Files.readAllBytes(file.toPath()), UTF_8));
+        assertArrayEquals(new String[]{"out.js"}, root.list());
+    }
+
+    /**
+     * Test of commit method, of class OutputFile, replacing linked and
+     * protected outputs.
+     */
+    @Test
+    public void testCommitLinks() throws IOException {
+        System.out.println("commitLinks");
+        File real = new File(root, "real.js");
+        Files.write(real.toPath(), "a();\n".getBytes(UTF_8));
+        Set<PosixFilePermission> permissions =
+            PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(real.toPath(), permissions);
+
+        //symbolic link stays, file it links to is replaced
+        File link = new File(root, "link.js");
+        Files.createSymbolicLink(link.toPath(), real.toPath());
+        assertTrue(OutputFile.write(link.getPath(), "b();\n", UTF_8));
+        assertTrue(Files.isSymbolicLink(link.toPath()));
+        assertEquals("b();\n", new String(Files.readAllBytes(real.toPath()),
+            UTF_8));
+        assertEquals(permissions,
+            Files.getPosixFilePermissions(real.toPath()));
+
+        //hard link sees the change
+        File hard = new File(root, "hard.js");
+        Files.createLink(hard.toPath(), real.toPath());
+        assertTrue(OutputFile.write(real.getPath(), "c();\n", UTF_8));
+        assertEquals("c();\n", new String(Files.readAllBytes(hard.toPath()),
+            UTF_8));
+        assertEquals(permissions,
+            Files.getPosixFilePermissions(real.toPath()));
+        assertEquals(Arrays.asList("hard.js", "link.js", "real.js"),
+            sorted(root.list()));
+    }
+
+    private static List<String> sorted(String[] names) {
+        List<String> list = Arrays.asList(names);
+        Collections.sort(list);
+        return list;
+    }
+}
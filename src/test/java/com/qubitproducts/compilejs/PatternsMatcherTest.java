@@ -0,0 +1,105 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class PatternsMatcherTest {
+
+    private static final String CHARS = "ab/*~!ż ";
+
+    public PatternsMatcherTest() {
+    }
+
+    private static String random(Random random, int max) {
+        StringBuilder builder = new StringBuilder();
+        int len = random.nextInt(max + 1);
+        for (int i = 0; i < len; i++) {
+            builder.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return builder.toString();
+    }
+
+    private static boolean valid(String pattern) {
+        return pattern != null && pattern.length() > 0;
+    }
+
+    /**
+     * Test of contains, startsWith, first and match methods, of class
+     * PatternsMatcher, against String methods.
+     */
+    @Test
+    public void testMatching() {
+        System.out.println("matching");
+        Random random = new Random(1);
+        for (int run = 0; run < 200; run++) {
+            String[] patterns = new String[1 + random.nextInt(6)];
+            int[] groups = new int[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = random.nextInt(10) == 0
+                    ? null : random(random, 4);
+                groups[i] = random.nextInt(3);
+            }
+            PatternsMatcher matcher = new PatternsMatcher(patterns, groups);
+            boolean[] found = new boolean[patterns.length];
+
+            for (int t = 0; t < 50; t++) {
+                String text = random(random, 30);
+                String info = Arrays.toString(patterns) + " in " + text;
+                int mask = 0;
+                int first = -1;
+                for (int i = 0; i < patterns.length; i++) {
+                    if (valid(patterns[i]) && text.contains(patterns[i])) {
+                        mask |= 1 << groups[i];
+                        if (first == -1 && i >= 1) {
+                            first = i;
+                        }
+                    }
+                }
+                for (int group = 0; group < 3; group++) {
+                    boolean contains = false;
+                    boolean startsWith = false;
+                    for (int i = 0; i < patterns.length; i++) {
+                        if (groups[i] == group && valid(patterns[i])) {
+                            contains |= text.contains(patterns[i]);
+                            startsWith |= text.startsWith(patterns[i]);
+                        }
+                    }
+                    assertEquals(info, contains,
+                        matcher.contains(text, 1 << group));
+                    assertEquals(info, startsWith,
+                        matcher.startsWith(text, 1 << group));
+                }
+                assertEquals(info, first,
+                    matcher.first(text, 1, patterns.length));
+                assertEquals(info, mask, matcher.match(text, found));
+                for (int i = 0; i < patterns.length; i++) {
+                    assertEquals(info,
+                        valid(patterns[i]) && text.contains(patterns[i]),
+                        found[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.processors.JSStringProcessor;
+import com.qubitproducts.compilejs.processors.JSWrapperProcessor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class ProcessorChainTest {
+
+    public ProcessorChainTest() {
+    }
+
+    /**
+     * Test of process method, of class ProcessorChain.
+     */
+    @Test
+    public void testProcess() throws IOException {
+        System.out.println("process");
+        //old style processor, run through adapter
+        Processor upper = new Processor() {
+            @Override
+            public void process(List<Object[]> chunks, String extension) {
+                for (Object[] chunk : chunks) {
+                    chunk[1] = new StringBuilder(
+                        chunk[1].toString().toUpperCase());
+                }
+            }
+        };
+        Processor string = new JSStringProcessor("[\"", "\"]", "\", \"", null);
+        Processor wrapper = new JSWrapperProcessor();
+
+        List<Object[]> expected = new ArrayList<Object[]>();
+        for (Chunk chunk : chunks()) {
+            expected.add(new Object[]{chunk.getType(), chunk.getBuilder()});
+        }
+        string.process(expected, "js");
+        wrapper.process(expected, "js");
+        upper.process(expected, "js");
+
+        List<ChunkProcessor> processors = new ArrayList<ChunkProcessor>();
+        processors.add((ChunkProcessor) string);
+        processors.add((ChunkProcessor) wrapper);
+        processors.add(ProcessorChain.adapt(upper));
+        List<Chunk> result =
+            ProcessorChain.process(processors, chunks(), "js");
+
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], result.get(i).getType());
+            assertEquals(expected.get(i)[1].toString(),
+                result.get(i).toString());
+        }
+
+        //chunks not processed are kept
+        List<Chunk> chunks = chunks();
+        result = ProcessorChain.process(processors.subList(0, 2), chunks, "js");
+        assertSame(chunks.get(1), result.get(2));
+        assertEquals(1, result.get(1).getLine());
+        assertEquals("js", result.get(1).getExtension());
+        result = ProcessorChain.process(processors, chunks, "css");
+        assertEquals("E\nF\r\n", result.get(1).toString());
+    }
+
+    /**
+     * Test of append method, of class LineFilter.
+     */
+    @Test
+    public void testLineFilter() throws IOException {
+        System.out.println("lineFilter");
+        String[] texts = new String[]{
+            "",
+            "a",
+            "\n",
+            "a\r\nb\rc\n\r\n",
+            "\r\r\n\n\r",
+            "ab\ncd\r\n\nef"
+        };
+        for (String text : texts) {
+            List<String> expected = new ArrayList<String>();
+            BufferedReader reader = new BufferedReader(new StringReader(text));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                expected.add(line);
+            }
+            //every split of text to two appends
+            for (int split = 0; split <= text.length(); split++) {
+                final List<String> lines = new ArrayList<String>();
+                LineFilter filter = new LineFilter(null) {
+                    @Override
+                    protected boolean startLines(Chunk chunk) {
+                        return true;
+                    }
+
+                    @Override
+                    protected void line(CharSequence text, int start,
+                        int end) {
+                        lines.add(text.subSequence(start, end).toString());
+                    }
+
+                    @Override
+                    protected void endLines() {
+                        lines.add("END");
+                    }
+                };
+                filter.startChunk(new Chunk("", text));
+                filter.append(text, 0, split);
+                filter.append(text, split, text.length());
+                filter.endChunk();
+                List<String> all = new ArrayList<String>(expected);
+                all.add("END");
+                assertEquals(Arrays.toString(text.toCharArray()) + split,
+                    all, lines);
+            }
+        }
+    }
+
+    private List<Chunk> chunks() {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        chunks.add(new Chunk("/*~js.string*/",
+            new StringBuilder("a\"\nb\r\nc\n"), null, 1));
+        chunks.add(new Chunk("/*~css*/", "e\nf\r\n", null, 5));
+        chunks.add(new Chunk("", new StringBuilder(), null, 7));
+        return chunks;
+    }
+}
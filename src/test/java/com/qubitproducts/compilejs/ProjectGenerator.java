@@ -0,0 +1,724 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Synthetic sources tree generator, used by benchmarks and scale tests.
+ * Same seed and settings always produce the same tree.
+ *
+ * Layout of generated project:
+ *
+ *   src/base[N]/gen/[d..]/p[K]/File[I].js  sources, packages spread over
+ *                                           source bases
+ *   src/base[N]/gen/data/Data[I].js         injected contents
+ *   manifest.txt                            compile arguments and expected
+ *                                           outputs
+ *
+ * Each file (apart from excluded ones) imports fanOut of files generated
+ * before it, optionally whole package of earlier files (wildcard import),
+ * its own css file, injects data file and includes file generated after it
+ * which imports it back (cyclic include). density percent of file lines
+ * are directive lines: excluded lines (see -dl), stripped wraps (see -dw)
+ * and, wraps percent of them, chunks wraps (*~css*, *~htm*).
+ *
+ * Manifest lists compile arguments (relative to project directory), output
+ * extensions with count of files contributing to them and each file with
+ * outputs it contributes to (or "excluded") and its dependencies. Each
+ * included javascript file contains line "var file[I] = ..." that can be
+ * searched for in outputs.
+ *
+ * Usage: ProjectGenerator -o [directory] [--setting value]..., where
+ * settings are: seed, files, bases, depth, density, wraps, fan-out,
+ * wildcards, css, injects, cycles, excluded, lines, files-per-package.
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class ProjectGenerator {
+
+    public static final String PACKAGE = "gen";
+    public static final String DATA = "data";
+    public static final String MANIFEST = "manifest.txt";
+    public static final String EXCLUDE_MARKER = "////!ignore!////";
+
+    /**
+     * Chunks wraps used in generated files, same as CompileJS defaults.
+     */
+    public static final String[] WRAPS = {"*~css*", "*~htm*"};
+
+    /**
+     * Wraps stripped from generated files (see -dw).
+     */
+    public static final String[] WRAPS_TO_STRIP = {"/*~debug*/"};
+
+    private final long seed;
+    private int files = 100;
+    private int bases = 1;
+    private int depth = 1;
+    private int density = 10;
+    private int wraps = 50;
+    private int fanOut = 3;
+    private int wildcards = 0;
+    private int css = 0;
+    private int injects = 0;
+    private int cycles = 0;
+    private int excluded = 0;
+    private int lines = 40;
+    private int filesPerPackage = 20;
+
+    /**
+     * Planned file.
+     */
+    static class Entry {
+        int index;
+        String classpath;
+        String path;
+        boolean excluded = false;
+        boolean css = false;
+        boolean cssChunk = false;
+        boolean htmChunk = false;
+        int inject = -1;
+        int include = -1;
+        String wildcard = null;
+        Set<Integer> imports = new LinkedHashSet<Integer>();
+        Set<Integer> dependencies = new LinkedHashSet<Integer>();
+    }
+
+    /**
+     * @param seed random generator seed
+     */
+    public ProjectGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the project to root directory.
+     *
+     * @param root directory, created if does not exist
+     * @return classpaths of generated files, in generation order
+     * @throws IOException
+     */
+    public List<String> generate(File root) throws IOException {
+        Random random = new Random(seed);
+        List<Entry> entries = plan(random);
+        int dataFiles = getDataFiles();
+
+        List<String> classpaths = new ArrayList<String>();
+        for (Entry entry : entries) {
+            writeFile(root, entry, entries, random);
+            if (entry.css) {
+                write(new File(root, cssPath(entry)),
+                    ".file" + entry.index + " { color: red; }\n");
+            }
+            classpaths.add(entry.classpath);
+        }
+
+        for (int i = 0; i < dataFiles; i++) {
+            write(new File(root, dataPath(i)),
+                "{\"data\": " + i + "}\n");
+        }
+
+        writeManifest(new File(root, MANIFEST), entries);
+
+        return classpaths;
+    }
+
+    /**
+     * @return source bases paths, relative to project directory
+     */
+    public List<String> getSources() {
+        List<String> sources = new ArrayList<String>();
+        for (int i = 0; i < bases; i++) {
+            sources.add("src/base" + i);
+        }
+        return sources;
+    }
+
+    /**
+     * @param output output path
+     * @return CompileJS arguments compiling the project, paths are relative
+     *  to project directory
+     */
+    public List<String> getArgs(String output) {
+        StringBuilder sources = new StringBuilder();
+        for (String source : getSources()) {
+            if (sources.length() > 0) {
+                sources.append(",");
+            }
+            sources.append(source);
+        }
+        List<String> args = new ArrayList<String>();
+        args.add("-s");
+        args.add(sources.toString());
+        args.add("--source-base");
+        args.add(sources.toString());
+        args.add("-i");
+        args.add(".js,.css");
+        args.add("--file-search-excluded");
+        args.add(DATA);
+        args.add("-dw");
+        args.add(WRAPS_TO_STRIP[0]);
+        if (injects > 0) {
+            args.add("--options");
+            args.add("injections");
+        }
+        args.add("--create-output-dirs");
+        args.add("-o");
+        args.add(output);
+        return args;
+    }
+
+    private List<Entry> plan(Random random) {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int i = 0; i < files; i++) {
+            Entry entry = new Entry();
+            entry.index = i;
+            entry.classpath = packageOf(i) + ".File" + i;
+            entry.path = getPath(i);
+            entry.excluded = i > 0 && random.nextInt(100) < excluded;
+            entries.add(entry);
+        }
+
+        int dataFiles = getDataFiles();
+        for (Entry entry : entries) {
+            int i = entry.index;
+            if (entry.excluded) {
+                continue;
+            }
+
+            for (int k = 0; i > 0 && k < fanOut; k++) {
+                entry.imports.add(random.nextInt(i));
+            }
+            entry.dependencies.addAll(entry.imports);
+
+            //whole package generated before this file
+            int pkg = i / filesPerPackage;
+            if (pkg > 0 && random.nextInt(100) < wildcards) {
+                int other = random.nextInt(pkg);
+                entry.wildcard = packageOf(other * filesPerPackage);
+                for (int j = other * filesPerPackage;
+                    j < (other + 1) * filesPerPackage; j++) {
+                    entry.dependencies.add(j);
+                }
+            }
+
+            entry.css = random.nextInt(100) < css;
+
+            if (random.nextInt(100) < injects) {
+                entry.inject = random.nextInt(dataFiles);
+            }
+
+            //include file generated after, importing this file back
+            if (i + 1 < files && random.nextInt(100) < cycles) {
+                int other = i + 1 + random.nextInt(
+                    Math.min(filesPerPackage, files - i - 1));
+                if (!entries.get(other).excluded) {
+                    entry.include = other;
+                    entry.dependencies.add(other);
+                }
+            }
+        }
+
+        for (Entry entry : entries) {
+            if (entry.include != -1) {
+                Entry other = entries.get(entry.include);
+                other.imports.add(entry.index);
+                other.dependencies.add(entry.index);
+            }
+        }
+
+        return entries;
+    }
+
+    private void writeFile(File root, Entry entry, List<Entry> entries,
+        Random random) throws IOException {
+        int i = entry.index;
+        StringBuilder content = new StringBuilder();
+
+        if (entry.excluded) {
+            content.append(EXCLUDE_MARKER).append("\n");
+        }
+        for (int j : entry.imports) {
+            content.append("//:import ")
+                .append(entries.get(j).classpath).append("\n");
+        }
+        if (entry.wildcard != null) {
+            content.append("//:import ")
+                .append(entry.wildcard).append(".*\n");
+        }
+        if (entry.css) {
+            content.append("//:css ").append(entry.classpath).append("\n");
+        }
+        if (entry.include != -1) {
+            content.append("//:include ")
+                .append(entries.get(entry.include).classpath
+                    .replace('.', '/'))
+                .append(".js\n");
+        }
+
+        content.append("var file").append(i)
+            .append(" = \"").append(entry.classpath).append("\";\n");
+        if (entry.inject != -1) {
+            content.append("var data").append(i).append(" = //:inject ")
+                .append(PACKAGE).append(".").append(DATA).append(".Data")
+                .append(entry.inject).append(" ;\n");
+        }
+
+        for (int j = 0; j < lines; j++) {
+            if (random.nextInt(100) < density) {
+                if (random.nextInt(100) < wraps) {
+                    if (random.nextBoolean()) {
+                        content.append("/*css*\n.c").append(i).append("_")
+                            .append(j).append(" { color: \"red\"; }\n")
+                            .append("*~css*/\n");
+                        entry.cssChunk = true;
+                    } else {
+                        content.append("/*htm*\n<div class=\"c").append(i)
+                            .append("_").append(j)
+                            .append("\">ą \"q\"</div>\n*~htm*/\n");
+                        entry.htmChunk = true;
+                    }
+                } else if (random.nextBoolean()) {
+                    content.append("/*D*/ console.log(\"").append(i)
+                        .append("_").append(j).append("\");\n");
+                } else {
+                    content.append("/*debug*/ debug(").append(j)
+                        .append("); /*~debug*/\n");
+                }
+            } else {
+                content.append("var v").append(i).append("_").append(j)
+                    .append(" = \"line \\\"").append(j)
+                    .append("\\\" \\\\ text\";\n");
+            }
+        }
+
+        write(new File(root, entry.path), content);
+    }
+
+    private void writeManifest(File file, List<Entry> entries)
+        throws IOException {
+        int js = 0;
+        int cssFiles = 0;
+        int htm = 0;
+        StringBuilder list = new StringBuilder();
+        for (Entry entry : entries) {
+            list.append("file ").append(entry.path).append(" ");
+            if (entry.excluded) {
+                list.append("excluded -\n");
+                continue;
+            }
+            js++;
+            list.append("js");
+            if (entry.cssChunk) {
+                list.append(",css");
+                cssFiles++;
+            }
+            if (entry.htmChunk) {
+                list.append(",htm");
+                htm++;
+            }
+            list.append(" ");
+            if (entry.dependencies.isEmpty() && entry.inject == -1) {
+                list.append("-");
+            }
+            String separator = "";
+            for (int j : entry.dependencies) {
+                list.append(separator).append(entries.get(j).path);
+                separator = ",";
+            }
+            if (entry.inject != -1) {
+                list.append(separator).append(dataPath(entry.inject));
+            }
+            list.append("\n");
+            if (entry.css) {
+                list.append("file ").append(cssPath(entry))
+                    .append(" css -\n");
+                cssFiles++;
+            }
+        }
+
+        StringBuilder content = new StringBuilder();
+        content.append("# CompileJS synthetic project\n");
+        content.append("seed ").append(seed).append("\n");
+        content.append("settings")
+            .append(" files=").append(files)
+            .append(" bases=").append(bases)
+            .append(" depth=").append(depth)
+            .append(" density=").append(density)
+            .append(" wraps=").append(wraps)
+            .append(" fan-out=").append(fanOut)
+            .append(" wildcards=").append(wildcards)
+            .append(" css=").append(css)
+            .append(" injects=").append(injects)
+            .append(" cycles=").append(cycles)
+            .append(" excluded=").append(excluded)
+            .append(" lines=").append(lines)
+            .append(" files-per-package=").append(filesPerPackage)
+            .append("\n");
+        content.append("args");
+        for (String arg : getArgs("out/all")) {
+            content.append(" ").append(arg);
+        }
+        content.append("\n");
+        content.append("output js ").append(js).append("\n");
+        content.append("output css ").append(cssFiles).append("\n");
+        content.append("output htm ").append(htm).append("\n");
+        content.append(list);
+
+        write(file, content);
+    }
+
+    private int getDataFiles() {
+        return Math.max(1, files / 50);
+    }
+
+    /**
+     * Package classpath, depth - 1 levels of directories (4 per level)
+     * above package directory.
+     */
+    private String packageOf(int i) {
+        int pkg = i / filesPerPackage;
+        StringBuilder builder = new StringBuilder(PACKAGE);
+        int level = pkg;
+        for (int l = 1; l < depth; l++) {
+            builder.append(".d").append(level % 4);
+            level /= 4;
+        }
+        builder.append(".p").append(pkg);
+        return builder.toString();
+    }
+
+    private String basePath(int i) {
+        return getSources().get((i / filesPerPackage) % bases);
+    }
+
+    /**
+     * @param i file index
+     * @return path of javascript file, relative to project directory
+     */
+    public String getPath(int i) {
+        return sourcePath(i) + ".js";
+    }
+
+    private String sourcePath(int i) {
+        return basePath(i) + "/"
+            + (packageOf(i) + ".File" + i).replace('.', '/');
+    }
+
+    private String cssPath(Entry entry) {
+        return sourcePath(entry.index) + ".css";
+    }
+
+    private String dataPath(int i) {
+        return getSources().get(i % bases) + "/" + PACKAGE + "/" + DATA
+            + "/Data" + i + ".js";
+    }
+
+    private static void write(File file, CharSequence content)
+        throws IOException {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(
+            new FileOutputStream(file), UTF_8);
+        try {
+            writer.append(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Removes directory with its contents.
+     *
+     * @param file
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String output = null;
+        long seed = 1;
+        List<String[]> settings = new ArrayList<String[]>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-o")) {
+                output = args[i + 1];
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[i + 1]);
+            } else {
+                settings.add(new String[]{args[i], args[i + 1]});
+            }
+        }
+
+        if (output == null) {
+            System.out.println("Usage: ProjectGenerator -o <directory>"
+                + " [--seed n] [--files n] [--bases n] [--depth n]"
+                + " [--density %] [--wraps %] [--fan-out n]"
+                + " [--wildcards %] [--css %] [--injects %] [--cycles %]"
+                + " [--excluded %] [--lines n] [--files-per-package n]");
+            return;
+        }
+
+        ProjectGenerator generator = new ProjectGenerator(seed);
+        for (String[] setting : settings) {
+            int value = Integer.parseInt(setting[1]);
+            String name = setting[0];
+            if (name.equals("--files")) {
+                generator.setFiles(value);
+            } else if (name.equals("--bases")) {
+                generator.setBases(value);
+            } else if (name.equals("--depth")) {
+                generator.setDepth(value);
+            } else if (name.equals("--density")) {
+                generator.setDensity(value);
+            } else if (name.equals("--wraps")) {
+                generator.setWraps(value);
+            } else if (name.equals("--fan-out")) {
+                generator.setFanOut(value);
+            } else if (name.equals("--wildcards")) {
+                generator.setWildcards(value);
+            } else if (name.equals("--css")) {
+                generator.setCss(value);
+            } else if (name.equals("--injects")) {
+                generator.setInjects(value);
+            } else if (name.equals("--cycles")) {
+                generator.setCycles(value);
+            } else if (name.equals("--excluded")) {
+                generator.setExcluded(value);
+            } else if (name.equals("--lines")) {
+                generator.setLines(value);
+            } else if (name.equals("--files-per-package")) {
+                generator.setFilesPerPackage(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+
+        File root = new File(output);
+        long start = System.currentTimeMillis();
+        generator.generate(root);
+        System.out.println("Generated " + generator.getFiles()
+            + " files in " + root.getAbsolutePath() + " ("
+            + (System.currentTimeMillis() - start) + "ms), see "
+            + MANIFEST);
+    }
+
+    /**
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the files count
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * @param files the files count to set
+     */
+    public void setFiles(int files) {
+        this.files = files;
+    }
+
+    /**
+     * @return the source bases count
+     */
+    public int getBases() {
+        return bases;
+    }
+
+    /**
+     * @param bases the source bases count to set
+     */
+    public void setBases(int bases) {
+        this.bases = bases;
+    }
+
+    /**
+     * @return the packages depth (1 - packages directly in "gen")
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @param depth the packages depth to set
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @return the percent of directive lines
+     */
+    public int getDensity() {
+        return density;
+    }
+
+    /**
+     * @param density the percent of directive lines to set
+     */
+    public void setDensity(int density) {
+        this.density = density;
+    }
+
+    /**
+     * @return the percent of directive lines being chunks wraps
+     */
+    public int getWraps() {
+        return wraps;
+    }
+
+    /**
+     * @param wraps the percent of directive lines being chunks wraps to set
+     */
+    public void setWraps(int wraps) {
+        this.wraps = wraps;
+    }
+
+    /**
+     * @return the imports count per file
+     */
+    public int getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * @param fanOut the imports count per file to set
+     */
+    public void setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * @return the percent of files with wildcard import
+     */
+    public int getWildcards() {
+        return wildcards;
+    }
+
+    /**
+     * @param wildcards the percent of files with wildcard import to set
+     */
+    public void setWildcards(int wildcards) {
+        this.wildcards = wildcards;
+    }
+
+    /**
+     * @return the percent of files with css file
+     */
+    public int getCss() {
+        return css;
+    }
+
+    /**
+     * @param css the percent of files with css file to set
+     */
+    public void setCss(int css) {
+        this.css = css;
+    }
+
+    /**
+     * @return the percent of files with inject directive
+     */
+    public int getInjects() {
+        return injects;
+    }
+
+    /**
+     * @param injects the percent of files with inject directive to set
+     */
+    public void setInjects(int injects) {
+        this.injects = injects;
+    }
+
+    /**
+     * @return the percent of files with cyclic include
+     */
+    public int getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @param cycles the percent of files with cyclic include to set
+     */
+    public void setCycles(int cycles) {
+        this.cycles = cycles;
+    }
+
+    /**
+     * @return the percent of excluded files
+     */
+    public int getExcluded() {
+        return excluded;
+    }
+
+    /**
+     * @param excluded the percent of excluded files to set
+     */
+    public void setExcluded(int excluded) {
+        this.excluded = excluded;
+    }
+
+    /**
+     * @return the body lines count per file
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * @param lines the body lines count per file to set
+     */
+    public void setLines(int lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * @return the files count per package
+     */
+    public int getFilesPerPackage() {
+        return filesPerPackage;
+    }
+
+    /**
+     * @param filesPerPackage the files count per package to set
+     */
+    public void setFilesPerPackage(int filesPerPackage) {
+        this.filesPerPackage = filesPerPackage;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.CFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class SourceFilterTest {
+
+    private File root;
+
+    public SourceFilterTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs-filter").toFile();
+        new File(root, "skip").mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of isIncluded method, of class SourceFilter.
+     */
+    @Test
+    public void testIsIncluded() {
+        System.out.println("isIncluded");
+        SourceFilter filter = new SourceFilter(
+            new String[]{".js", ".min.css", "css"},
+            new String[]{"Excluded.js"},
+            new String[]{"F7.*"},
+            new String[]{".*skip.*"});
+        CanonicalPaths paths = new CanonicalPaths();
+
+        assertTrue(filter.isIncluded(new CFile(root, "A.js"), paths));
+        assertTrue(filter.isIncluded(new CFile(root, "A.min.css"), paths));
+        assertTrue(filter.isIncluded(new CFile(root, "Acss"), paths));
+        assertFalse(filter.isIncluded(new CFile(root, "A.json"), paths));
+        assertFalse(filter.isIncluded(new CFile(root, "js"), paths));
+        assertFalse(filter.isIncluded(new CFile(root, "Excluded.js"), paths));
+        assertFalse(filter.isIncluded(new CFile(root, "F7.js"), paths));
+        assertFalse(filter.isIncluded(new CFile(root, "skip/A.js"), paths));
+
+        filter = new SourceFilter(new String[]{"*"}, null, null, null);
+        assertTrue(filter.isIncluded(new CFile(root, "A.json"), paths));
+        assertTrue(filter.isFor(new String[]{"*"}, null, null, null));
+        assertFalse(filter.isFor(new String[]{".js"}, null, null, null));
+
+        filter = new SourceFilter(new String[]{""}, null, null, null);
+        assertTrue(filter.hasSuffix(""));
+        assertTrue(filter.hasSuffix("A.js"));
+        filter = new SourceFilter(new String[0], null, null, null);
+        assertFalse(filter.hasSuffix("A.js"));
+    }
+}
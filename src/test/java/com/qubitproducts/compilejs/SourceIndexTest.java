@@ -0,0 +1,146 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class SourceIndexTest {
+
+    private File root;
+
+    public SourceIndexTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs-index").toFile();
+        new File(root, "a/b/c").mkdirs();
+        new File(root, "a/b/C.js").createNewFile();
+        new File(root, "a/D.js").createNewFile();
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of isIndexable method, of class SourceIndex.
+     */
+    @Test
+    public void testIsIndexable() {
+        System.out.println("isIndexable");
+        assertTrue(SourceIndex.isIndexable("a/b/C.js"));
+        assertTrue(SourceIndex.isIndexable("a//.b/..C.js"));
+        assertTrue(SourceIndex.isIndexable(""));
+        assertFalse(SourceIndex.isIndexable("a/../C.js"));
+        assertFalse(SourceIndex.isIndexable("./C.js"));
+        assertFalse(SourceIndex.isIndexable(root.getAbsolutePath()));
+        assertFalse(SourceIndex.isIndexable(null));
+    }
+
+    /**
+     * Test of exists method, of class SourceIndex.
+     */
+    @Test
+    public void testExists() throws IOException {
+        System.out.println("exists");
+        SourceIndex index = new SourceIndex();
+        String base = root.getAbsolutePath();
+
+        assertTrue(index.exists(base, ""));
+        assertTrue(index.exists(base, "a/b/C.js"));
+        assertTrue(index.exists(base, "a//b/c/"));
+        assertTrue(index.exists(base + File.separator, "a/D.js"));
+        assertFalse(index.exists(base, "a/b/D.js"));
+        assertFalse(index.exists(base, "a/D.js/x"));
+        assertFalse(index.exists(base + File.separator + "x", ""));
+        assertArrayEquals(new String[]{"C.js", "c"}, index.list(base, "a/b"));
+
+        //listings are kept until refreshed
+        File created = new File(root, "a/b/D.js");
+        created.createNewFile();
+        new File(root, "a/D.js").delete();
+        assertFalse(index.exists(base, "a/b/D.js"));
+        index.refresh();
+        assertTrue(index.exists(base, "a/b/D.js"));
+        assertFalse(index.exists(base, "a/D.js"));
+
+        created.delete();
+        index.invalidate(Collections.singleton(created.getAbsolutePath()));
+        assertFalse(index.exists(base, "a/b/D.js"));
+    }
+
+    /**
+     * Test of exists method, of class SourceIndex, with paths differing in
+     * case from files on disk.
+     */
+    @Test
+    public void testExistsIgnoringCase() {
+        System.out.println("existsIgnoringCase");
+        SourceIndex index = new SourceIndex();
+        String base = root.getAbsolutePath();
+
+        //same as the file system answers
+        for (String path : new String[]{
+            "a/b/c.js", "A/b/C.js", "a/B/c/", "a/d.js", "a/d.JS", "a/e.js"}) {
+            assertEquals(path, new File(base, path).exists(),
+                index.exists(base, path));
+        }
+    }
+
+    /**
+     * Test of find method, of class SourceIndex.
+     */
+    @Test
+    public void testFind() throws IOException {
+        System.out.println("find");
+        new File(root, "a/b/c/E.js").createNewFile();
+        new File(root, "a/b/c/F.css").createNewFile();
+        new File(root, "a/b/B.js").createNewFile();
+        new File(root, "a/b/x.js").mkdir();
+        SourceIndex index = new SourceIndex();
+        String base = root.getAbsolutePath();
+        String c = "a" + File.separator + "b" + File.separator + "c";
+
+        assertEquals(Arrays.asList(
+            "a" + File.separator + "b" + File.separator + "B.js",
+            "a" + File.separator + "b" + File.separator + "C.js"),
+            index.find(base, Glob.compile("a/b/*.js")));
+        assertEquals(Arrays.asList(
+            "a" + File.separator + "D.js",
+            "a" + File.separator + "b" + File.separator + "B.js",
+            "a" + File.separator + "b" + File.separator + "C.js",
+            c + File.separator + "E.js"),
+            index.find(base, Glob.compile("a/**.js")));
+        assertEquals(Arrays.asList(c + File.separator + "F.css"),
+            index.find(base, Glob.compile("**/c/*.css")));
+        assertTrue(index.find(base, Glob.compile("x/*.js")).isEmpty());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import com.qubitproducts.compilejs.fs.CFile;
+import com.qubitproducts.compilejs.fs.FSFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class SourceListerTest {
+
+    private File root;
+
+    public SourceListerTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs-lister").toFile();
+        for (int i = 0; i < 20; i++) {
+            new File(root, "d" + i + "/e").mkdirs();
+            new File(root, "d" + i + "/A.js").createNewFile();
+            new File(root, "d" + i + "/e/B.js").createNewFile();
+            new File(root, "d" + i + "/_skip").mkdirs();
+            new File(root, "d" + i + "/_skip/C.js").createNewFile();
+            new File(root, "d" + i + "/_file").createNewFile();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of list method, of class SourceLister.
+     */
+    @Test
+    public void testList() {
+        System.out.println("list");
+        SourceLister lister = new SourceLister(new String[]{"_skip.*"});
+        FSFile dir = new CFile(root);
+
+        List<String> expected = paths(listFiles(root, "_skip.*"));
+        List<String> listed = paths(lister.list(dir, null, null));
+        assertEquals(20 * 3, expected.size());
+        assertEquals(expected, listed);
+        assertTrue(lister.list(dir, null, null).get(0).isFile());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, paths(lister.list(dir, pool, null)));
+        } finally {
+            pool.shutdown();
+        }
+
+        FSFile file = new CFile(new File(root, "d0/A.js"));
+        assertEquals(paths(singleton(file)),
+            paths(lister.list(file, null, null)));
+        assertNull(lister.list(
+            new CFile(new File(root, "d0/_skip")), null, null));
+        assertTrue(lister.isFor(new String[]{"_skip.*"}));
+        assertFalse(lister.isFor(null));
+    }
+
+    private static List<FSFile> singleton(FSFile file) {
+        List<FSFile> list = new ArrayList<FSFile>();
+        list.add(file);
+        return list;
+    }
+
+    private static List<String> paths(List<FSFile> files) {
+        List<String> paths = new ArrayList<String>();
+        for (FSFile file : files) {
+            paths.add(file.getPath());
+        }
+        return paths;
+    }
+
+    //listFiles() based listing, as it used to be done
+    private static List<FSFile> listFiles(File dir, String excluded) {
+        List<FSFile> results = new ArrayList<FSFile>();
+        for (File file : dir.listFiles()) {
+            if (!file.isDirectory()) {
+                results.add(new CFile(file));
+            } else if (!file.getName().matches(excluded)) {
+                results.addAll(listFiles(file, excluded));
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class WatcherTest {
+
+    private static final long DEBOUNCE = 200;
+    private static final long TIMEOUT = 10000;
+
+    private File root;
+    private Watcher watcher;
+    private final BlockingQueue<Set<Path>> batches =
+        new LinkedBlockingQueue<Set<Path>>();
+
+    public WatcherTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs-watch").toFile();
+        new File(root, "src/app").mkdirs();
+        new File(root, "excluded/deep").mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (watcher != null) {
+            watcher.stop();
+            //wakes up the watching thread
+            write("stop.js");
+        }
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of watch method, of class Watcher, events during debounce time
+     * are reported in one batch.
+     */
+    @Test
+    public void testWatchDebounce() throws Exception {
+        System.out.println("watchDebounce");
+        start(DEBOUNCE);
+
+        write("a.js");
+        write("src/app/b.js");
+        write("a.js");
+        write("src/app/c.js");
+        write("src/app/b.js");
+
+        assertEquals(paths("a.js", "src/app/b.js", "src/app/c.js"),
+            nextBatch());
+        assertNull(batches.poll(DEBOUNCE * 3, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test of watch method, of class Watcher, changes keep being reported
+     * while events never stop for debounce time.
+     */
+    @Test
+    public void testWatchMaxDebounce() throws Exception {
+        System.out.println("watchMaxDebounce");
+        start(50);
+
+        //10 debounces of 50ms pass long before writing stops
+        long end = System.currentTimeMillis() + 3000;
+        int written = 0;
+        while (System.currentTimeMillis() < end) {
+            write("a.js");
+            written++;
+            Thread.sleep(10);
+        }
+        assertTrue(batches.size() + " batches of " + written + " writes",
+            batches.size() >= 2);
+        for (Set<Path> batch : batches) {
+            assertEquals(paths("a.js"), batch);
+        }
+    }
+
+    /**
+     * Test of watch method, of class Watcher, excluded directories and
+     * temporary output files produce no changes.
+     */
+    @Test
+    public void testWatchExcluded() throws Exception {
+        System.out.println("watchExcluded");
+        start(DEBOUNCE, new File(root, "excluded").getPath());
+
+        write("excluded/a.js");
+        write("excluded/deep/b.js");
+        assertTrue(new File(root, "excluded/new/deeper").mkdirs());
+        write("excluded/new/deeper/c.js");
+        write("src/app/" + OutputFile.TEMP_PREFIX + "1.tmp");
+        write(OutputFile.TEMP_PREFIX + "2.tmp");
+        write("d.js");
+
+        assertEquals(paths("d.js"), nextBatch());
+        assertNull(batches.poll(DEBOUNCE * 3, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test of watch method, of class Watcher, created directories are
+     * watched.
+     */
+    @Test
+    public void testWatchCreatedDirectories() throws Exception {
+        System.out.println("watchCreatedDirectories");
+        start(DEBOUNCE);
+
+        assertTrue(new File(root, "src/lib/util").mkdirs());
+        //util is reported too if created after lib got registered
+        Set<Path> created = nextBatch();
+        assertTrue(created.toString(), created.contains(path("src/lib")));
+        assertTrue(created.toString(),
+            paths("src/lib", "src/lib/util").containsAll(created));
+        Thread.sleep(DEBOUNCE * 3);
+        batches.clear();
+
+        write("src/lib/a.js");
+        write("src/lib/util/b.js");
+        assertEquals(paths("src/lib/a.js", "src/lib/util/b.js"),
+            nextBatch());
+
+        write("src/lib/util/b.js");
+        assertEquals(paths("src/lib/util/b.js"), nextBatch());
+    }
+
+    /**
+     * Test of watch method, of class Watcher, directories in hidden
+     * directories are watched.
+     */
+    @Test
+    public void testWatchHiddenSubdirectories() throws Exception {
+        System.out.println("watchHiddenSubdirectories");
+        assertTrue(new File(root, ".hidden/app").mkdirs());
+        start(DEBOUNCE);
+
+        write(".hidden/app/a.js");
+        assertEquals(paths(".hidden/app/a.js"), nextBatch());
+    }
+
+    /**
+     * Starts watching root and waits until changes are reported.
+     */
+    private void start(long debounce, String... excludes)
+        throws IOException, InterruptedException {
+        watcher = new Watcher();
+        watcher.setDebounce(debounce);
+        List<String> excluded = excludes.length == 0
+            ? null : Arrays.asList(excludes);
+        watcher.watch(root.getPath(), new Callback() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void call(Object o) {
+                batches.add(new HashSet<Path>((Set<Path>) o));
+            }
+        }, null, excluded);
+
+        //registration happens in watching thread
+        long end = System.currentTimeMillis() + TIMEOUT;
+        do {
+            write("ready.js");
+        } while (batches.poll(DEBOUNCE, TimeUnit.MILLISECONDS) == null
+            && System.currentTimeMillis() < end);
+        Thread.sleep(debounce * 3);
+        batches.clear();
+    }
+
+    private Set<Path> nextBatch() throws InterruptedException {
+        Set<Path> batch = batches.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("no changes reported", batch);
+        return batch;
+    }
+
+    private Set<Path> paths(String... paths) {
+        Set<Path> set = new HashSet<Path>();
+        for (String path : paths) {
+            set.add(path(path));
+        }
+        return set;
+    }
+
+    private Path path(String path) {
+        return new File(root, path).toPath();
+    }
+
+    private void write(String path) throws IOException {
+        Files.write(new File(root, path).toPath(),
+            String.valueOf(System.nanoTime()).getBytes(UTF_8));
+    }
+}
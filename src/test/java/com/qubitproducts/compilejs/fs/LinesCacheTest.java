@@ -0,0 +1,174 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class LinesCacheTest {
+
+    private CFile[] files;
+
+    public LinesCacheTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        files = new CFile[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = CFile.createTempFile("compilejs", ".js");
+            files[i].saveString("var a" + i + ";\n");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (CFile file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test of put method, of class LinesCache.
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        List<String> lines = Arrays.asList("0123456789", "0123456789");
+        //two entries fit
+        LinesCache cache = new LinesCache(2 * 2 * (56 + 20));
+        cache.put(path(0), lines);
+        cache.put(path(1), lines);
+        assertNotNull(cache.get(path(0)));
+        cache.put(path(2), lines);
+
+        //least recently used is gone
+        assertNull(cache.get(path(1)));
+        assertNotNull(cache.get(path(0)));
+        assertNotNull(cache.get(path(2)));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2 * 2 * (56 + 20), cache.getBytes());
+
+        cache.remove(path(0));
+        assertEquals(2 * (56 + 20), cache.getBytes());
+    }
+
+    /**
+     * Test of get method, of class LinesCache.
+     */
+    @Test
+    public void testGetChanged() throws IOException {
+        System.out.println("getChanged");
+        LinesCache cache = new LinesCache();
+        cache.put(path(0), Arrays.asList("var a0;"));
+        assertTrue(cache.containsKey(path(0)));
+
+        files[0].saveString("var changed;\n");
+        files[0].setLastModified(files[0].lastModified() - 10000);
+        assertNull(cache.get(path(0)));
+        assertFalse(cache.containsKey(path(0)));
+        assertEquals(0, cache.getBytes());
+    }
+
+    /**
+     * Test of put method, of class LinesCache, with stamps taken before
+     * reading.
+     */
+    @Test
+    public void testPutStamped() throws IOException {
+        System.out.println("putStamped");
+        LinesCache cache = new LinesCache();
+        long lastModified = files[0].lastModified();
+        long length = files[0].length();
+
+        //changed while being read
+        files[0].saveString("var changed;\n");
+        files[0].setLastModified(lastModified + 10000);
+        cache.put(path(0), Arrays.asList("var a0;"), lastModified, length);
+        assertNull(cache.get(path(0)));
+
+        LineReader reader = files[1].getLineReader(cache);
+        while (reader.readLine() != null) {
+        }
+        reader.close();
+        assertEquals(Arrays.asList("var a1;"), cache.get(path(1)));
+    }
+
+    /**
+     * Test of setValidating method, of class LinesCache.
+     */
+    @Test
+    public void testSetValidating() throws IOException {
+        System.out.println("setValidating");
+        LinesCache cache = new LinesCache();
+        cache.setValidating(false);
+        cache.put(path(0), Arrays.asList("var a0;"));
+
+        //changes are reported by removing entries
+        files[0].saveString("var changed;\n");
+        files[0].setLastModified(files[0].lastModified() - 10000);
+        assertEquals(Arrays.asList("var a0;"), cache.get(path(0)));
+        cache.remove(path(0));
+        assertNull(cache.get(path(0)));
+    }
+
+    /**
+     * Test of setWatched method, of class LinesCache.
+     */
+    @Test
+    public void testSetWatched() throws IOException {
+        System.out.println("setWatched");
+        LinesCache cache = new LinesCache();
+        cache.setWatched(Arrays.asList(path(0)), new ArrayList<String>());
+        checkWatched(cache, true, false);
+
+        String directory = files[0].getAbsoluteFile().getParent();
+        cache.setWatched(Arrays.asList(directory), Arrays.asList(path(1)));
+        checkWatched(cache, true, false);
+    }
+
+    private void checkWatched(LinesCache cache, boolean... watched)
+        throws IOException {
+        for (int i = 0; i < watched.length; i++) {
+            cache.put(path(i), Arrays.asList("var a" + i + ";"));
+            long lastModified = files[i].lastModified();
+            files[i].saveString("var changed" + i + ";\n");
+            files[i].setLastModified(lastModified - 10000);
+        }
+        for (int i = 0; i < watched.length; i++) {
+            //changes of watched files are reported by removing entries
+            assertEquals(path(i), watched[i], cache.get(path(i)) != null);
+            cache.remove(path(i));
+        }
+    }
+
+    private String path(int i) {
+        return files[i].getAbsolutePath();
+    }
+}
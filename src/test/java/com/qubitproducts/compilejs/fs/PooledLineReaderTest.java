@@ -0,0 +1,167 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs.fs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class PooledLineReaderTest {
+
+    private File file;
+
+    public PooledLineReaderTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("compilejs", ".js");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Test of readLine method, of class PooledLineReader.
+     */
+    @Test
+    public void testReadLine() throws IOException {
+        System.out.println("readLine");
+        String[] contents = new String[]{
+            "",
+            "a",
+            "a\n",
+            "\n\n",
+            "a\r\nb\rc\n\rd",
+            "//:import a.b\nvar x = 'zażółć';\r\n\r\n",
+            "last line without eol"
+        };
+        for (String content : contents) {
+            write(content.getBytes("UTF-8"));
+            assertEquals(expected(), read());
+        }
+    }
+
+    /**
+     * Test of readLine method, of class PooledLineReader, with content
+     * crossing reading and decoding buffers boundaries.
+     */
+    @Test
+    public void testReadLineLarge() throws IOException {
+        System.out.println("readLineLarge");
+        Random random = new Random(7);
+        String[] parts = new String[]{"\n", "\r", "\r\n", "ó", "x", "abc"};
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < PooledLineReader.BYTES_CHUNK * 3 + 20000) {
+            if (random.nextInt(500) == 0) {
+                //long line
+                for (int i = 0; i < 20000; i++) {
+                    builder.append('y');
+                }
+            }
+            builder.append(parts[random.nextInt(parts.length)]);
+        }
+        byte[] bytes = builder.toString().getBytes("UTF-8");
+        write(bytes);
+        assertEquals(expected(), read());
+
+        //broken multibyte character at the end
+        byte[] broken = new byte[1000];
+        System.arraycopy(bytes, 0, broken, 0, broken.length);
+        broken[broken.length - 1] = (byte) 0xC5;
+        write(broken);
+        assertEquals(expected(), read());
+    }
+
+    /**
+     * Test of checksum method, of class PooledLineReader.
+     */
+    @Test
+    public void testChecksum() throws IOException {
+        System.out.println("checksum");
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < PooledLineReader.BYTES_CHUNK * 2) {
+            builder.append("var x = 'zażółć';\n");
+        }
+        byte[] bytes = builder.toString().getBytes("UTF-8");
+        write(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        PooledLineReader reader = new PooledLineReader(file);
+        try {
+            assertNotNull(reader.readLineSequence());
+            assertEquals(crc.getValue(), reader.checksum());
+            assertNull(reader.readLineSequence());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private List<String> expected() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private List<String> read() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        LineReader reader = new PooledLineReader(file);
+        try {
+            CharSequence line;
+            while ((line = reader.readLineSequence()) != null) {
+                lines.add(line.toString());
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
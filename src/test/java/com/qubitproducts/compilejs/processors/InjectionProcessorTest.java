@@ -0,0 +1,140 @@
+/*
+ *  Copyright  @ QubitProducts.com
+ *
+ *  CompileJS is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CompileJS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  Lesser GNU General Public License for more details.
+ *
+ *  You should have received a copy of the Lesser GNU General Public License.
+ *  If not, see LGPL licence at http://www.gnu.org/licenses/lgpl-3.0.html.
+ */
+package com.qubitproducts.compilejs.processors;
+
+import com.qubitproducts.compilejs.CompilationCache;
+import com.qubitproducts.compilejs.Log;
+import com.qubitproducts.compilejs.MainProcessor;
+import com.qubitproducts.compilejs.ProjectGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Fronc <peter.fronc@qubitdigital.com>
+ */
+public class InjectionProcessorTest {
+
+    private File root;
+    private MainProcessor processor;
+
+    public InjectionProcessorTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("compilejs").toFile();
+        write("b/p/Inj.js", "x\n//:inject p.Nested\n");
+        write("a/p/Nested.js", "n\n");
+        write("b/p/Nested.js", "shadowed\n");
+        write("a/p/Data.json", "{}\n");
+        write("a/p/Cycle1.js", "c1\n//:inject p.Cycle2\n");
+        write("a/p/Cycle2.js", "c2\n//:inject p.Cycle1\n");
+        processor = new MainProcessor();
+        processor.setCwd(root.getAbsolutePath());
+        processor.setSourceBase(new String[]{"a", "b"});
+    }
+
+    @After
+    public void tearDown() {
+        ProjectGenerator.delete(root);
+    }
+
+    /**
+     * Test of process method, of class InjectionProcessor.
+     */
+    @Test
+    public void testProcess() {
+        System.out.println("process");
+        InjectionProcessor instance =
+            new InjectionProcessor(processor, new Log());
+        List<Object[]> chunks = new ArrayList<Object[]>();
+        chunks.add(new Object[]{"", new StringBuilder(
+            "var a = //:inject p.Inj ;\nb")});
+        chunks.add(new Object[]{"/*~css*/", new StringBuilder("e\nf")});
+        chunks.add(new Object[]{"", new StringBuilder(
+            "var d = //:inject p.Data#json")});
+        chunks.add(new Object[]{"", new StringBuilder(
+            "//:inject p.Cycle1\n//:inject p.Missing")});
+        chunks.add(new Object[]{"", new StringBuilder("g\n\n")});
+        chunks.add(new Object[]{"", new StringBuilder("h\r\ni\r\n")});
+        instance.process(chunks, "js");
+
+        for (Object[] chunk : chunks) {
+            assertEquals("js", chunk[0]);
+        }
+        assertEquals("\nvar a = x\n//:inject p.Nested\n ;\nb",
+            chunks.get(0)[1].toString());
+        assertEquals("e\nf", chunks.get(1)[1].toString());
+        //".js" is appended to path
+        assertEquals("var d = //:inject p.Data#json",
+            chunks.get(2)[1].toString());
+        assertEquals("\nc1\n//:inject p.Cycle2\n\n//:inject p.Missing",
+            chunks.get(3)[1].toString());
+        //joined lines
+        assertEquals("g\n", chunks.get(4)[1].toString());
+        assertEquals("h\ni", chunks.get(5)[1].toString());
+    }
+
+    /**
+     * Test of process method, of class InjectionProcessor, with injections
+     * kept between compilations.
+     */
+    @Test
+    public void testProcessCached() throws IOException {
+        System.out.println("processCached");
+        CompilationCache cache = new CompilationCache();
+        assertEquals("n\n", inject(cache, "//:inject p.Nested"));
+        assertEquals("n\n", inject(cache, "//:inject p.Nested"));
+
+        //injected file changed
+        write("a/p/Nested.js", "changed\n");
+        assertEquals("changed\n", inject(cache, "//:inject p.Nested"));
+
+        //injected file deleted, file in next source base is found
+        assertTrue(new File(root, "a/p/Nested.js").delete());
+        assertEquals("shadowed\n", inject(cache, "//:inject p.Nested"));
+    }
+
+    private String inject(CompilationCache cache, String text) {
+        MainProcessor compilation = new MainProcessor();
+        compilation.setCwd(root.getAbsolutePath());
+        compilation.setSourceBase(new String[]{"a", "b"});
+        compilation.setCompilationCache(cache);
+        InjectionProcessor instance =
+            new InjectionProcessor(compilation, new Log());
+        instance.setReplacingLine(true);
+        List<Object[]> chunks = new ArrayList<Object[]>();
+        chunks.add(new Object[]{"", new StringBuilder(text)});
+        instance.process(chunks, "js");
+        return chunks.get(0)[1].toString();
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+    }
+}
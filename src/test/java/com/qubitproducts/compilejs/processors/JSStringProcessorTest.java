@@ -5,6 +5,8 @@
  */
 package com.qubitproducts.compilejs.processors;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -31,4 +33,27 @@ public class JSStringProcessorTest {
         assertEquals(expResult, result);
     }
     
+    /**
+     * Test of process method, of class JSStringProcessor.
+     */
+    @Test
+    public void testProcess() {
+        System.out.println("process");
+        JSStringProcessor instance =
+            new JSStringProcessor("[\"", "\"]", "\", \"", null);
+        List<Object[]> chunks = new ArrayList<Object[]>();
+        chunks.add(new Object[]{"/*~js.string*/",
+            new StringBuilder("a\"\nb\r\nc\r\n\nd\n")});
+        chunks.add(new Object[]{"/*~js.string*/", new StringBuilder()});
+        chunks.add(new Object[]{"/*~css*/", new StringBuilder("e\nf")});
+        instance.process(chunks, "js");
+        
+        assertEquals("js", chunks.get(0)[0]);
+        assertEquals("[\"a\\\"\", \"b\", \"c\", \"\", \"d\"]",
+            chunks.get(0)[1].toString());
+        assertEquals("[\"\"]", chunks.get(1)[1].toString());
+        assertEquals("/*~css*/", chunks.get(2)[0]);
+        assertEquals("e\nf", chunks.get(2)[1].toString());
+    }
+    
 }